@@ -13,15 +13,12 @@
  **/
 package net.di2e.ecdr.federation;
 
-import java.io.Serializable;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
-import net.di2e.ecdr.commons.constants.SearchConstants;
 import net.di2e.ecdr.federation.api.NormalizingFederationStrategy;
 
 import org.slf4j.Logger;
@@ -67,6 +64,13 @@ public abstract class AbstractFederationStrategy implements NormalizingFederatio
      */
     private List<PostFederatedQueryPlugin> postQuery;
 
+    /**
+     * Tracks the latency of each {@link Source} so slow outliers can be timed out before the query timeout.
+     */
+    private SourceLatencyTracker latencyTracker = new SourceLatencyTracker();
+    private SourceBulkhead bulkhead = new SourceBulkhead();
+    private SourceQueryRunner queryRunner = null;
+
     /**
      * Instantiates an {@code AbstractFederationStrategy} with the provided {@link ExecutorService}.
      * 
@@ -75,6 +79,7 @@ public abstract class AbstractFederationStrategy implements NormalizingFederatio
      */
     public AbstractFederationStrategy( ExecutorService executor, List<PreFederatedQueryPlugin> preQuery, List<PostFederatedQueryPlugin> postQuery ) {
         this.queryExecutorService = executor;
+        this.queryRunner = new SourceQueryRunner( bulkhead, executor );
         this.preQuery = preQuery;
         this.postQuery = postQuery;
         this.maxStartIndex = DEFAULT_MAX_START_INDEX;
@@ -139,7 +144,7 @@ public abstract class AbstractFederationStrategy implements NormalizingFederatio
                         LOGGER.warn( "Plugin stopped processing: ", e );
                     }
 
-                    futures.put( source, queryExecutorService.submit( new CallableSourceResponse( source, modifiedQueryRequest.getQuery(), modifiedQueryRequest.getProperties() ) ) );
+                    futures.put( source, queryRunner.startQuery( source, modifiedQueryRequest, null ) );
                 } else {
                     LOGGER.warn( "Duplicate source found with name " + source.getId() + ". Ignoring second one." );
                 }
@@ -223,31 +228,6 @@ public abstract class AbstractFederationStrategy implements NormalizingFederatio
         return offset + pageSize - 1;
     }
 
-    private static final class CallableSourceResponse implements Callable<SourceResponse> {
-
-        private Query query = null;
-
-        private Source source = null;
-
-        private Map<String, Serializable> properties = null;
-
-        public CallableSourceResponse( Source source, Query query, Map<String, Serializable> properties ) {
-            this.source = source;
-            this.query = query;
-            this.properties = properties;
-        }
-
-        @Override
-        public SourceResponse call() throws Exception {
-            long startTime = System.currentTimeMillis();
-            SourceResponse sourceResponse = source.query( new QueryRequestImpl( query, properties ) );
-            long elapsedTime = System.currentTimeMillis() - startTime;
-            LOGGER.debug( "The source {} responded to the query in {} milliseconds", source.getId(), elapsedTime );
-            sourceResponse.getProperties().put( SearchConstants.ELAPSED_TIME, elapsedTime );
-            return sourceResponse;
-        };
-    }
-
     private static final class OffsetResultHandler implements Runnable {
 
         private QueryResponseImpl originalResults = null;
@@ -289,6 +269,51 @@ public abstract class AbstractFederationStrategy implements NormalizingFederatio
         }
     }
 
+    protected SourceLatencyTracker getLatencyTracker() {
+        return latencyTracker;
+    }
+
+    /**
+     * To be set via Spring/Blueprint
+     * 
+     * @param enabled
+     *            true if sources should be timed out based on their observed latency rather than only the query timeout
+     */
+    public void setAdaptiveTimeoutEnabled( boolean enabled ) {
+        latencyTracker.setEnabled( enabled );
+    }
+
+    /**
+     * To be set via Spring/Blueprint
+     * 
+     * @param factor
+     *            the multiple of a source's 99th percentile latency it is allowed before it is timed out
+     */
+    public void setAdaptiveTimeoutFactor( double factor ) {
+        latencyTracker.setTimeoutFactor( factor );
+    }
+
+    /**
+     * To be set via Spring/Blueprint
+     * 
+     * @param max
+     *            the maximum number of queries running on a single source at one time, less than 1 means no limit
+     */
+    public void setMaxConcurrentQueriesPerSource( int max ) {
+        bulkhead.setMaxConcurrentQueries( max );
+    }
+
+    /**
+     * To be set via Spring/Blueprint
+     * 
+     * @param max
+     *            the maximum number of queries waiting on a source that is at its concurrency limit before further
+     *            queries to it are shed
+     */
+    public void setMaxQueuedQueriesPerSource( int max ) {
+        bulkhead.setMaxQueuedQueries( max );
+    }
+
     /**
      * To be set via Spring/Blueprint
      * 
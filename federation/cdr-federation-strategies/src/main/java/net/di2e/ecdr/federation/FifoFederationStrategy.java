@@ -15,17 +15,21 @@ package net.di2e.ecdr.federation;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.Callable;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import net.di2e.ecdr.commons.constants.SearchConstants;
 
@@ -65,6 +69,9 @@ public class FifoFederationStrategy implements FederationStrategy {
     private ExecutorService queryExecutorService = null;
     private List<PreFederatedQueryPlugin> preQuery;
     private List<PostFederatedQueryPlugin> postQuery;
+    private SourceLatencyTracker latencyTracker = new SourceLatencyTracker();
+    private SourceBulkhead bulkhead = new SourceBulkhead();
+    private SourceQueryRunner queryRunner = null;
 
     /**
      * Instantiates a {@code FifoFederationStrategy} with the provided {@link ExecutorService}.
@@ -74,6 +81,7 @@ public class FifoFederationStrategy implements FederationStrategy {
      */
     public FifoFederationStrategy( ExecutorService queryExecutorService, List<PreFederatedQueryPlugin> preQuery, List<PostFederatedQueryPlugin> postQuery ) {
         this.queryExecutorService = queryExecutorService;
+        this.queryRunner = new SourceQueryRunner( bulkhead, queryExecutorService );
         this.preQuery = preQuery;
         this.postQuery = postQuery;
         this.maxStartIndex = DEFAULT_MAX_START_INDEX;
@@ -95,18 +103,19 @@ public class FifoFederationStrategy implements FederationStrategy {
         QueryResponseImpl queryResponse = new QueryResponseImpl( queryRequest, null );
 
         Map<Source, Future<SourceResponse>> futures = new HashMap<Source, Future<SourceResponse>>();
+        BlockingQueue<Source> completedSources = new LinkedBlockingQueue<Source>();
 
         Query modifiedQuery = getModifiedQuery( originalQuery, sources.size(), offset, pageSize );
         QueryRequest modifiedQueryRequest = new QueryRequestImpl( modifiedQuery, queryRequest.isEnterprise(), queryRequest.getSourceIds(), queryRequest.getProperties() );
 
-        executeSourceQueries( sources, futures, modifiedQueryRequest );
+        executeSourceQueries( sources, futures, completedSources, modifiedQueryRequest );
 
         int resultsToSkip = 0;
         if ( offset > 1 && sources.size() > 1 ) {
             resultsToSkip = offset - 1;
         }
 
-        queryExecutorService.submit( new FifoQueryMonitor( queryExecutorService, futures, queryResponse, modifiedQueryRequest.getQuery(), resultsToSkip ) );
+        queryExecutorService.submit( new FifoQueryMonitor( futures, completedSources, queryResponse, modifiedQueryRequest.getQuery(), resultsToSkip, latencyTracker ) );
 
         return executePostFederationPlugins( queryResponse );
     }
@@ -126,7 +135,12 @@ public class FifoFederationStrategy implements FederationStrategy {
         return queryResponse;
     }
 
-    protected void executeSourceQueries( List<Source> sources, Map<Source, Future<SourceResponse>> futures, QueryRequest modifiedQueryRequest ) {
+    /**
+     * Starts the query on each of the sources. Every source is added to the completedSources queue as soon as its
+     * query finishes (successfully or not), which lets a single monitor thread process the responses in the order they
+     * arrive.
+     */
+    protected void executeSourceQueries( List<Source> sources, Map<Source, Future<SourceResponse>> futures, final BlockingQueue<Source> completedSources, QueryRequest modifiedQueryRequest ) {
         // Do NOT call source.isAvailable() when checking sources
         for ( final Source source : sources ) {
             if ( source != null ) {
@@ -142,7 +156,12 @@ public class FifoFederationStrategy implements FederationStrategy {
                     } catch ( StopProcessingException e ) {
                         LOGGER.warn( "Plugin stopped processing: ", e );
                     }
-                    futures.put( source, queryExecutorService.submit( new CallableSourceResponse( source, modifiedQueryRequest.getQuery(), modifiedQueryRequest.getProperties() ) ) );
+                    futures.put( source, queryRunner.startQuery( source, modifiedQueryRequest, new Runnable() {
+                        @Override
+                        public void run() {
+                            completedSources.add( source );
+                        }
+                    } ) );
                 } else {
                     LOGGER.warn( "Duplicate source found with name " + source.getId() + ". Ignoring second one." );
                 }
@@ -172,64 +191,78 @@ public class FifoFederationStrategy implements FederationStrategy {
         return query;
     }
 
-    private static final class CallableSourceResponse implements Callable<SourceResponse> {
-
-        private Query query = null;
-
-        private Source source = null;
-
-        private Map<String, Serializable> properties = null;
+    /**
+     * To be set via Spring/Blueprint
+     * 
+     * @param enabled
+     *            true if sources should be timed out based on their observed latency rather than only the query timeout
+     */
+    public void setAdaptiveTimeoutEnabled( boolean enabled ) {
+        latencyTracker.setEnabled( enabled );
+    }
 
-        public CallableSourceResponse( Source source, Query query, Map<String, Serializable> properties ) {
-            this.source = source;
-            this.query = query;
-            this.properties = properties;
-        }
+    /**
+     * To be set via Spring/Blueprint
+     * 
+     * @param factor
+     *            the multiple of a source's 99th percentile latency it is allowed before it is timed out
+     */
+    public void setAdaptiveTimeoutFactor( double factor ) {
+        latencyTracker.setTimeoutFactor( factor );
+    }
 
-        @Override
-        public SourceResponse call() throws Exception {
-            long startTime = System.currentTimeMillis();
-            SourceResponse sourceResponse = source.query( new QueryRequestImpl( query, properties ) );
-            long elapsedTime = System.currentTimeMillis() - startTime;
-            LOGGER.debug( "The source {} responded to the query in {} milliseconds", source.getId(), elapsedTime );
-            sourceResponse.getProperties().put( SearchConstants.ELAPSED_TIME, elapsedTime );
-            return sourceResponse;
-        };
+    /**
+     * To be set via Spring/Blueprint
+     * 
+     * @param max
+     *            the maximum number of queries running on a single source at one time, less than 1 means no limit
+     */
+    public void setMaxConcurrentQueriesPerSource( int max ) {
+        bulkhead.setMaxConcurrentQueries( max );
     }
 
     /**
-     * Gets the time remaining before the timeout on a query
+     * To be set via Spring/Blueprint
      * 
-     * @param deadline
-     *            - the deadline for the timeout to occur
-     * @return the time remaining prior to the timeout
+     * @param max
+     *            the maximum number of queries waiting on a source that is at its concurrency limit before further
+     *            queries to it are shed
+     */
+    public void setMaxQueuedQueriesPerSource( int max ) {
+        bulkhead.setMaxQueuedQueries( max );
+    }
+
+    /**
+     * Adds the results of each source to the response in the order the sources respond. Every source gets its own
+     * deadline from the {@link SourceLatencyTracker}; sources that have not responded by their deadline are cancelled
+     * and reported in the processing details.
      */
     private static final class FifoQueryMonitor implements Runnable {
 
         private QueryResponseImpl returnResults;
         private Map<Source, Future<SourceResponse>> futures;
+        private BlockingQueue<Source> completedSources;
         private Query query;
-        private ExecutorService pool;
-        private AtomicInteger sites = new AtomicInteger();
-        private AtomicInteger resultsToSkip = null;
+        private int resultsToSkip = 0;
+        private boolean queueClosed = false;
+        private SourceLatencyTracker latencyTracker;
 
-        public FifoQueryMonitor( ExecutorService pool, Map<Source, Future<SourceResponse>> futuress, QueryResponseImpl returnResults, Query query, int resultsToSkip ) {
-            this.pool = pool;
+        public FifoQueryMonitor( Map<Source, Future<SourceResponse>> futuress, BlockingQueue<Source> completedSources, QueryResponseImpl returnResults, Query query, int resultsToSkip,
+                SourceLatencyTracker latencyTracker ) {
+            this.latencyTracker = latencyTracker;
             this.returnResults = returnResults;
             this.query = query;
             this.futures = futuress;
-            this.resultsToSkip = new AtomicInteger( resultsToSkip );
-        }
-
-        private int updateSites( int addition ) {
-            return sites.addAndGet( addition );
+            this.completedSources = completedSources;
+            this.resultsToSkip = resultsToSkip;
         }
 
         @Override
         public void run() {
             int pageSize = query.getPageSize() > 0 ? query.getPageSize() : Integer.MAX_VALUE;
-            for ( final Map.Entry<Source, Future<SourceResponse>> entry : futures.entrySet() ) {
-                Source site = entry.getKey();
+            long startTime = System.currentTimeMillis();
+            Map<Source, Long> pendingSources = new HashMap<Source, Long>();
+            for ( Source site : futures.keySet() ) {
                 // Add a List of siteIds so endpoints know what sites got queried
                 Serializable siteListObject = returnResults.getProperties().get( SearchConstants.SITE_LIST );
                 if ( siteListObject != null && siteListObject instanceof List<?> ) {
@@ -239,107 +272,140 @@ public class FifoFederationStrategy implements FederationStrategy {
                     ((List) siteListObject).add( site.getId() );
                     returnResults.getProperties().put( SearchConstants.SITE_LIST, (Serializable) siteListObject );
                 }
-                updateSites( 1 );
-                pool.submit( new SourceQueryThread( site, entry.getValue(), returnResults, pageSize ) );
+                long timeout = latencyTracker.getTimeoutMillis( site.getId(), query.getTimeoutMillis() );
+                pendingSources.put( site, timeout < 1 ? Long.MAX_VALUE : startTime + timeout );
             }
-        }
 
-        private long getTimeRemaining( long deadline ) {
-            long timeleft;
-            if ( System.currentTimeMillis() > deadline ) {
-                timeleft = 0;
-            } else {
-                timeleft = deadline - System.currentTimeMillis();
+            try {
+                while ( !pendingSources.isEmpty() ) {
+                    long nextDeadline = Collections.min( pendingSources.values() );
+                    Source site = nextDeadline == Long.MAX_VALUE ? completedSources.take() : completedSources.poll( getTimeRemaining( nextDeadline ), TimeUnit.MILLISECONDS );
+                    if ( site == null ) {
+                        expireSources( pendingSources, startTime );
+                    } else if ( pendingSources.remove( site ) != null ) {
+                        processSourceResponse( site, futures.get( site ), pageSize );
+                    }
+                }
+            } catch ( InterruptedException e ) {
+                LOGGER.warn( "Federated query monitor was interrupted while waiting on sources to respond" );
+                Thread.currentThread().interrupt();
+                for ( Source site : pendingSources.keySet() ) {
+                    futures.get( site ).cancel( true );
+                    returnResults.getProcessingDetails().add( new ProcessingDetailsImpl( site.getId(), e ) );
+                }
             }
-            return timeleft;
-        }
-
-        private class SourceQueryThread implements Runnable {
 
-            private long maxResults = 0;
-
-            Future<SourceResponse> curFuture = null;
-
-            QueryResponseImpl returnResults = null;
-
-            private Source site = null;
+            LOGGER.debug( "sending terminator for fifo federation strategy." );
+            closeResultQueue();
+        }
 
-            public SourceQueryThread( Source site, Future<SourceResponse> curFuture, QueryResponseImpl returnResults, long maxResults ) {
-                this.curFuture = curFuture;
-                this.returnResults = returnResults;
-                this.site = site;
-                this.maxResults = maxResults;
+        /**
+         * Cancels the sources whose deadline has passed. The time they were given is recorded as their latency so a
+         * source that keeps timing out is not judged only by its fast responses.
+         */
+        private void expireSources( Map<Source, Long> pendingSources, long startTime ) {
+            long now = System.currentTimeMillis();
+            Set<ProcessingDetails> processingDetails = returnResults.getProcessingDetails();
+            Iterator<Entry<Source, Long>> iterator = pendingSources.entrySet().iterator();
+            while ( iterator.hasNext() ) {
+                Entry<Source, Long> entry = iterator.next();
+                if ( entry.getValue() <= now ) {
+                    Source site = entry.getKey();
+                    long elapsedTime = entry.getValue() - startTime;
+                    LOGGER.warn( "Federated query to source [{}] did not complete within the timeout of [{}] milliseconds", site.getId(), elapsedTime );
+                    futures.get( site ).cancel( true );
+                    latencyTracker.recordLatency( site.getId(), elapsedTime );
+                    processingDetails.add( new ProcessingDetailsImpl( site.getId(), new TimeoutException( "Query to source [" + site.getId() + "] timed out" ) ) );
+                    iterator.remove();
+                }
             }
+        }
 
-            @Override
-            public void run() {
-                SourceResponse sourceResponse = null;
-                Set<ProcessingDetails> processingDetails = returnResults.getProcessingDetails();
-                try {
-                    sourceResponse = query.getTimeoutMillis() < 1 ? curFuture.get() : curFuture
-                            .get( getTimeRemaining( System.currentTimeMillis() + query.getTimeoutMillis() ), TimeUnit.MILLISECONDS );
-                    sourceResponse = curFuture.get();
-                } catch ( InterruptedException | TimeoutException | ExecutionException e ) {
-                    LOGGER.warn( "Federated query returned exception " + e.getMessage() );
-                    processingDetails.add( new ProcessingDetailsImpl( site.getId(), e ) );
-                }
-                long sourceHits = 0;
-                if ( sourceResponse != null ) {
-
-                    sourceHits = sourceResponse.getHits();
-
-                    // Check if we have hit the maximum number
-                    // of results
-                    List<Result> results = sourceResponse.getResults();
-                    int resultsReturned = results.size();
-
-                    Map<String, Serializable> newSourceProperties = new HashMap<String, Serializable>();
-                    newSourceProperties.put( SearchConstants.TOTAL_HITS, sourceHits );
-                    newSourceProperties.put( SearchConstants.TOTAL_RESULTS_RETURNED, resultsReturned );
-
-                    synchronized ( returnResults ) {
-                        long sentTotal = returnResults.getHits();
-                        returnResults.setHits( sourceHits + sentTotal );
-                        for ( Result result : results ) {
-                            if ( sentTotal >= maxResults ) {
-                                LOGGER.debug( "Received max number of results so ending polling" );
-                                break;
-                            } else if ( resultsToSkip.get() == 0 ) {
-                                returnResults.addResult( result, false );
-                                sentTotal++;
-                            } else {
-                                resultsToSkip.decrementAndGet();
-                                sentTotal++;
-                            }
-                        }
+        private void processSourceResponse( Source site, Future<SourceResponse> curFuture, long maxResults ) {
+            SourceResponse sourceResponse = null;
+            try {
+                sourceResponse = curFuture.get();
+            } catch ( ExecutionException e ) {
+                LOGGER.warn( "Federated query returned exception " + e.getMessage() );
+                // shed queries are reported as such rather than as a generic execution failure
+                returnResults.getProcessingDetails().add( new ProcessingDetailsImpl( site.getId(), e.getCause() instanceof QueryShedException ? (Exception) e.getCause() : e ) );
+            } catch ( InterruptedException | CancellationException e ) {
+                LOGGER.warn( "Federated query returned exception " + e.getMessage() );
+                returnResults.getProcessingDetails().add( new ProcessingDetailsImpl( site.getId(), e ) );
+            }
 
-                        if ( sentTotal >= maxResults ) {
-                            returnResults.closeResultQueue();
-                            LOGGER.debug( "sending terminator for fifo federation strategy." );
-                        }
+            if ( sourceResponse != null ) {
+
+                long sourceHits = sourceResponse.getHits();
+
+                // Check if we have hit the maximum number
+                // of results
+                List<Result> results = sourceResponse.getResults();
+                int resultsReturned = results.size();
+
+                Map<String, Serializable> newSourceProperties = new HashMap<String, Serializable>();
+                newSourceProperties.put( SearchConstants.TOTAL_HITS, sourceHits );
+                newSourceProperties.put( SearchConstants.TOTAL_RESULTS_RETURNED, resultsReturned );
+
+                long sentTotal = returnResults.getHits();
+                returnResults.setHits( sourceHits + sentTotal );
+                for ( Result result : results ) {
+                    if ( sentTotal >= maxResults ) {
+                        LOGGER.debug( "Received max number of results so ending polling" );
+                        break;
+                    } else if ( resultsToSkip == 0 ) {
+                        returnResults.addResult( result, false );
+                        sentTotal++;
+                    } else {
+                        resultsToSkip--;
+                        sentTotal++;
                     }
+                }
 
-                    returnResults.getProperties().put( site.getId(), (Serializable) newSourceProperties );
-                    Map<String, Serializable> originalSourceProperties = sourceResponse.getProperties();
-                    if ( originalSourceProperties != null ) {
-                        Serializable object = originalSourceProperties.get( SearchConstants.ELAPSED_TIME );
-                        if ( object != null && object instanceof Long ) {
-                            newSourceProperties.put( SearchConstants.ELAPSED_TIME, (Long) object );
-                            originalSourceProperties.remove( SearchConstants.ELAPSED_TIME );
-                            LOGGER.debug( "Setting the elapsedTime responseProperty to {} for source {}", object, site.getId() );
-                        }
+                if ( sentTotal >= maxResults ) {
+                    LOGGER.debug( "sending terminator for fifo federation strategy." );
+                    closeResultQueue();
+                }
 
-                        returnResults.getProperties().putAll( originalSourceProperties );
+                returnResults.getProperties().put( site.getId(), (Serializable) newSourceProperties );
+                Map<String, Serializable> originalSourceProperties = sourceResponse.getProperties();
+                if ( originalSourceProperties != null ) {
+                    Serializable object = originalSourceProperties.get( SearchConstants.ELAPSED_TIME );
+                    if ( object != null && object instanceof Long ) {
+                        latencyTracker.recordLatency( site.getId(), (Long) object );
+                        newSourceProperties.put( SearchConstants.ELAPSED_TIME, (Long) object );
+                        originalSourceProperties.remove( SearchConstants.ELAPSED_TIME );
+                        LOGGER.debug( "Setting the elapsedTime responseProperty to {} for source {}", object, site.getId() );
                     }
-                }
 
-                if ( updateSites( -1 ) == 0 ) {
-                    LOGGER.debug( "sending terminator for fifo federation strategy." );
-                    returnResults.closeResultQueue();
+                    returnResults.getProperties().putAll( originalSourceProperties );
                 }
+            }
+        }
 
+        private void closeResultQueue() {
+            if ( !queueClosed ) {
+                queueClosed = true;
+                returnResults.closeResultQueue();
             }
         }
+
+        /**
+         * Gets the time remaining before the timeout on a query
+         * 
+         * @param deadline
+         *            - the deadline for the timeout to occur
+         * @return the time remaining prior to the timeout
+         */
+        private long getTimeRemaining( long deadline ) {
+            long timeleft;
+            if ( System.currentTimeMillis() > deadline ) {
+                timeleft = 0;
+            } else {
+                timeleft = deadline - System.currentTimeMillis();
+            }
+            return timeleft;
+        }
     }
 
 }
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) Cohesive Integrations, LLC
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or any later version. 
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details. A copy of the GNU Lesser General Public License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package net.di2e.ecdr.federation;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A rolling histogram of query latencies in milliseconds. Values are recorded into log-linear buckets (eight linear
+ * sub-buckets per power of two) so that percentiles can be read with roughly 12% precision without keeping the
+ * individual samples. The histogram covers the current window plus the previous one, so old samples age out as the
+ * windows rotate.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 24;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final long windowMillis;
+
+    private volatile AtomicLongArray currentWindow = new AtomicLongArray( BUCKET_COUNT );
+    private volatile AtomicLongArray previousWindow = new AtomicLongArray( BUCKET_COUNT );
+    private volatile long windowStart = System.currentTimeMillis();
+
+    public LatencyHistogram( long windowMillis ) {
+        this.windowMillis = windowMillis;
+    }
+
+    public void recordValue( long millis ) {
+        rotateIfNeeded();
+        currentWindow.incrementAndGet( getBucketIndex( millis ) );
+    }
+
+    /**
+     * Returns the number of samples in the current and previous windows.
+     */
+    public long getCount() {
+        rotateIfNeeded();
+        AtomicLongArray current = currentWindow;
+        AtomicLongArray previous = previousWindow;
+        long count = 0;
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+            count += current.get( i ) + previous.get( i );
+        }
+        return count;
+    }
+
+    /**
+     * Returns the latency at the given percentile (0.0 - 1.0 exclusive of 0), rounded up to the top of the bucket it
+     * falls in, or -1 if there are no samples.
+     */
+    public long getValueAtPercentile( double percentile ) {
+        rotateIfNeeded();
+        AtomicLongArray current = currentWindow;
+        AtomicLongArray previous = previousWindow;
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+            counts[i] = current.get( i ) + previous.get( i );
+            total += counts[i];
+        }
+        if ( total == 0 ) {
+            return -1;
+        }
+        long target = Math.max( 1, (long) Math.ceil( percentile * total ) );
+        long seen = 0;
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+            seen += counts[i];
+            if ( seen >= target ) {
+                return getBucketUpperValue( i );
+            }
+        }
+        return getBucketUpperValue( BUCKET_COUNT - 1 );
+    }
+
+    private void rotateIfNeeded() {
+        long now = System.currentTimeMillis();
+        if ( now - windowStart >= windowMillis ) {
+            synchronized ( this ) {
+                if ( now - windowStart >= windowMillis ) {
+                    // if more than two windows went by without a sample everything recorded is stale
+                    previousWindow = now - windowStart >= 2 * windowMillis ? new AtomicLongArray( BUCKET_COUNT ) : currentWindow;
+                    currentWindow = new AtomicLongArray( BUCKET_COUNT );
+                    windowStart = now;
+                }
+            }
+        }
+    }
+
+    static int getBucketIndex( long value ) {
+        if ( value < SUB_BUCKET_COUNT ) {
+            return (int) Math.max( value, 0 );
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros( value );
+        int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1));
+        return Math.min( (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket, BUCKET_COUNT - 1 );
+    }
+
+    static long getBucketUpperValue( int index ) {
+        if ( index < SUB_BUCKET_COUNT ) {
+            return index;
+        }
+        int block = index / SUB_BUCKET_COUNT;
+        int subBucket = index % SUB_BUCKET_COUNT;
+        return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << (block - 1)) - 1;
+    }
+
+}
@@ -148,14 +148,17 @@ public class NormalizingSortedFederationStrategy extends AbstractFederationStrat
             long totalHits = 0;
             Set<ProcessingDetails> processingDetails = returnResults.getProcessingDetails();
 
-            long deadline = System.currentTimeMillis() + query.getTimeoutMillis();
+            long startTime = System.currentTimeMillis();
+            SourceLatencyTracker latencyTracker = getLatencyTracker();
 
             Map<String, Serializable> returnProperties = returnResults.getProperties();
             for ( final Entry<Source, Future<SourceResponse>> entry : futures.entrySet() ) {
                 Source site = entry.getKey();
                 SourceResponse sourceResponse = null;
+                // each source gets its own deadline based on its observed latency, capped by the query timeout
+                long timeout = latencyTracker.getTimeoutMillis( site.getId(), query.getTimeoutMillis() );
                 try {
-                    sourceResponse = query.getTimeoutMillis() < 1 ? entry.getValue().get() : entry.getValue().get( getTimeRemaining( deadline ), TimeUnit.MILLISECONDS );
+                    sourceResponse = timeout < 1 ? entry.getValue().get() : entry.getValue().get( getTimeRemaining( startTime + timeout ), TimeUnit.MILLISECONDS );
                 } catch ( InterruptedException e ) {
                     LOGGER.warn( "Couldn't get results from completed federated query on site with ShortName " + site.getId(), e );
                     processingDetails.add( new ProcessingDetailsImpl( site.getId(), e ) );
@@ -164,9 +167,12 @@ public class NormalizingSortedFederationStrategy extends AbstractFederationStrat
                     if ( LOGGER.isDebugEnabled() ) {
                         LOGGER.debug( "Adding exception to response." );
                     }
-                    processingDetails.add( new ProcessingDetailsImpl( site.getId(), e ) );
+                    // shed queries are reported as such rather than as a generic execution failure
+                    processingDetails.add( new ProcessingDetailsImpl( site.getId(), e.getCause() instanceof QueryShedException ? (Exception) e.getCause() : e ) );
                 } catch ( TimeoutException e ) {
-                    LOGGER.warn( "search timed out: " + new Date() + " on site " + site.getId() );
+                    LOGGER.warn( "search timed out after " + timeout + " milliseconds: " + new Date() + " on site " + site.getId() );
+                    entry.getValue().cancel( true );
+                    latencyTracker.recordLatency( site.getId(), timeout );
                     processingDetails.add( new ProcessingDetailsImpl( site.getId(), e ) );
                 }
                 if ( sourceResponse != null ) {
@@ -183,6 +189,7 @@ public class NormalizingSortedFederationStrategy extends AbstractFederationStrat
                     if ( originalSourceProperties != null ) {
                         Serializable object = originalSourceProperties.get( SearchConstants.ELAPSED_TIME );
                         if ( object != null && object instanceof Long ) {
+                            latencyTracker.recordLatency( site.getId(), (Long) object );
                             newSourceProperties.put( SearchConstants.ELAPSED_TIME, (Long) object );
                             originalSourceProperties.remove( SearchConstants.ELAPSED_TIME );
                             LOGGER.debug( "Setting the elapsedTime responseProperty to {} for source {}", object, site.getId() );
@@ -0,0 +1,28 @@
+/**
+ * Copyright (c) Cohesive Integrations, LLC
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or any later version. 
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details. A copy of the GNU Lesser General Public License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package net.di2e.ecdr.federation;
+
+/**
+ * Reported in the processing details of a federated query for a source whose query was shed because the source
+ * already had as many queries running and queued as its {@link SourceBulkhead} allows.
+ */
+public class QueryShedException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public QueryShedException( String message ) {
+        super( message );
+    }
+
+}
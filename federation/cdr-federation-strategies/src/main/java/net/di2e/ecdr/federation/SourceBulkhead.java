@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) Cohesive Integrations, LLC
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or any later version. 
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details. A copy of the GNU Lesser General Public License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package net.di2e.ecdr.federation;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of concurrent queries to each source, so one slow source can not hold every thread of the shared
+ * query executor and starve the queries to healthy sources. Queries beyond the limit wait in a bounded per source
+ * queue (without holding an executor thread), and queries that find the queue full as well are shed: they fail
+ * immediately with a {@link QueryShedException} instead of waiting.
+ * <p>
+ * Queued queries run on the thread of a query to the same source as it finishes, so a source never has more than the
+ * configured number of threads in use.
+ */
+public class SourceBulkhead {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( SourceBulkhead.class );
+
+    private static final int DEFAULT_MAX_CONCURRENT = 20;
+    private static final int DEFAULT_MAX_QUEUED = 100;
+
+    private final ConcurrentMap<String, Partition> partitions = new ConcurrentHashMap<String, Partition>();
+
+    private volatile int maxConcurrent = DEFAULT_MAX_CONCURRENT;
+    private volatile int maxQueued = DEFAULT_MAX_QUEUED;
+
+    /**
+     * Runs the query task on the executor if the source is below its concurrency limit, otherwise queues it.
+     * 
+     * @return false if the query was shed because the source is at its limit and its queue is full
+     */
+    public boolean execute( String sourceId, Runnable task, Executor executor ) {
+        Partition partition = getPartition( sourceId );
+        synchronized ( partition ) {
+            if ( maxConcurrent > 0 && partition.running >= maxConcurrent ) {
+                if ( partition.queue.size() < maxQueued ) {
+                    LOGGER.debug( "Source [{}] is at its limit of [{}] concurrent queries, queueing the query", sourceId, maxConcurrent );
+                    partition.queue.add( task );
+                    return true;
+                }
+                LOGGER.warn( "Shedding query to source [{}] which has [{}] queries running and [{}] queued", sourceId, partition.running, partition.queue.size() );
+                return false;
+            }
+            partition.running++;
+        }
+        try {
+            executor.execute( new BulkheadTask( partition, task ) );
+        } catch ( RejectedExecutionException e ) {
+            release( sourceId );
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Takes a slot for a query that does not use an executor thread (an asynchronous source). Such queries can not be
+     * queued, so they are shed as soon as the source is at its limit. Every successful call must be followed by a call
+     * to {@link #release(String)} once the query completes.
+     * 
+     * @return false if the query should be shed
+     */
+    public boolean tryAcquire( String sourceId ) {
+        Partition partition = getPartition( sourceId );
+        synchronized ( partition ) {
+            if ( maxConcurrent > 0 && partition.running >= maxConcurrent ) {
+                LOGGER.warn( "Shedding query to source [{}] which has [{}] queries running", sourceId, partition.running );
+                return false;
+            }
+            partition.running++;
+        }
+        return true;
+    }
+
+    public void release( String sourceId ) {
+        Partition partition = getPartition( sourceId );
+        synchronized ( partition ) {
+            partition.running--;
+        }
+    }
+
+    public QueryShedException createShedException( String sourceId ) {
+        return new QueryShedException( "Query to source [" + sourceId + "] was shed because the source is at its limit of [" + maxConcurrent + "] concurrent queries and ["
+                + maxQueued + "] queued queries" );
+    }
+
+    /**
+     * @param max
+     *            the maximum number of queries running on a source at one time, less than 1 means no limit
+     */
+    public void setMaxConcurrentQueries( int max ) {
+        LOGGER.debug( "ConfigUpdate: Updating the max concurrent queries per source from [{}] to [{}]", maxConcurrent, max );
+        maxConcurrent = max;
+    }
+
+    /**
+     * @param max
+     *            the maximum number of queries waiting for a source that is at its concurrency limit
+     */
+    public void setMaxQueuedQueries( int max ) {
+        LOGGER.debug( "ConfigUpdate: Updating the max queued queries per source from [{}] to [{}]", maxQueued, max );
+        maxQueued = Math.max( max, 0 );
+    }
+
+    private Partition getPartition( String sourceId ) {
+        String key = String.valueOf( sourceId );
+        Partition partition = partitions.get( key );
+        if ( partition == null ) {
+            partition = new Partition();
+            Partition existing = partitions.putIfAbsent( key, partition );
+            if ( existing != null ) {
+                partition = existing;
+            }
+        }
+        return partition;
+    }
+
+    private static final class Partition {
+        private int running = 0;
+        private final Deque<Runnable> queue = new ArrayDeque<Runnable>();
+    }
+
+    /**
+     * Runs a query and then the queries queued for the same source, releasing the slot once the queue is empty.
+     */
+    private static final class BulkheadTask implements Runnable {
+
+        private final Partition partition;
+        private Runnable task;
+
+        BulkheadTask( Partition partition, Runnable task ) {
+            this.partition = partition;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            while ( task != null ) {
+                try {
+                    task.run();
+                } catch ( RuntimeException e ) {
+                    LOGGER.warn( "Federated query task failed: " + e.getMessage(), e );
+                } finally {
+                    synchronized ( partition ) {
+                        task = partition.queue.poll();
+                        if ( task == null ) {
+                            partition.running--;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) Cohesive Integrations, LLC
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or any later version. 
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details. A copy of the GNU Lesser General Public License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package net.di2e.ecdr.federation;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a {@link LatencyHistogram} for every source that has been queried and derives an adaptive timeout from it: the
+ * 99th percentile latency multiplied by a configurable factor, capped by the query timeout. Sources are held to the
+ * query timeout until enough samples have been recorded to trust the percentile.
+ */
+public class SourceLatencyTracker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( SourceLatencyTracker.class );
+
+    private static final double DEFAULT_TIMEOUT_FACTOR = 3.0;
+    private static final double TIMEOUT_PERCENTILE = 0.99;
+    private static final int MINIMUM_SAMPLES = 20;
+    private static final long MINIMUM_TIMEOUT_MILLIS = 1000;
+    private static final long WINDOW_MILLIS = TimeUnit.MINUTES.toMillis( 10 );
+
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+
+    private volatile boolean enabled = true;
+    private volatile double timeoutFactor = DEFAULT_TIMEOUT_FACTOR;
+
+    public void recordLatency( String sourceId, long elapsedMillis ) {
+        if ( sourceId != null && elapsedMillis >= 0 ) {
+            getHistogram( sourceId ).recordValue( elapsedMillis );
+        }
+    }
+
+    /**
+     * Gets the timeout to apply to a query on the source.
+     * 
+     * @param sourceId
+     *            the id of the source being queried
+     * @param queryTimeoutMillis
+     *            the timeout of the query, anything less than 1 means no timeout
+     * @return the timeout in milliseconds, less than 1 if the source should not be timed out
+     */
+    public long getTimeoutMillis( String sourceId, long queryTimeoutMillis ) {
+        if ( !enabled || sourceId == null ) {
+            return queryTimeoutMillis;
+        }
+        LatencyHistogram histogram = histograms.get( sourceId );
+        if ( histogram == null || histogram.getCount() < MINIMUM_SAMPLES ) {
+            return queryTimeoutMillis;
+        }
+        long adaptiveTimeout = Math.max( MINIMUM_TIMEOUT_MILLIS, (long) (histogram.getValueAtPercentile( TIMEOUT_PERCENTILE ) * timeoutFactor) );
+        if ( queryTimeoutMillis > 0 && queryTimeoutMillis < adaptiveTimeout ) {
+            return queryTimeoutMillis;
+        }
+        LOGGER.debug( "Using adaptive timeout of [{}] milliseconds for source [{}]", adaptiveTimeout, sourceId );
+        return adaptiveTimeout;
+    }
+
+    public void setEnabled( boolean enabled ) {
+        LOGGER.debug( "ConfigUpdate: Updating the adaptive timeout enabled value from [{}] to [{}]", this.enabled, enabled );
+        this.enabled = enabled;
+    }
+
+    public void setTimeoutFactor( double factor ) {
+        if ( factor > 1 ) {
+            LOGGER.debug( "ConfigUpdate: Updating the adaptive timeout factor value from [{}] to [{}]", timeoutFactor, factor );
+            timeoutFactor = factor;
+        } else {
+            LOGGER.warn( "ConfigUpdate: Adaptive timeout factor must be greater than 1, keeping the current value of [{}]", timeoutFactor );
+        }
+    }
+
+    private LatencyHistogram getHistogram( String sourceId ) {
+        LatencyHistogram histogram = histograms.get( sourceId );
+        if ( histogram == null ) {
+            LatencyHistogram newHistogram = new LatencyHistogram( WINDOW_MILLIS );
+            histogram = histograms.putIfAbsent( sourceId, newHistogram );
+            if ( histogram == null ) {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) Cohesive Integrations, LLC
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or any later version. 
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details. A copy of the GNU Lesser General Public License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package net.di2e.ecdr.federation;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import net.di2e.ecdr.commons.constants.SearchConstants;
+import net.di2e.ecdr.commons.query.AsyncQuerySource;
+import net.di2e.ecdr.commons.query.SourceQueryCallback;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.operation.Query;
+import ddf.catalog.operation.QueryRequest;
+import ddf.catalog.operation.SourceResponse;
+import ddf.catalog.operation.impl.QueryRequestImpl;
+import ddf.catalog.source.Source;
+
+/**
+ * Starts the query of a federated search on each source, subject to the {@link SourceBulkhead}. Queries to sources
+ * that support asynchronous queries run on the threads of the source, all other queries run on the query executor of
+ * the federation strategy.
+ * <p>
+ * The bulkhead slot of a query is held until the query to the source has really finished. A query that is cancelled
+ * (for example because it timed out) keeps its slot while the source is still working on it, so a slow source can not
+ * pile up more than the configured number of queries.
+ */
+public class SourceQueryRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( SourceQueryRunner.class );
+
+    private final SourceBulkhead bulkhead;
+    private final ExecutorService queryExecutorService;
+
+    public SourceQueryRunner( SourceBulkhead bulkhead, ExecutorService queryExecutorService ) {
+        this.bulkhead = bulkhead;
+        this.queryExecutorService = queryExecutorService;
+    }
+
+    /**
+     * Starts the query on the source. A query that is shed is returned as an already failed future, so it is reported
+     * like any other failed source.
+     * 
+     * @param completionListener
+     *            run once the query finishes, fails or is shed, may be null
+     * @return the future holding the response of the source
+     */
+    public Future<SourceResponse> startQuery( Source source, QueryRequest queryRequest, final Runnable completionListener ) {
+        final String sourceId = source.getId();
+        if ( source instanceof AsyncQuerySource ) {
+            if ( !bulkhead.tryAcquire( sourceId ) ) {
+                return shedQuery( sourceId, completionListener );
+            }
+            LOGGER.debug( "Source [{}] supports asynchronous queries, executing it on the threads of the source", sourceId );
+            // the source calls back once its query has finished running, even if the future was cancelled before that
+            return ((AsyncQuerySource) source).queryAsync( new QueryRequestImpl( queryRequest.getQuery(), queryRequest.getProperties() ), new SourceQueryCallback() {
+                @Override
+                public void completed( SourceResponse sourceResponse ) {
+                    finished();
+                }
+
+                @Override
+                public void failed( Throwable cause ) {
+                    finished();
+                }
+
+                private void finished() {
+                    bulkhead.release( sourceId );
+                    notifyListener( completionListener );
+                }
+            } );
+        }
+
+        // the bulkhead holds the slot until the task returns, which is only once the call to the source has returned
+        FutureTask<SourceResponse> task = new ListenableFutureTask( new CallableSourceResponse( source, queryRequest.getQuery(), queryRequest.getProperties() ), completionListener );
+        if ( !bulkhead.execute( sourceId, task, queryExecutorService ) ) {
+            return shedQuery( sourceId, completionListener );
+        }
+        return task;
+    }
+
+    private Future<SourceResponse> shedQuery( String sourceId, Runnable completionListener ) {
+        final QueryShedException shedException = bulkhead.createShedException( sourceId );
+        FutureTask<SourceResponse> task = new ListenableFutureTask( new Callable<SourceResponse>() {
+            @Override
+            public SourceResponse call() throws QueryShedException {
+                throw shedException;
+            }
+        }, completionListener );
+        task.run();
+        return task;
+    }
+
+    private static void notifyListener( Runnable completionListener ) {
+        if ( completionListener != null ) {
+            completionListener.run();
+        }
+    }
+
+    /**
+     * Runs the completion listener once the task is done, which for a cancelled task is as soon as it is cancelled.
+     */
+    private static final class ListenableFutureTask extends FutureTask<SourceResponse> {
+
+        private final Runnable completionListener;
+
+        ListenableFutureTask( Callable<SourceResponse> callable, Runnable completionListener ) {
+            super( callable );
+            this.completionListener = completionListener;
+        }
+
+        @Override
+        protected void done() {
+            notifyListener( completionListener );
+        }
+    }
+
+    private static final class CallableSourceResponse implements Callable<SourceResponse> {
+
+        private Query query = null;
+
+        private Source source = null;
+
+        private Map<String, Serializable> properties = null;
+
+        public CallableSourceResponse( Source source, Query query, Map<String, Serializable> properties ) {
+            this.source = source;
+            this.query = query;
+            this.properties = properties;
+        }
+
+        @Override
+        public SourceResponse call() throws Exception {
+            long startTime = System.currentTimeMillis();
+            SourceResponse sourceResponse = source.query( new QueryRequestImpl( query, properties ) );
+            long elapsedTime = System.currentTimeMillis() - startTime;
+            LOGGER.debug( "The source {} responded to the query in {} milliseconds", source.getId(), elapsedTime );
+            sourceResponse.getProperties().put( SearchConstants.ELAPSED_TIME, elapsedTime );
+            return sourceResponse;
+        }
+    }
+
+}
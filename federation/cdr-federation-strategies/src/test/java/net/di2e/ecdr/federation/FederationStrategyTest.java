@@ -22,8 +22,10 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -33,16 +35,23 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import net.di2e.ecdr.commons.constants.SearchConstants;
+import net.di2e.ecdr.commons.query.AsyncQuerySource;
+import net.di2e.ecdr.commons.query.SourceQueryCallback;
 
 import org.geotools.filter.FilterFactoryImpl;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.opengis.filter.FilterFactory;
 import org.opengis.filter.sort.SortOrder;
 import org.powermock.api.mockito.PowerMockito;
@@ -193,6 +202,57 @@ public class FederationStrategyTest {
         assertEquals( 1, fedResponse.getResults().size() );
     }
 
+    /**
+     * Verifies that sources supporting asynchronous queries are queried through
+     * {@link AsyncQuerySource#queryAsync(QueryRequest, SourceQueryCallback)} instead of the blocking query method.
+     */
+    @Test
+    public void testAsyncSourceQuery() throws Exception {
+        Query query = mock( Query.class );
+        when( query.getPageSize() ).thenReturn( 10 );
+        when( query.getTimeoutMillis() ).thenReturn( LONG_TIMEOUT );
+
+        QueryRequest fedQueryRequest = mock( QueryRequest.class );
+        when( fedQueryRequest.getQuery() ).thenReturn( query );
+
+        final SourceResponse mockResponse = mock( SourceResponse.class );
+        List<Result> results = Arrays.asList( mock( Result.class ) );
+        when( mockResponse.getHits() ).thenReturn( (long) results.size() );
+        when( mockResponse.getResults() ).thenReturn( results );
+
+        Source asyncSource = mock( Source.class, withSettings().extraInterfaces( AsyncQuerySource.class ) );
+        when( asyncSource.getId() ).thenReturn( "async source" );
+        when( ((AsyncQuerySource) asyncSource).queryAsync( any( QueryRequest.class ), any( SourceQueryCallback.class ) ) ).thenAnswer( new Answer<Future<SourceResponse>>() {
+            @Override
+            public Future<SourceResponse> answer( InvocationOnMock invocation ) {
+                FutureTask<SourceResponse> future = new FutureTask<SourceResponse>( new Callable<SourceResponse>() {
+                    @Override
+                    public SourceResponse call() {
+                        return mockResponse;
+                    }
+                } );
+                future.run();
+                SourceQueryCallback callback = (SourceQueryCallback) invocation.getArguments()[1];
+                if ( callback != null ) {
+                    callback.completed( mockResponse );
+                }
+                return future;
+            }
+        } );
+
+        List<Source> sources = new ArrayList<Source>();
+        sources.add( asyncSource );
+
+        NormalizingSortedFederationStrategy sortedStrategy = new NormalizingSortedFederationStrategy( EXECUTOR, new ArrayList<PreFederatedQueryPlugin>(), new ArrayList<PostFederatedQueryPlugin>(), null );
+        sortedStrategy.setNormalizeResults( false );
+        assertEquals( 1, sortedStrategy.federate( sources, fedQueryRequest ).getResults().size() );
+
+        FifoFederationStrategy fifoStrategy = new FifoFederationStrategy( EXECUTOR, new ArrayList<PreFederatedQueryPlugin>(), new ArrayList<PostFederatedQueryPlugin>() );
+        assertEquals( 1, fifoStrategy.federate( sources, fedQueryRequest ).getResults().size() );
+
+        verify( asyncSource, never() ).query( any( QueryRequest.class ) );
+    }
+
     /**
      * Verify that a modified version of the query passed into {@link
      * ddf.catalog.federation.AbstractFederationStrategy#federate(List<Source>, QueryRequest)} is used by the sources.
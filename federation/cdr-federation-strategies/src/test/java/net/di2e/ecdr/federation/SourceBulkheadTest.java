@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package net.di2e.ecdr.federation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SourceBulkheadTest {
+
+    @Test
+    public void testQueuesAndShedsPerSource() throws Exception {
+        SourceBulkhead bulkhead = new SourceBulkhead();
+        bulkhead.setMaxConcurrentQueries( 1 );
+        bulkhead.setMaxQueuedQueries( 1 );
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final CountDownLatch release = new CountDownLatch( 1 );
+            final AtomicInteger completed = new AtomicInteger();
+            final CountDownLatch done = new CountDownLatch( 3 );
+            Runnable slowQuery = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await( 5, TimeUnit.SECONDS );
+                    } catch ( InterruptedException e ) {
+                        Thread.currentThread().interrupt();
+                    }
+                    completed.incrementAndGet();
+                    done.countDown();
+                }
+            };
+
+            assertTrue( bulkhead.execute( "slow", slowQuery, executor ) );
+            assertTrue( bulkhead.execute( "slow", slowQuery, executor ) );
+            // the slow source is running one query and has one queued, so the next is shed
+            assertFalse( bulkhead.execute( "slow", slowQuery, executor ) );
+            assertFalse( bulkhead.tryAcquire( "slow" ) );
+
+            // other sources are unaffected
+            assertTrue( bulkhead.execute( "healthy", slowQuery, executor ) );
+
+            release.countDown();
+            assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+            assertEquals( 3, completed.get() );
+
+            // once the queue has drained the source accepts queries again
+            final CountDownLatch next = new CountDownLatch( 1 );
+            long deadline = System.currentTimeMillis() + 5000;
+            while ( !bulkhead.tryAcquire( "slow" ) && System.currentTimeMillis() < deadline ) {
+                Thread.sleep( 5 );
+            }
+            bulkhead.release( "slow" );
+            assertTrue( bulkhead.execute( "slow", new Runnable() {
+                @Override
+                public void run() {
+                    next.countDown();
+                }
+            }, executor ) );
+            assertTrue( next.await( 5, TimeUnit.SECONDS ) );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testNoLimit() throws Exception {
+        SourceBulkhead bulkhead = new SourceBulkhead();
+        bulkhead.setMaxConcurrentQueries( 0 );
+        List<String> acquired = new ArrayList<String>();
+        for ( int i = 0; i < 1000; i++ ) {
+            assertTrue( bulkhead.tryAcquire( "source" ) );
+            acquired.add( "source" );
+        }
+        for ( String sourceId : acquired ) {
+            bulkhead.release( sourceId );
+        }
+        assertTrue( bulkhead.createShedException( "source" ).getMessage().contains( "shed" ) );
+    }
+
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package net.di2e.ecdr.federation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SourceLatencyTrackerTest {
+
+    @Test
+    public void testQueryTimeoutUsedUntilEnoughSamples() {
+        SourceLatencyTracker tracker = new SourceLatencyTracker();
+        for ( int i = 0; i < 10; i++ ) {
+            tracker.recordLatency( "source", 100 );
+        }
+        assertEquals( 30000, tracker.getTimeoutMillis( "source", 30000 ) );
+        assertEquals( 0, tracker.getTimeoutMillis( "unknown", 0 ) );
+    }
+
+    @Test
+    public void testAdaptiveTimeout() {
+        SourceLatencyTracker tracker = new SourceLatencyTracker();
+        for ( int i = 0; i < 100; i++ ) {
+            tracker.recordLatency( "source", 500 );
+        }
+        long timeout = tracker.getTimeoutMillis( "source", 30000 );
+        // p99 of 500ms with the default factor of 3, within the precision of the histogram
+        assertTrue( timeout >= 1500 && timeout < 1800 );
+        // still capped by the query timeout
+        assertEquals( 1000, tracker.getTimeoutMillis( "source", 1000 ) );
+
+        tracker.setEnabled( false );
+        assertEquals( 30000, tracker.getTimeoutMillis( "source", 30000 ) );
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram( 60000 );
+        for ( int i = 1; i <= 1000; i++ ) {
+            histogram.recordValue( i );
+        }
+        assertEquals( 1000, histogram.getCount() );
+        long p50 = histogram.getValueAtPercentile( 0.5 );
+        long p99 = histogram.getValueAtPercentile( 0.99 );
+        assertTrue( p50 >= 500 && p50 < 560 );
+        assertTrue( p99 >= 990 && p99 < 1120 );
+    }
+
+}
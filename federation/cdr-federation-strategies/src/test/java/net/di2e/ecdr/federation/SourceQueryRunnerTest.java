@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package net.di2e.ecdr.federation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.di2e.ecdr.commons.query.AsyncQuerySource;
+import net.di2e.ecdr.commons.query.SourceQueryCallback;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import ddf.catalog.operation.Query;
+import ddf.catalog.operation.QueryRequest;
+import ddf.catalog.operation.SourceResponse;
+import ddf.catalog.operation.impl.QueryRequestImpl;
+import ddf.catalog.source.Source;
+
+public class SourceQueryRunnerTest {
+
+    @Test
+    public void testCancelledAsyncQueryKeepsSlotUntilFinished() throws Exception {
+        SourceBulkhead bulkhead = new SourceBulkhead();
+        bulkhead.setMaxConcurrentQueries( 1 );
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final AtomicReference<SourceQueryCallback> callback = new AtomicReference<SourceQueryCallback>();
+            Source source = mock( Source.class, withSettings().extraInterfaces( AsyncQuerySource.class ) );
+            when( source.getId() ).thenReturn( "slow" );
+            when( ((AsyncQuerySource) source).queryAsync( any( QueryRequest.class ), any( SourceQueryCallback.class ) ) ).thenAnswer( new Answer<Future<SourceResponse>>() {
+                @Override
+                public Future<SourceResponse> answer( InvocationOnMock invocation ) {
+                    callback.set( (SourceQueryCallback) invocation.getArguments()[1] );
+                    // never run, like a query still waiting on the remote source
+                    return new FutureTask<SourceResponse>( new Runnable() {
+                        @Override
+                        public void run() {
+                        }
+                    }, null );
+                }
+            } );
+
+            final AtomicInteger completions = new AtomicInteger();
+            Runnable listener = new Runnable() {
+                @Override
+                public void run() {
+                    completions.incrementAndGet();
+                }
+            };
+            SourceQueryRunner runner = new SourceQueryRunner( bulkhead, executor );
+            Future<SourceResponse> future = runner.startQuery( source, new QueryRequestImpl( mock( Query.class ) ), listener );
+            future.cancel( true );
+
+            // the source is still working on the cancelled query, so it keeps its slot
+            assertFalse( bulkhead.tryAcquire( "slow" ) );
+            assertEquals( 0, completions.get() );
+
+            callback.get().failed( new InterruptedException() );
+            assertEquals( 1, completions.get() );
+            assertTrue( bulkhead.tryAcquire( "slow" ) );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
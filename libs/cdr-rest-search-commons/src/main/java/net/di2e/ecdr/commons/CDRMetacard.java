@@ -62,6 +62,14 @@ public class CDRMetacard extends MetacardImpl {
         originalMetacard = metacard;
     }
 
+    /**
+     * @return the wrapped metacard, whose attributes are returned as they were set (without retrieving the metadata or
+     *         thumbnail from their links)
+     */
+    public Metacard getOriginalMetacard() {
+        return originalMetacard;
+    }
+
     public boolean hasLocation() {
         return originalMetacard.getLocation() != null;
     }
@@ -20,9 +20,13 @@ import java.io.InputStream;
 import java.io.Serializable;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.GET;
@@ -50,6 +54,10 @@ import net.di2e.ecdr.search.transform.mapper.TransformIdMapper;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
+import org.apache.cxf.jaxrs.impl.MetadataMap;
+import org.apache.shiro.SecurityUtils;
+import org.apache.shiro.UnavailableSecurityManagerException;
+import org.apache.shiro.subject.Subject;
 import org.codice.ddf.configuration.impl.ConfigurationWatcherImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -76,6 +84,12 @@ public abstract class AbstractRestSearchEndpoint implements RegistrableService {
 
     private TransformIdMapper transformMapper = null;
 
+    private boolean prefetchNextPage = false;
+    private long prefetchBudgetMillis = 30000;
+    private long prefetchTimeToLive = 60000;
+    private int prefetchMaxPages = 100;
+    private volatile NextPagePrefetcher pagePrefetcher = null;
+
     /**
      * Constructor for JAX RS CDR Search Service. Values should ideally be
      * passed into the constructor using a dependency injection framework like
@@ -130,7 +144,16 @@ public abstract class AbstractRestSearchEndpoint implements RegistrableService {
             MultivaluedMap<String, String> queryParameters = uriInfo.getQueryParameters();
             CDRQueryImpl query = new CDRQueryImpl( filterBuilder, queryParameters, queryParser, useDefaultSortIfNotSpecified(), localSourceId );
 
-            queryResponse = executeQuery( localSourceId, queryParameters, query );
+            NextPagePrefetcher prefetcher = pagePrefetcher;
+            if ( prefetcher != null ) {
+                queryResponse = prefetcher.getPrefetchedPage( getPageKey( servletRequest, auth, queryParameters, query.getStartIndex() ) );
+            }
+            if ( queryResponse == null ) {
+                queryResponse = executeQuery( localSourceId, queryParameters, query );
+            }
+            if ( prefetcher != null ) {
+                prefetchNextPage( prefetcher, servletRequest, auth, localSourceId, queryParameters, query, queryResponse );
+            }
 
             // Move the specific links into Atom Transformer if possible
             Map<String, Serializable> transformProperties = QueryHelper.getTransformLinkProperties( uriInfo, query, queryResponse,
@@ -181,6 +204,116 @@ public abstract class AbstractRestSearchEndpoint implements RegistrableService {
         return response;
     }
 
+    /**
+     * Starts fetching the page after the one that was just returned, if there are more results, so that it is ready
+     * when the client asks for it. The prefetch query is the same query with the start index moved forward, a new
+     * query id, and a timeout no longer than the prefetch budget. It runs as the subject of the current request, so
+     * the sources and plugins filter it for the same user; without a subject nothing is prefetched.
+     */
+    private void prefetchNextPage( NextPagePrefetcher prefetcher, HttpServletRequest servletRequest, String auth, final String localSourceId,
+            MultivaluedMap<String, String> queryParameters, CDRQueryImpl query, QueryResponse queryResponse ) {
+        int nextStartIndex = query.getStartIndex() + query.getPageSize();
+        if ( query.getPageSize() <= 0 || queryResponse == null || queryResponse.getHits() < nextStartIndex ) {
+            return;
+        }
+
+        final MultivaluedMap<String, String> nextParameters = new MetadataMap<String, String>();
+        for ( Map.Entry<String, List<String>> entry : queryParameters.entrySet() ) {
+            if ( !SearchConstants.OID_PARAMETER.equals( entry.getKey() ) ) {
+                nextParameters.put( entry.getKey(), new ArrayList<String>( entry.getValue() ) );
+            }
+        }
+        nextParameters.putSingle( SearchConstants.STARTINDEX_PARAMETER, String.valueOf( nextStartIndex ) );
+        nextParameters.putSingle( SearchConstants.TIMEOUT_PARAMETER, String.valueOf( Math.min( query.getTimeoutMillis(), prefetcher.getBudgetMillis() ) ) );
+
+        Subject subject = getRequestSubject();
+        if ( subject == null ) {
+            LOGGER.debug( "No subject is bound to the request, so the next page is not prefetched" );
+            return;
+        }
+        prefetcher.prefetch( getPageKey( servletRequest, auth, queryParameters, nextStartIndex ), subject.associateWith( new Callable<QueryResponse>() {
+            @Override
+            public QueryResponse call() throws Exception {
+                CDRQueryImpl nextQuery = new CDRQueryImpl( filterBuilder, nextParameters, queryParser, useDefaultSortIfNotSpecified(), localSourceId );
+                return executeQuery( localSourceId, nextParameters, nextQuery );
+            }
+        } ) );
+    }
+
+    private Subject getRequestSubject() {
+        try {
+            return SecurityUtils.getSubject();
+        } catch ( UnavailableSecurityManagerException e ) {
+            return null;
+        }
+    }
+
+    /**
+     * Identifies one page of a query for one client: the query parameters other than the start index, query id and
+     * timeout, along with the credentials of the request so pages are never shared between users.
+     */
+    private String getPageKey( HttpServletRequest servletRequest, String auth, MultivaluedMap<String, String> queryParameters, int startIndex ) {
+        StringBuilder key = new StringBuilder();
+        for ( Map.Entry<String, List<String>> entry : new TreeMap<String, List<String>>( queryParameters ).entrySet() ) {
+            String name = entry.getKey();
+            if ( !SearchConstants.STARTINDEX_PARAMETER.equals( name ) && !SearchConstants.OID_PARAMETER.equals( name ) && !SearchConstants.TIMEOUT_PARAMETER.equals( name ) ) {
+                key.append( name ).append( '=' ).append( entry.getValue() ).append( '&' );
+            }
+        }
+        key.append( SearchConstants.STARTINDEX_PARAMETER ).append( '=' ).append( startIndex );
+        key.append( '#' ).append( StringUtils.defaultString( auth ) );
+        Principal principal = servletRequest == null ? null : servletRequest.getUserPrincipal();
+        if ( principal != null ) {
+            key.append( '#' ).append( principal.getName() );
+        }
+        return key.toString();
+    }
+
+    /**
+     * Sets whether the next page of a query is fetched in the background while the client reads the current one.
+     */
+    public void setPrefetchNextPage( boolean prefetch ) {
+        LOGGER.debug( "ConfigUpdate: Updating the prefetch next page value from [{}] to [{}]", prefetchNextPage, prefetch );
+        prefetchNextPage = prefetch;
+        resetPagePrefetcher();
+    }
+
+    public void setPrefetchBudgetSeconds( int seconds ) {
+        LOGGER.debug( "ConfigUpdate: Updating the prefetch budget value from [{}] to [{}] seconds", prefetchBudgetMillis / 1000, seconds );
+        prefetchBudgetMillis = seconds * 1000L;
+        resetPagePrefetcher();
+    }
+
+    public void setPrefetchTimeToLiveSeconds( int seconds ) {
+        LOGGER.debug( "ConfigUpdate: Updating the prefetch time to live value from [{}] to [{}] seconds", prefetchTimeToLive / 1000, seconds );
+        prefetchTimeToLive = seconds * 1000L;
+        resetPagePrefetcher();
+    }
+
+    public void setPrefetchMaxPages( int maxPages ) {
+        LOGGER.debug( "ConfigUpdate: Updating the prefetch max pages value from [{}] to [{}]", prefetchMaxPages, maxPages );
+        prefetchMaxPages = maxPages;
+        resetPagePrefetcher();
+    }
+
+    private synchronized void resetPagePrefetcher() {
+        if ( pagePrefetcher != null ) {
+            pagePrefetcher.shutdown();
+        }
+        pagePrefetcher = prefetchNextPage && prefetchBudgetMillis > 0 && prefetchTimeToLive > 0 && prefetchMaxPages > 0 ? new NextPagePrefetcher( prefetchBudgetMillis,
+                prefetchTimeToLive, prefetchMaxPages ) : null;
+    }
+
+    /**
+     * Stops the prefetching of pages, called when the endpoint is destroyed.
+     */
+    public synchronized void destroy() {
+        if ( pagePrefetcher != null ) {
+            pagePrefetcher.shutdown();
+            pagePrefetcher = null;
+        }
+    }
+
     @GET
     @Path( "/osd.xml" )
     @Produces( "application/opensearchdescription+xml" )
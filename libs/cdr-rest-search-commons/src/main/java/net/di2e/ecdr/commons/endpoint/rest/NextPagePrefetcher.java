@@ -0,0 +1,170 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.commons.endpoint.rest;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.operation.QueryResponse;
+
+/**
+ * Fetches the next page of a query in the background while the client is reading the current page, and holds it for
+ * a short time so that the request for that page can be answered without another round trip to the sources.
+ * Prefetched pages are handed out once; an abandoned prefetch simply expires. Prefetch queries run on a small pool of
+ * threads owned by the prefetcher, which is stopped with {@link #shutdown()}.
+ */
+public class NextPagePrefetcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( NextPagePrefetcher.class );
+
+    private static final int PREFETCH_THREADS = 4;
+    private static final long PREFETCH_THREAD_KEEP_ALIVE_SECONDS = 60;
+    private static final AtomicInteger PREFETCH_THREAD_COUNT = new AtomicInteger();
+
+    private final ThreadPoolExecutor prefetchExecutor;
+
+    private final Map<String, PrefetchedPage> pages = new ConcurrentHashMap<String, PrefetchedPage>();
+
+    private final long budgetMillis;
+    private final long timeToLive;
+    private final int maxPages;
+
+    /**
+     * @param budgetMillis
+     *            the maximum time a prefetch query may take, which is also the longest a request waits on a prefetch
+     *            that is still running
+     * @param timeToLive
+     *            time in milliseconds a prefetched page is kept after the prefetch started
+     * @param maxPages
+     *            maximum number of prefetched pages held (or in progress) at one time
+     */
+    public NextPagePrefetcher( long budgetMillis, long timeToLive, int maxPages ) {
+        this.budgetMillis = budgetMillis;
+        this.timeToLive = timeToLive;
+        this.maxPages = maxPages;
+        // pending prefetches are already bounded by the max pages, so the queue does not need its own bound
+        prefetchExecutor = new ThreadPoolExecutor( PREFETCH_THREADS, PREFETCH_THREADS, PREFETCH_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread( Runnable runnable ) {
+                        Thread thread = new Thread( runnable, "cdr-page-prefetch-" + PREFETCH_THREAD_COUNT.incrementAndGet() );
+                        thread.setDaemon( true );
+                        return thread;
+                    }
+                } );
+        prefetchExecutor.allowCoreThreadTimeOut( true );
+    }
+
+    /**
+     * @return the time in milliseconds a prefetch query is allowed to take
+     */
+    public long getBudgetMillis() {
+        return budgetMillis;
+    }
+
+    /**
+     * Starts fetching a page in the background, unless that page is already prefetched or the maximum number of
+     * prefetched pages has been reached. The query runs on another thread, so it has to carry the identity of the user
+     * it is run for (see {@link org.apache.shiro.subject.Subject#associateWith(Callable)}).
+     */
+    public void prefetch( String pageKey, Callable<QueryResponse> query ) {
+        removeExpiredPages();
+        if ( pages.containsKey( pageKey ) || pages.size() >= maxPages ) {
+            return;
+        }
+        PrefetchedPage page = new PrefetchedPage( System.currentTimeMillis() + timeToLive );
+        if ( pages.put( pageKey, page ) == null ) {
+            LOGGER.debug( "Prefetching the next page for [{}]", pageKey );
+            try {
+                page.response = prefetchExecutor.submit( query );
+            } catch ( RejectedExecutionException e ) {
+                LOGGER.debug( "Prefetcher has been shut down, not prefetching the next page for [{}]", pageKey );
+                pages.remove( pageKey, page );
+            }
+        }
+    }
+
+    /**
+     * Stops the prefetch queries that are running and drops the prefetched pages.
+     */
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+        pages.clear();
+    }
+
+    /**
+     * Returns the prefetched page for the key, waiting for the rest of the budget if the prefetch is still running.
+     * 
+     * @return the prefetched response, or null if there is none (or the prefetch failed) and the query should be run
+     */
+    public QueryResponse getPrefetchedPage( String pageKey ) {
+        PrefetchedPage page = pages.remove( pageKey );
+        if ( page == null || page.response == null || page.expiration < System.currentTimeMillis() ) {
+            return null;
+        }
+        try {
+            QueryResponse response = page.response.get( Math.max( page.started + budgetMillis - System.currentTimeMillis(), 0 ), TimeUnit.MILLISECONDS );
+            LOGGER.debug( "Returning prefetched page for [{}]", pageKey );
+            return response;
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        } catch ( ExecutionException e ) {
+            LOGGER.debug( "Prefetch of page [{}] failed, so the query will be run again: {}", pageKey, e.getCause() == null ? null : e.getCause().getMessage() );
+        } catch ( TimeoutException e ) {
+            LOGGER.debug( "Prefetch of page [{}] did not finish within its budget, so the query will be run again", pageKey );
+            page.response.cancel( true );
+        }
+        return null;
+    }
+
+    private void removeExpiredPages() {
+        long now = System.currentTimeMillis();
+        for ( Iterator<PrefetchedPage> iterator = pages.values().iterator(); iterator.hasNext(); ) {
+            PrefetchedPage page = iterator.next();
+            if ( page.expiration < now ) {
+                iterator.remove();
+                if ( page.response != null ) {
+                    page.response.cancel( true );
+                }
+            }
+        }
+    }
+
+    private static class PrefetchedPage {
+        private final long started = System.currentTimeMillis();
+        private final long expiration;
+        private volatile Future<QueryResponse> response;
+
+        PrefetchedPage( long expiration ) {
+            this.expiration = expiration;
+        }
+    }
+
+}
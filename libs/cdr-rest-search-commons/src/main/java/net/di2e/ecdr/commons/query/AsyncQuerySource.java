@@ -0,0 +1,40 @@
+/**
+ * Copyright (c) Cohesive Integrations, LLC
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or any later version. 
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details. A copy of the GNU Lesser General Public License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package net.di2e.ecdr.commons.query;
+
+import java.util.concurrent.Future;
+
+import ddf.catalog.operation.QueryRequest;
+import ddf.catalog.operation.SourceResponse;
+
+/**
+ * Implemented by sources that run their queries on their own bounded set of threads. Federation strategies check for
+ * this interface and use it in place of submitting a blocking {@link ddf.catalog.source.Source#query(QueryRequest)}
+ * call to their own executor, so a slow source ties up its own threads rather than those shared by all sources.
+ */
+public interface AsyncQuerySource {
+
+    /**
+     * Starts the query and returns immediately. The returned {@link SourceResponse} contains the
+     * {@link net.di2e.ecdr.commons.constants.SearchConstants#ELAPSED_TIME} property.
+     *
+     * @param queryRequest
+     *            the query to execute
+     * @param callback
+     *            notified once the query has finished running, may be null. A query that is cancelled while it runs
+     *            only notifies the callback once the source has stopped working on it
+     * @return a Future that can be used to wait for, or cancel, the query
+     */
+    Future<SourceResponse> queryAsync( QueryRequest queryRequest, SourceQueryCallback callback );
+
+}
@@ -0,0 +1,27 @@
+/**
+ * Copyright (c) Cohesive Integrations, LLC
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or any later version. 
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details. A copy of the GNU Lesser General Public License is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package net.di2e.ecdr.commons.query;
+
+import ddf.catalog.operation.SourceResponse;
+
+/**
+ * Callback used by {@link AsyncQuerySource} to signal the completion of an asynchronous query. It is called once the
+ * source has finished working on the query, which for a cancelled query can be after the cancellation.
+ */
+public interface SourceQueryCallback {
+
+    void completed( SourceResponse sourceResponse );
+
+    void failed( Throwable cause );
+
+}
@@ -16,8 +16,13 @@ import java.io.InputStream;
 
 import ddf.catalog.operation.QueryRequest;
 import ddf.catalog.operation.SourceResponse;
+import ddf.catalog.transform.CatalogTransformerException;
 
 public interface SearchResponseTransformer {
 
-    SourceResponse processSearchResponse( InputStream inputStream, QueryRequest request, String siteName );
+    /**
+     * @throws CatalogTransformerException
+     *             if the response could not be read
+     */
+    SourceResponse processSearchResponse( InputStream inputStream, QueryRequest request, String siteName ) throws CatalogTransformerException;
 }
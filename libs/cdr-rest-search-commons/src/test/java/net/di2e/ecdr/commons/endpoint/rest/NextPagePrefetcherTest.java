@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.commons.endpoint.rest;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+import ddf.catalog.operation.QueryResponse;
+
+public class NextPagePrefetcherTest {
+
+    @Test
+    public void testPrefetchedPageIsReturnedOnce() throws Exception {
+        NextPagePrefetcher prefetcher = new NextPagePrefetcher( 5000, 60000, 10 );
+        QueryResponse response = mock( QueryResponse.class );
+        prefetcher.prefetch( "q=test&startIndex=11", createQuery( response, 0 ) );
+        assertNull( prefetcher.getPrefetchedPage( "q=test&startIndex=21" ) );
+        assertSame( response, prefetcher.getPrefetchedPage( "q=test&startIndex=11" ) );
+        assertNull( prefetcher.getPrefetchedPage( "q=test&startIndex=11" ) );
+    }
+
+    @Test
+    public void testPrefetchOverBudget() throws Exception {
+        NextPagePrefetcher prefetcher = new NextPagePrefetcher( 50, 60000, 10 );
+        prefetcher.prefetch( "q=test&startIndex=11", createQuery( mock( QueryResponse.class ), 5000 ) );
+        assertNull( prefetcher.getPrefetchedPage( "q=test&startIndex=11" ) );
+    }
+
+    @Test
+    public void testNoPrefetchAfterShutdown() throws Exception {
+        NextPagePrefetcher prefetcher = new NextPagePrefetcher( 5000, 60000, 10 );
+        prefetcher.shutdown();
+        prefetcher.prefetch( "q=test&startIndex=11", createQuery( mock( QueryResponse.class ), 0 ) );
+        assertNull( prefetcher.getPrefetchedPage( "q=test&startIndex=11" ) );
+    }
+
+    @Test
+    public void testExpiredAndFailedPrefetches() throws Exception {
+        NextPagePrefetcher prefetcher = new NextPagePrefetcher( 5000, 20, 10 );
+        prefetcher.prefetch( "expired", createQuery( mock( QueryResponse.class ), 0 ) );
+        Thread.sleep( 40 );
+        assertNull( prefetcher.getPrefetchedPage( "expired" ) );
+
+        prefetcher.prefetch( "failed", new Callable<QueryResponse>() {
+            @Override
+            public QueryResponse call() throws Exception {
+                throw new IllegalStateException( "failed" );
+            }
+        } );
+        assertNull( prefetcher.getPrefetchedPage( "failed" ) );
+    }
+
+    private Callable<QueryResponse> createQuery( final QueryResponse response, final long delay ) {
+        return new Callable<QueryResponse>() {
+            @Override
+            public QueryResponse call() throws Exception {
+                Thread.sleep( delay );
+                return response;
+            }
+        };
+    }
+
+}
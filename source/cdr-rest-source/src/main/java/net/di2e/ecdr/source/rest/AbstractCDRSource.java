@@ -21,37 +21,64 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.net.URI;
-import java.security.GeneralSecurityException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import javax.activation.MimeType;
 import javax.activation.MimeTypeParseException;
-import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLSocketFactory;
+import javax.ws.rs.core.Cookie;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.UriBuilder;
 
+import net.di2e.ecdr.commons.CDRMetacard;
 import net.di2e.ecdr.commons.constants.SearchConstants;
 import net.di2e.ecdr.commons.filter.StrictFilterDelegate;
 import net.di2e.ecdr.commons.filter.config.FilterConfig;
+import net.di2e.ecdr.commons.query.AsyncQuerySource;
+import net.di2e.ecdr.commons.query.SourceQueryCallback;
 import net.di2e.ecdr.commons.util.SearchUtils;
 import net.di2e.ecdr.search.transform.atom.response.AtomResponseTransformer;
+import net.di2e.ecdr.search.transform.json.JsonResponseTransformer;
+import net.di2e.ecdr.source.rest.ProductCache.CachedProduct;
+import net.di2e.ecdr.source.rest.QueryResultCache.CachedQueryResponse;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.commons.lang.builder.ToStringBuilder;
-import org.apache.commons.net.util.KeyManagerUtils;
 import org.apache.cxf.configuration.jsse.TLSClientParameters;
 import org.apache.cxf.jaxrs.client.WebClient;
 import org.apache.cxf.jaxrs.ext.multipart.ContentDisposition;
 import org.apache.cxf.transport.http.HTTPConduit;
-import org.codice.ddf.security.common.jaxrs.RestSecurity;
+import org.apache.cxf.transports.http.configuration.ConnectionType;
 import org.opengis.filter.sort.SortBy;
 import org.opengis.filter.sort.SortOrder;
 import org.slf4j.Logger;
@@ -60,6 +87,7 @@ import org.slf4j.LoggerFactory;
 import ddf.catalog.data.ContentType;
 import ddf.catalog.data.Metacard;
 import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.ResultImpl;
 import ddf.catalog.filter.FilterAdapter;
 import ddf.catalog.operation.Query;
 import ddf.catalog.operation.QueryRequest;
@@ -67,6 +95,7 @@ import ddf.catalog.operation.ResourceResponse;
 import ddf.catalog.operation.SourceResponse;
 import ddf.catalog.operation.impl.ResourceRequestByProductUri;
 import ddf.catalog.operation.impl.ResourceResponseImpl;
+import ddf.catalog.operation.impl.SourceResponseImpl;
 import ddf.catalog.resource.ResourceNotFoundException;
 import ddf.catalog.resource.ResourceNotSupportedException;
 import ddf.catalog.resource.impl.ResourceImpl;
@@ -74,17 +103,15 @@ import ddf.catalog.source.ConnectedSource;
 import ddf.catalog.source.FederatedSource;
 import ddf.catalog.source.SourceMonitor;
 import ddf.catalog.source.UnsupportedQueryException;
+import ddf.catalog.transform.CatalogTransformerException;
 import ddf.catalog.util.impl.MaskableImpl;
 import ddf.security.SecurityConstants;
 import ddf.security.Subject;
 
-public abstract class AbstractCDRSource extends MaskableImpl implements FederatedSource, ConnectedSource {
+public abstract class AbstractCDRSource extends MaskableImpl implements FederatedSource, ConnectedSource, AsyncQuerySource {
 
     private static final Logger LOGGER = LoggerFactory.getLogger( AbstractCDRSource.class );
 
-    private static final String SSL_KEYSTORE_JAVA_PROPERTY = "javax.net.ssl.keyStore";
-    private static final String SSL_KEYSTORE_PASSWORD_JAVA_PROPERTY = "javax.net.ssl.keyStorePassword";
-
     private static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
     private static final String HEADER_CONTENT_DISPOSITION = "Content-Disposition";
     private static final String HEADER_RANGE = "Range";
@@ -92,11 +119,27 @@ public abstract class AbstractCDRSource extends MaskableImpl implements Federate
     private static final String BYTES_SKIPPED_RESPONSE = "BytesSkipped";
     private static final String BYTES = "bytes";
     private static final String BYTES_EQUAL = "bytes=";
+    private static final String ENCODING_GZIP = "gzip";
+    private static final String ENCODING_X_GZIP = "x-gzip";
+    private static final String ENCODING_DEFLATE = "deflate";
+
+    private static final int DEFAULT_QUERY_THREADS = 10;
+    private static final long QUERY_THREAD_KEEP_ALIVE_SECONDS = 60;
+    private static final AtomicInteger QUERY_THREAD_COUNT = new AtomicInteger();
+    private static final int DEFAULT_RANGE_THREADS = 10;
+    private static final AtomicInteger RANGE_THREAD_COUNT = new AtomicInteger();
 
     public enum PingMethod {
         GET, HEAD, NONE
     }
 
+    /**
+     * How query responses are read, AUTO reads JSON responses (by their media type) as JSON and everything else as Atom
+     */
+    public enum ResponseParser {
+        AUTO, ATOM, JSON
+    }
+
     // matches 'user-friendly' OS terms with parameter
     private static Map<String, String> parameterMatchMap;
 
@@ -120,28 +163,100 @@ public abstract class AbstractCDRSource extends MaskableImpl implements Federate
     private FilterAdapter filterAdapter = null;
 
     private long availableCheckCacheTime = 60000;
-    private Date lastAvailableCheckDate = null;
-    private boolean isCurrentlyAvailable = false;
+    private volatile boolean isCurrentlyAvailable = false;
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+    private int failureThreshold = 3;
+    private final SourceHealthMonitor healthMonitor = new SourceHealthMonitor( this );
+    // runs the asynchronous queries, sub-page requests and background cache refreshes of this source, the threads die
+    // off once idle and the executor is shut down in cleanUp()
+    private final ThreadPoolExecutor queryExecutor = createExecutor( DEFAULT_QUERY_THREADS, "cdr-source-query-", QUERY_THREAD_COUNT );
+    // runs the range downloads of parallel retrievals, resized to fit the number of parallel retrieval connections and
+    // shut down in cleanUp()
+    private final ThreadPoolExecutor rangeExecutor = createExecutor( DEFAULT_RANGE_THREADS, "cdr-source-range-download-", RANGE_THREAD_COUNT );
+    private int queryThreads = DEFAULT_QUERY_THREADS;
     private boolean disableCNCheck = false;
     private boolean sendSecurityCookie;
 
     private WebClient cdrRestClient = null;
     private WebClient cdrAvailabilityCheckClient = null;
+    private List<URI> replicaUris = Collections.emptyList();
+    private EndpointBalancer.Method loadBalancingMethod = EndpointBalancer.Method.LEAST_OUTSTANDING;
+    private long endpointEjectionTime = TimeUnit.SECONDS.toMillis( 30 );
+    // null when the source has a single endpoint
+    private volatile EndpointBalancer endpointBalancer = null;
     private PingMethod pingMethod = PingMethod.NONE;
 
     private long receiveTimeout = 0;
     private long connectionTimeout = 30000;
+    private boolean keepAliveConnections = true;
+    private boolean acceptCompression = true;
+    private int maxConnections = 0;
+    // bounds the number of concurrent connections to the remote source, null means unbounded
+    private Semaphore connectionPermits = null;
     private int maxResultsCount = 0;
+    private int maxSubPageRequests = 1;
+    // bounds the number of sub-page requests of all queries to the source that run on the query threads
+    private Semaphore subPagePermits = new Semaphore( 0 );
+    private int parallelConversionThreshold = 0;
+    // converts large Atom responses in parallel, only created while parallel conversion is on
+    private volatile ForkJoinPool conversionPool = null;
+    private ResponseParser responseParser = ResponseParser.AUTO;
+    private int parallelRetrievalConnections = 1;
+    private long parallelRetrievalThreshold = 100L * 1024 * 1024;
+    private String productCacheDirectory = System.getProperty( "java.io.tmpdir" ) + File.separator + "cdr-product-cache";
+    private long productCacheMaxBytes = 0;
+    private ProductCache productCache = null;
     private String defaultResponseFormat = null;
+    private boolean briefQueries = false;
+    private String briefResponseFormat = null;
+    private Map<String, String> briefParameters = Collections.emptyMap();
 
     private Map<String, String> parameterMap = new HashMap<>();
 
+    private long queryCacheTimeToLive = 0;
+    private long queryCacheStaleTime = 0;
+    private long queryCacheMaxBytes = 10L * 1024 * 1024;
+    private volatile QueryResultCache queryResultCache = null;
+    private boolean coalesceQueries = false;
+    private final QueryCoalescer queryCoalescer = new QueryCoalescer();
+
+    private long resourceUriCacheTimeToLive = TimeUnit.MINUTES.toMillis( 10 );
+    private int resourceUriCacheMaxEntries = 10000;
+    private volatile ResourceUriCache resourceUriCache = new ResourceUriCache( resourceUriCacheTimeToLive, resourceUriCacheMaxEntries );
+
+    // bytes received from the remote source as they came over the wire and after any decompression
+    private final AtomicLong compressedBytesReceived = new AtomicLong();
+    private final AtomicLong uncompressedBytesReceived = new AtomicLong();
+
     private Map<String, String> sortMap = Collections.emptyMap();
 
     public AbstractCDRSource( FilterAdapter adapter ) {
         this.filterAdapter = adapter;
     }
 
+    /**
+     * Stops the background availability checks and shuts down the query threads of the source. Asynchronous queries
+     * that have not started yet are cancelled, so their callbacks are still notified.
+     */
+    public void cleanUp() {
+        LOGGER.debug( "Shutting down the query threads and health monitor of source [{}]", getId() );
+        healthMonitor.stop();
+        setConversionPool( null );
+        for ( Runnable task : queryExecutor.shutdownNow() ) {
+            if ( task instanceof FutureTask ) {
+                // running a cancelled task only completes it
+                ((FutureTask<?>) task).cancel( false );
+                task.run();
+            }
+        }
+        // a range download that is cancelled or interrupted fails the stream that is reading it
+        for ( Runnable task : rangeExecutor.shutdownNow() ) {
+            if ( task instanceof FutureTask ) {
+                ((FutureTask<?>) task).cancel( false );
+            }
+        }
+    }
+
     public abstract Map<String, String> getStaticUrlQueryValues();
 
     public abstract FilterConfig getFilterConfig();
@@ -179,58 +294,388 @@ public abstract class AbstractCDRSource extends MaskableImpl implements Federate
         }
     }
 
+    @Override
+    public Future<SourceResponse> queryAsync( final QueryRequest queryRequest, final SourceQueryCallback callback ) {
+        final long startTime = System.currentTimeMillis();
+        AsyncQueryTask task = new AsyncQueryTask( new Callable<SourceResponse>() {
+            @Override
+            public SourceResponse call() throws UnsupportedQueryException {
+                SourceResponse sourceResponse = query( queryRequest );
+                long elapsedTime = System.currentTimeMillis() - startTime;
+                LOGGER.debug( "The source {} responded to the asynchronous query in {} milliseconds", getId(), elapsedTime );
+                sourceResponse.getProperties().put( SearchConstants.ELAPSED_TIME, elapsedTime );
+                return sourceResponse;
+            }
+        }, callback );
+        try {
+            queryExecutor.execute( task );
+        } catch ( RejectedExecutionException e ) {
+            LOGGER.warn( "Could not start asynchronous query to source [{}] since the source has been shut down", getId() );
+            task.cancel( false );
+            task.run();
+        }
+        return task;
+    }
+
     protected SourceResponse doQuery( Map<String, String> filterParameters, QueryRequest queryRequest ) throws UnsupportedQueryException {
-        SourceResponse sourceResponse;
-        setSecurityCredentials( cdrRestClient, queryRequest.getProperties() );
         filterParameters.putAll( getInitialFilterParameters( queryRequest ) );
-        setURLQueryString( filterParameters );
-        LOGGER.debug( "Executing http GET query to source [{}] with url [{}]", getId(), cdrRestClient.getCurrentURI().toString() );
-        Response response = cdrRestClient.get();
-        LOGGER.debug( "Query to source [{}] returned http status code [{}] and media type [{}]", getId(), response.getStatus(), response.getMediaType() );
+        boolean brief = isBriefQuery( filterParameters, queryRequest );
+        if ( brief ) {
+            applyBriefParameters( filterParameters );
+        }
+        int pageSize = queryRequest.getQuery().getPageSize();
+        SourceResponse response;
+        if ( maxSubPageRequests > 1 && maxResultsCount > 0 && pageSize > maxResultsCount ) {
+            response = fetchSubPages( filterParameters, queryRequest, pageSize );
+        } else {
+            response = fetchPage( filterParameters, queryRequest );
+        }
+        return completeResponse( brief ? toBriefResponse( response, queryRequest ) : response );
+    }
 
-        if ( response.getStatus() == Status.OK.getStatusCode() ) {
-            AtomResponseTransformer transformer = new AtomResponseTransformer( getFilterConfig() );
+    /**
+     * A query is sent in brief form when brief queries are enabled, unless the caller asked for a specific format or
+     * for a single record by id.
+     */
+    private boolean isBriefQuery( Map<String, String> filterParameters, QueryRequest queryRequest ) {
+        return briefQueries && !filterParameters.containsKey( SearchConstants.UID_PARAMETER ) && queryRequest.getProperties() != null
+                && queryRequest.getProperties().get( SearchConstants.FORMAT_PARAMETER ) == null;
+    }
 
-            sourceResponse = transformer.processSearchResponse( (InputStream) response.getEntity(), queryRequest, getId() );
-            sourceResponse = enhanceResults( sourceResponse );
-        } else {
-            Object entity = response.getEntity();
-            if ( entity != null ) {
-                try {
-                    LOGGER.warn( "Error status code received [{}] when querying site [{}]:{}[{}]", response.getStatus(), getId(), System.lineSeparator(), IOUtils.toString( (InputStream) entity ) );
-                } catch ( IOException e ) {
-                    LOGGER.warn( "Error status code received [{}] when querying site [{}]", response.getStatus(), getId() );
+    /**
+     * Asks the remote source for brief entries (without the embedded metadata) by switching to the brief response format
+     * and adding the brief parameters. They are sent like the other query parameters, so they go through the parameter
+     * mapping.
+     */
+    private void applyBriefParameters( Map<String, String> filterParameters ) {
+        if ( StringUtils.isNotBlank( briefResponseFormat ) ) {
+            filterParameters.put( SearchConstants.FORMAT_PARAMETER, briefResponseFormat );
+        }
+        filterParameters.putAll( briefParameters );
+    }
+
+    /**
+     * Wraps the metacards of a brief response so their full metadata is only fetched from the source if it is read.
+     */
+    private SourceResponse toBriefResponse( SourceResponse response, QueryRequest queryRequest ) {
+        Map<String, Serializable> requestProperties = new HashMap<String, Serializable>();
+        Serializable subject = queryRequest.getProperties().get( SecurityConstants.SECURITY_SUBJECT );
+        if ( subject != null ) {
+            requestProperties.put( SecurityConstants.SECURITY_SUBJECT, subject );
+        }
+        List<Result> results = new ArrayList<Result>( response.getResults().size() );
+        for ( Result result : response.getResults() ) {
+            ResultImpl briefResult = new ResultImpl( new BriefMetacard( result.getMetacard(), this, requestProperties ) );
+            briefResult.setRelevanceScore( result.getRelevanceScore() );
+            briefResult.setDistanceInMeters( result.getDistanceInMeters() );
+            results.add( briefResult );
+        }
+        return new SourceResponseImpl( response.getRequest(), response.getProperties(), results, response.getHits() );
+    }
+
+    /**
+     * Fetches a page larger than the max result count of the source as several windows of at most the max result
+     * count, which are requested from the source concurrently and merged in order. If a window fails or comes back
+     * short, the windows after it are dropped so the results stay contiguous. Windows only run on the query threads of
+     * the source while a sub-page permit is free, and like any query they take one of the connections to the source,
+     * so splitting pages never goes over the limits of the source. The other windows, and those no thread picked up
+     * yet by the time their results are needed, are fetched on the calling thread.
+     */
+    private SourceResponse fetchSubPages( Map<String, String> filterParameters, final QueryRequest queryRequest, int pageSize ) throws UnsupportedQueryException {
+        int windowSize = maxResultsCount;
+        int windows = Math.min( (pageSize + windowSize - 1) / windowSize, maxSubPageRequests );
+        int firstIndex = Integer.parseInt( filterParameters.get( SearchConstants.STARTINDEX_PARAMETER ) );
+        LOGGER.debug( "Splitting the query for [{}] results to source [{}] into [{}] sub-page requests of up to [{}] results", pageSize, getId(), windows, windowSize );
+
+        Semaphore permits = subPagePermits;
+        List<SubPageTask> tasks = new ArrayList<SubPageTask>( windows - 1 );
+        for ( int i = 1; i < windows; i++ ) {
+            final Map<String, String> windowParameters = new HashMap<String, String>( filterParameters );
+            windowParameters.put( SearchConstants.STARTINDEX_PARAMETER, String.valueOf( firstIndex + i * windowSize ) );
+            windowParameters.put( SearchConstants.COUNT_PARAMETER, String.valueOf( Math.min( windowSize, pageSize - i * windowSize ) ) );
+            SubPageTask task = new SubPageTask( new Callable<SourceResponse>() {
+                @Override
+                public SourceResponse call() throws UnsupportedQueryException {
+                    return fetchPage( windowParameters, queryRequest );
+                }
+            } );
+            if ( permits.tryAcquire() ) {
+                task.submit( queryExecutor, permits );
+            }
+            tasks.add( task );
+        }
+
+        // the first window (count already limited to the max result count) is fetched on the calling thread
+        SourceResponse firstResponse;
+        try {
+            firstResponse = fetchPage( filterParameters, queryRequest );
+        } catch ( UnsupportedQueryException | RuntimeException e ) {
+            for ( SubPageTask task : tasks ) {
+                task.cancel( queryExecutor );
+            }
+            throw e;
+        }
+
+        List<Result> results = new ArrayList<Result>( firstResponse.getResults() );
+        boolean contiguous = firstResponse.getResults().size() >= windowSize;
+        for ( int i = 0; i < tasks.size(); i++ ) {
+            SubPageTask task = tasks.get( i );
+            if ( !contiguous ) {
+                task.cancel( queryExecutor );
+                continue;
+            }
+            try {
+                task.runIfNotStarted( queryExecutor );
+                List<Result> windowResults = task.get().getResults();
+                results.addAll( windowResults );
+                contiguous = windowResults.size() >= windowSize;
+            } catch ( ExecutionException e ) {
+                LOGGER.warn( "Sub-page request [{}] to source [{}] failed, returning the first [{}] results: {}", i + 1, getId(), results.size(), e.getCause() == null ? null : e
+                        .getCause().getMessage() );
+                contiguous = false;
+            } catch ( CancellationException e ) {
+                LOGGER.debug( "Sub-page request [{}] to source [{}] was cancelled, returning the first [{}] results", i + 1, getId(), results.size() );
+                contiguous = false;
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                contiguous = false;
+            }
+        }
+        return new SourceResponseImpl( queryRequest, firstResponse.getProperties(), results, firstResponse.getHits() );
+    }
+
+    /**
+     * Fetches one page of results from the source, using the query result cache and query coalescing when they are
+     * enabled.
+     */
+    private SourceResponse fetchPage( Map<String, String> filterParameters, QueryRequest queryRequest ) throws UnsupportedQueryException {
+        URI requestUri = buildQueryUri( filterParameters );
+        QueryResultCache cache = queryResultCache;
+        if ( cache == null && !coalesceQueries ) {
+            return executeQuery( requestUri, queryRequest, null, null );
+        }
+
+        String queryKey = getQueryKey( requestUri, queryRequest );
+        CachedQueryResponse cached = cache == null ? null : cache.get( queryKey );
+        if ( cached != null ) {
+            long now = System.currentTimeMillis();
+            if ( cached.isFresh( now ) ) {
+                LOGGER.debug( "Returning cached response for query to source [{}] with url [{}]", getId(), requestUri );
+                return cached.copyResponse( queryRequest );
+            } else if ( cached.isUsable( now ) ) {
+                LOGGER.debug( "Returning stale cached response for query to source [{}] with url [{}] and refreshing it in the background", getId(), requestUri );
+                if ( cached.startRefresh() ) {
+                    refreshInBackground( requestUri, queryRequest, queryKey, cached );
+                }
+                return cached.copyResponse( queryRequest );
+            }
+        }
+        if ( coalesceQueries ) {
+            return executeCoalescedQuery( requestUri, queryRequest, queryKey, cached );
+        }
+        return executeQuery( requestUri, queryRequest, queryKey, cached );
+    }
+
+    /**
+     * Remembers the product URIs of the results, so retrievals by catalog URI do not need to look them up, and then
+     * lets the source enhance the results.
+     */
+    private SourceResponse completeResponse( SourceResponse response ) {
+        ResourceUriCache uriCache = resourceUriCache;
+        if ( uriCache != null ) {
+            for ( Result result : response.getResults() ) {
+                Metacard metacard = result.getMetacard();
+                URI resourceUri = metacard == null ? null : metacard.getResourceURI();
+                if ( resourceUri != null && metacard.getId() != null && isHttpUri( resourceUri ) ) {
+                    uriCache.putForId( metacard.getId(), resourceUri );
+                }
+            }
+        }
+        return enhanceResults( response );
+    }
+
+    /**
+     * Executes the query unless an identical query (same outbound parameters and credentials) is already in flight, in
+     * which case its response is shared.
+     */
+    private SourceResponse executeCoalescedQuery( final URI requestUri, final QueryRequest queryRequest, final String queryKey, final CachedQueryResponse cached )
+        throws UnsupportedQueryException {
+        return queryCoalescer.execute( queryKey, queryRequest, new Callable<SourceResponse>() {
+            @Override
+            public SourceResponse call() throws UnsupportedQueryException {
+                return executeQuery( requestUri, queryRequest, queryResultCache == null ? null : queryKey, cached );
+            }
+        } );
+    }
+
+    /**
+     * Sends the query to the remote source and parses the response. If a cache key is given the parsed response is
+     * added to the query result cache, and if there is a cached response its validators are sent so the source can
+     * answer with a 304 if the results have not changed.
+     */
+    private SourceResponse executeQuery( URI requestUri, QueryRequest queryRequest, String cacheKey, CachedQueryResponse cached ) throws UnsupportedQueryException {
+        SourceResponse sourceResponse;
+        EndpointBalancer.Endpoint endpoint = selectEndpoint();
+        if ( endpoint != null ) {
+            requestUri = endpoint.resolve( requestUri );
+        }
+        WebClient queryClient = createQueryClient( requestUri );
+        setSecurityCredentials( queryClient, queryRequest.getProperties() );
+        setAcceptEncoding( queryClient );
+        if ( cached != null ) {
+            if ( cached.getETag() != null ) {
+                queryClient.header( HttpHeaders.IF_NONE_MATCH, cached.getETag() );
+            }
+            if ( cached.getLastModified() != null ) {
+                queryClient.header( HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified() );
+            }
+        }
+        LOGGER.debug( "Executing http GET query to source [{}] with url [{}]", getId(), requestUri );
+        long startTime = System.currentTimeMillis();
+        boolean sent = false;
+        boolean endpointFailed = true;
+        Semaphore permits = null;
+        try {
+            permits = acquireConnectionPermit();
+            Response response;
+            try {
+                sent = true;
+                response = queryClient.get();
+            } catch ( RuntimeException e ) {
+                circuitBreaker.recordFailure();
+                throw e;
+            }
+            LOGGER.debug( "Query to source [{}] returned http status code [{}] and media type [{}]", getId(), response.getStatus(), response.getMediaType() );
+            endpointFailed = response.getStatus() >= Status.INTERNAL_SERVER_ERROR.getStatusCode();
+
+            QueryResultCache cache = queryResultCache;
+            if ( cached != null && response.getStatus() == Status.NOT_MODIFIED.getStatusCode() ) {
+                LOGGER.debug( "Query results from source [{}] have not changed, using the cached response", getId() );
+                circuitBreaker.recordSuccess();
+                if ( cache != null ) {
+                    cache.renew( cached, response.getHeaderString( HttpHeaders.CACHE_CONTROL ) );
+                }
+                sourceResponse = cached.copyResponse( queryRequest );
+            } else if ( response.getStatus() == Status.OK.getStatusCode() ) {
+                CountingInputStream responseStream = new CountingInputStream( getResponseStream( response ) );
+                sourceResponse = processSearchResponse( response.getMediaType(), responseStream, queryRequest, maxResultsCount );
+                circuitBreaker.recordSuccess();
+                if ( cache != null && cacheKey != null ) {
+                    cache.put( cacheKey, sourceResponse, responseStream.getByteCount(), response.getHeaderString( HttpHeaders.ETAG ),
+                            response.getHeaderString( HttpHeaders.LAST_MODIFIED ), response.getHeaderString( HttpHeaders.CACHE_CONTROL ) );
+                    // the cache keeps the parsed response, the caller gets its own copy
+                    sourceResponse = QueryResultCache.copyResponse( sourceResponse, queryRequest );
                 }
             } else {
-                LOGGER.warn( "Error status code received [{}] when querying site [{}]", response.getStatus(), getId() );
+                circuitBreaker.recordFailure();
+                Object entity = response.getEntity();
+                if ( entity != null ) {
+                    try {
+                        LOGGER.warn( "Error status code received [{}] when querying site [{}]:{}[{}]", response.getStatus(), getId(), System.lineSeparator(), IOUtils.toString( getResponseStream( response ) ) );
+                    } catch ( IOException e ) {
+                        LOGGER.warn( "Error status code received [{}] when querying site [{}]", response.getStatus(), getId() );
+                    }
+                } else {
+                    LOGGER.warn( "Error status code received [{}] when querying site [{}]", response.getStatus(), getId() );
+                }
+                throw new UnsupportedQueryException( "Query to remote source returned http status code " + response.getStatus() );
             }
-            throw new UnsupportedQueryException( "Query to remote source returned http status code " + response.getStatus() );
+        } catch ( IOException e ) {
+            endpointFailed = true;
+            throw new UnsupportedQueryException( "Could not read the query response from source [" + getId() + "] due to: " + e.getMessage(), e );
+        } finally {
+            releaseConnectionPermit( permits );
+            completeEndpointRequest( endpoint, sent, endpointFailed, startTime );
         }
         return sourceResponse;
     }
 
-    @Override
-    public boolean isAvailable() {
-        LOGGER.debug( "isAvailable method called on CDR Rest Source named [{}], determining whether to check availability or pull from cache", getId() );
-        if ( pingMethod != null && !PingMethod.NONE.equals( pingMethod ) && cdrAvailabilityCheckClient != null ) {
-            if ( !isCurrentlyAvailable || (lastAvailableCheckDate.getTime() < System.currentTimeMillis() - availableCheckCacheTime) ) {
-                LOGGER.debug( "Checking availability on CDR Rest Source named [{}] in real time by calling endpoint [{}]", getId(), cdrAvailabilityCheckClient.getBaseURI() );
-                try {
-                    Response response = PingMethod.HEAD.equals( pingMethod ) ? cdrAvailabilityCheckClient.head() : cdrAvailabilityCheckClient.get();
-                    if ( response.getStatus() == Status.OK.getStatusCode() || response.getStatus() == Status.ACCEPTED.getStatusCode() ) {
-                        isCurrentlyAvailable = true;
-                        lastAvailableCheckDate = new Date();
-                    } else {
-                        isCurrentlyAvailable = false;
+    /**
+     * Selects the replica endpoint for the next request, or returns null if the source has a single endpoint.
+     */
+    private EndpointBalancer.Endpoint selectEndpoint() {
+        EndpointBalancer balancer = endpointBalancer;
+        return balancer == null ? null : balancer.select();
+    }
+
+    /**
+     * Reports the outcome of a request to the endpoint it was sent to. Requests that never reached the endpoint (for
+     * instance because no connection permit was available) only release their slot.
+     */
+    private void completeEndpointRequest( EndpointBalancer.Endpoint endpoint, boolean sent, boolean failed, long startTime ) {
+        if ( endpoint != null ) {
+            if ( !sent ) {
+                endpoint.released();
+            } else if ( failed ) {
+                endpoint.failed();
+            } else {
+                endpoint.succeeded( System.currentTimeMillis() - startTime );
+            }
+        }
+    }
+
+    private void refreshInBackground( final URI requestUri, final QueryRequest queryRequest, final String cacheKey, final CachedQueryResponse cached ) {
+        try {
+            queryExecutor.execute( new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        executeQuery( requestUri, queryRequest, cacheKey, cached );
+                    } catch ( UnsupportedQueryException | RuntimeException e ) {
+                        LOGGER.debug( "Background refresh of cached query to source [{}] with url [{}] failed: {}", getId(), requestUri, e.getMessage() );
+                    } finally {
+                        cached.finishRefresh();
                     }
-                } catch ( RuntimeException e ) {
-                    LOGGER.warn( "CDR Rest Source named [" + getId() + "] encountered an unexpected error while executing HTTP Head at URL [" + cdrAvailabilityCheckClient.getBaseURI() + "]:"
-                        + e.getMessage() );
                 }
+            } );
+        } catch ( RejectedExecutionException e ) {
+            cached.finishRefresh();
+        }
+    }
 
-            } else {
-                LOGGER.debug( "Pulling availability of CDR Rest Federated Source named [{}] from cache, isAvailable=[{}]", getId(), isCurrentlyAvailable );
+    /**
+     * Builds a key that identifies the outbound query: the request URI with its query parameters in a canonical order,
+     * plus a fingerprint of the credentials sent with it, since the results of the remote source can depend on them.
+     */
+    protected String getQueryKey( URI requestUri, QueryRequest queryRequest ) {
+        StringBuilder key = new StringBuilder( requestUri.getRawPath() == null ? "" : requestUri.getRawPath() );
+        String rawQuery = requestUri.getRawQuery();
+        if ( rawQuery != null ) {
+            String[] parameters = rawQuery.split( "&" );
+            Arrays.sort( parameters );
+            key.append( '?' ).append( StringUtils.join( parameters, '&' ) );
+        }
+        key.append( '#' ).append( getAuthorizationFingerprint( queryRequest.getProperties() ) );
+        return key.toString();
+    }
+
+    /**
+     * Returns a digest of the SAML assertion that is sent to the remote source in the security cookie (see
+     * {@link SecurityCookieCache#getAssertionFingerprint(Subject)}), or an empty string if no credentials are sent (in
+     * which case the source returns the same results for every user).
+     */
+    private String getAuthorizationFingerprint( Map<String, Serializable> requestProperties ) {
+        if ( sendSecurityCookie && requestProperties != null ) {
+            Serializable property = requestProperties.get( SecurityConstants.SECURITY_SUBJECT );
+            if ( property instanceof Subject ) {
+                return SecurityCookieCache.getAssertionFingerprint( (Subject) property );
             }
+        }
+        return "";
+    }
+
+    /**
+     * Returns the availability of the source from memory, the remote endpoint is never called on the calling thread. The
+     * first time availability is requested the {@link SourceHealthMonitor} is started, which checks the source in the
+     * background straight away and then periodically, and query failures feed the {@link CircuitBreaker}. Until the
+     * first check finishes the availability is unknown and the closed circuit breaker reports the source as available.
+     */
+    @Override
+    public boolean isAvailable() {
+        LOGGER.debug( "isAvailable method called on CDR Rest Source named [{}]", getId() );
+        if ( isPingEnabled() ) {
+            isCurrentlyAvailable = circuitBreaker.isRequestAllowed();
+            LOGGER.debug( "Pulling availability of CDR Rest Federated Source named [{}] from memory, isAvailable=[{}] circuit=[{}]", getId(), isCurrentlyAvailable, circuitBreaker.getState() );
             if ( siteAvailabilityCallback != null ) {
                 if ( isCurrentlyAvailable ) {
                     siteAvailabilityCallback.setAvailable();
@@ -238,6 +683,10 @@ public abstract class AbstractCDRSource extends MaskableImpl implements Federate
                     siteAvailabilityCallback.setUnavailable();
                 }
             }
+            // started after the monitor was notified, so the result of the first check is never overwritten here
+            if ( !healthMonitor.isRunning() ) {
+                healthMonitor.start( availableCheckCacheTime );
+            }
         } else {
             LOGGER.debug( "HTTP Ping is set to false so not checking the sites availability, just setting to available" );
             isCurrentlyAvailable = true;
@@ -248,6 +697,50 @@ public abstract class AbstractCDRSource extends MaskableImpl implements Federate
         return isCurrentlyAvailable;
     }
 
+    private boolean isPingEnabled() {
+        return pingMethod != null && !PingMethod.NONE.equals( pingMethod ) && cdrAvailabilityCheckClient != null;
+    }
+
+    /**
+     * Checks the availability of the remote source and notifies the source monitor if it changed. Called by the
+     * {@link SourceHealthMonitor} in the background.
+     */
+    void checkAvailability() {
+        if ( isPingEnabled() ) {
+            boolean wasAvailable = circuitBreaker.isRequestAllowed();
+            pingSource();
+            boolean available = circuitBreaker.isRequestAllowed();
+            if ( available != wasAvailable && siteAvailabilityCallback != null ) {
+                LOGGER.debug( "Availability of CDR Rest Source named [{}] changed to [{}]", getId(), available );
+                if ( available ) {
+                    siteAvailabilityCallback.setAvailable();
+                } else {
+                    siteAvailabilityCallback.setUnavailable();
+                }
+            }
+        }
+    }
+
+    /**
+     * Calls the ping endpoint of the remote source and updates the circuit breaker with the result.
+     */
+    private void pingSource() {
+        WebClient pingClient = cdrAvailabilityCheckClient;
+        LOGGER.debug( "Checking availability on CDR Rest Source named [{}] by calling endpoint [{}]", getId(), pingClient.getBaseURI() );
+        try {
+            Response response = PingMethod.HEAD.equals( pingMethod ) ? pingClient.head() : pingClient.get();
+            if ( response.getStatus() == Status.OK.getStatusCode() || response.getStatus() == Status.ACCEPTED.getStatusCode() ) {
+                circuitBreaker.recordSuccess();
+            } else {
+                circuitBreaker.trip();
+            }
+        } catch ( RuntimeException e ) {
+            LOGGER.warn( "CDR Rest Source named [" + getId() + "] encountered an unexpected error while executing HTTP " + pingMethod + " at URL [" + pingClient.getBaseURI() + "]:"
+                + e.getMessage() );
+            circuitBreaker.trip();
+        }
+    }
+
     @Override
     public boolean isAvailable( SourceMonitor callback ) {
         this.siteAvailabilityCallback = callback;
@@ -284,11 +777,8 @@ public abstract class AbstractCDRSource extends MaskableImpl implements Federate
                 uri = resourceUri;
             }
 
-        } else if ( uri != null ) {
-            String scheme = uri.getScheme();
-            if ( !"http".equalsIgnoreCase( scheme ) && !"https".equalsIgnoreCase( scheme ) ) {
-                uri = getURIFromMetacard( uri );
-            }
+        } else if ( uri != null && !isHttpUri( uri ) ) {
+            uri = resolveResourceUri( uri );
         }
 
         ResourceResponse resourceResponse = null;
@@ -326,42 +816,67 @@ public abstract class AbstractCDRSource extends MaskableImpl implements Federate
                 }
             }
 
-            Response clientResponse = retrieveWebClient.get();
-
-            MediaType mediaType = clientResponse.getMediaType();
-            MimeType mimeType = null;
-            try {
-                mimeType = (mediaType == null) ? new MimeType( "application/octet-stream" ) : new MimeType( mediaType.toString() );
-                LOGGER.debug( "Creating mime type from CDR Source named [{}] using uri [{}] with value [{}] defaulting to [{}]", getId(), uri, mediaType );
-            } catch ( MimeTypeParseException e ) {
-                try {
-                    mimeType = new MimeType( "application/octet-stream" );
-                    LOGGER.warn( "Creating mime type from CDR Source named [{}] using uri [{}] with value [{}] defaulting to [{}]", getId(), uri, "application/octet-stream" );
-                } catch ( MimeTypeParseException e1 ) {
-                    LOGGER.error( "Could not create MIMEType for resource being retrieved", e1 );
+            // The cached file is opened before the request is sent so it can not be evicted while we wait on the response
+            ProductCache cache = getProductCache();
+            CachedProduct cachedProduct = null;
+            InputStream cachedStream = null;
+            if ( cache != null && requestProperties != null ) {
+                cachedProduct = cache.get( uri );
+                if ( cachedProduct != null ) {
+                    try {
+                        cachedStream = cachedProduct.openStream( bytesToSkip == null ? 0 : bytesToSkip );
+                        if ( cachedProduct.getETag() != null ) {
+                            retrieveWebClient.header( HttpHeaders.IF_NONE_MATCH, cachedProduct.getETag() );
+                        }
+                        if ( cachedProduct.getLastModified() != null ) {
+                            retrieveWebClient.header( HttpHeaders.IF_MODIFIED_SINCE, cachedProduct.getLastModified() );
+                        }
+                    } catch ( IOException e ) {
+                        LOGGER.debug( "Could not open cached copy of [{}], retrieving it from source [{}]: {}", uri, getId(), e.getMessage() );
+                        cache.remove( uri );
+                    }
                 }
-
             }
 
-            String dispositionString = clientResponse.getHeaderString( HEADER_CONTENT_DISPOSITION );
-
-            String fileName = null;
-            if ( dispositionString != null ) {
-                ContentDisposition contentDisposition = new ContentDisposition( dispositionString );
-                fileName = contentDisposition.getParameter( "filename" );
-                if ( fileName == null ) {
-                    fileName = contentDisposition.getParameter( "\"filename\"" );
+            // Ranges apply to the encoded representation, so only ask for compression when retrieving the whole file
+            if ( bytesToSkip == null && requestProperties != null ) {
+                if ( parallelRetrievalConnections > 1 && cachedStream == null ) {
+                    resourceResponse = doParallelRetrieval( uri, requestProperties );
+                    if ( resourceResponse != null ) {
+                        return resourceResponse;
+                    }
                 }
-                if ( fileName == null ) {
-                    // ECDR-74 use MIMEType parser to get the file extension in
-                    fileName = getId() + "-" + System.currentTimeMillis();
+                setAcceptEncoding( retrieveWebClient );
+            }
+
+            Response clientResponse;
+            try {
+                clientResponse = retrieveWebClient.get();
+            } catch ( RuntimeException e ) {
+                IOUtils.closeQuietly( cachedStream );
+                throw e;
+            }
+            if ( cachedStream != null ) {
+                if ( clientResponse.getStatus() == Status.NOT_MODIFIED.getStatusCode() ) {
+                    LOGGER.debug( "Resource [{}] has not changed on source [{}], returning the cached copy", uri, getId() );
+                    Map<String, Serializable> responseProperties = new HashMap<String, Serializable>();
+                    if ( bytesToSkip != null ) {
+                        responseProperties.put( BYTES_SKIPPED_RESPONSE, Boolean.TRUE );
+                    }
+                    return new ResourceResponseImpl( new ResourceRequestByProductUri( uri, requestProperties ), responseProperties, new ResourceImpl( cachedStream,
+                            cachedProduct.getMimeType(), cachedProduct.getFileName() ) );
                 }
-            } else {
-                // ECDR-74 use MIMEType parser to get the file extension in this case
-                fileName = getId() + "-" + System.currentTimeMillis();
+                IOUtils.closeQuietly( cachedStream );
             }
 
-            InputStream binaryStream = (InputStream) clientResponse.getEntity();
+            MimeType mimeType = getMimeType( clientResponse, uri );
+            String fileName = getFileName( clientResponse );
+
+            InputStream binaryStream = getResponseStream( clientResponse );
+            if ( cache != null && bytesToSkip == null && clientResponse.getStatus() == Status.OK.getStatusCode() ) {
+                binaryStream = cache.cache( uri, binaryStream, clientResponse.getHeaderString( HttpHeaders.ETAG ), clientResponse.getHeaderString( HttpHeaders.LAST_MODIFIED ),
+                        mimeType, fileName );
+            }
             if ( binaryStream != null ) {
                 Map<String, Serializable> responseProperties = new HashMap<String, Serializable>();
                 if ( bytesToSkip != null ) {
@@ -401,21 +916,247 @@ public abstract class AbstractCDRSource extends MaskableImpl implements Federate
         return resourceResponse;
     }
 
-    protected void setURLQueryString( Map<String, String> filterParameters ) {
-        cdrRestClient.resetQuery();
+    /**
+     * Downloads the resource over several ranged connections in parallel when the remote endpoint advertises byte range
+     * support and the resource is at least the parallel retrieval threshold. Returns null if the resource should be
+     * retrieved over a single connection instead, which includes resources without a validator and endpoints that do
+     * not return the requested range of the same version of the resource.
+     */
+    private ResourceResponse doParallelRetrieval( URI uri, Map<String, Serializable> requestProperties ) throws IOException {
+        Response headResponse;
+        try {
+            headResponse = createRetrievalClient( uri, requestProperties ).head();
+        } catch ( RuntimeException e ) {
+            LOGGER.debug( "HEAD request to [{}] failed, retrieving the resource over a single connection: {}", uri, e.getMessage() );
+            return null;
+        }
+        String acceptRanges = headResponse.getHeaderString( HEADER_ACCEPT_RANGES );
+        long contentLength = NumberUtils.toLong( headResponse.getHeaderString( HttpHeaders.CONTENT_LENGTH ), -1 );
+        String contentEncoding = headResponse.getHeaderString( HttpHeaders.CONTENT_ENCODING );
+        if ( headResponse.getStatus() != Status.OK.getStatusCode() || !BYTES.equals( acceptRanges ) || contentLength < parallelRetrievalThreshold
+                || (contentEncoding != null && !"identity".equalsIgnoreCase( contentEncoding )) ) {
+            LOGGER.debug( "Resource [{}] with status [{}], Accept-Ranges [{}] and Content-Length [{}] will be retrieved over a single connection", uri, headResponse.getStatus(),
+                    acceptRanges, contentLength );
+            return null;
+        }
+
+        String eTag = headResponse.getHeaderString( HttpHeaders.ETAG );
+        String lastModified = headResponse.getHeaderString( HttpHeaders.LAST_MODIFIED );
+        InputStream binaryStream = new ParallelRangeDownload( this, rangeExecutor, uri, requestProperties, contentLength, parallelRetrievalConnections, eTag, lastModified )
+                .start();
+        if ( binaryStream == null ) {
+            return null;
+        }
+        MimeType mimeType = getMimeType( headResponse, uri );
+        String fileName = getFileName( headResponse );
+        ProductCache cache = getProductCache();
+        if ( cache != null ) {
+            binaryStream = cache.cache( uri, binaryStream, eTag, lastModified, mimeType, fileName );
+        }
+        return new ResourceResponseImpl( new ResourceRequestByProductUri( uri, requestProperties ), new HashMap<String, Serializable>(), new ResourceImpl( binaryStream,
+                mimeType, fileName ) );
+    }
+
+    /**
+     * Returns the product cache of the source, creating it the first time it is needed, or null if product caching is
+     * disabled.
+     */
+    protected synchronized ProductCache getProductCache() {
+        if ( productCache == null && productCacheMaxBytes > 0 ) {
+            // one directory per source, the cache removes anything left over from a previous run
+            File directory = new File( productCacheDirectory, String.valueOf( getId() ).replaceAll( "[^A-Za-z0-9._-]", "_" ) );
+            try {
+                productCache = new ProductCache( directory, productCacheMaxBytes );
+            } catch ( IOException e ) {
+                LOGGER.warn( "Could not create the product cache directory [{}] for source [{}], products will not be cached: {}", directory, getId(), e.getMessage() );
+                productCacheMaxBytes = 0;
+            }
+        }
+        return productCache;
+    }
+
+    /**
+     * Creates a client for retrieving (part of) a resource, with the TLS settings and security credentials of the source.
+     */
+    WebClient createRetrievalClient( URI uri, Map<String, Serializable> requestProperties ) {
+        WebClient retrieveWebClient = WebClient.create( uri );
+        HTTPConduit conduit = WebClient.getConfig( retrieveWebClient ).getHttpConduit();
+        conduit.getClient().setConnectionTimeout( connectionTimeout );
+        conduit.getClient().setReceiveTimeout( receiveTimeout );
+        conduit.setTlsClientParameters( getTlsClientParameters() );
+        setSecurityCredentials( retrieveWebClient, requestProperties );
+        return retrieveWebClient;
+    }
+
+    private MimeType getMimeType( Response clientResponse, URI uri ) {
+        MediaType mediaType = clientResponse.getMediaType();
+        MimeType mimeType = null;
+        try {
+            mimeType = (mediaType == null) ? new MimeType( "application/octet-stream" ) : new MimeType( mediaType.toString() );
+            LOGGER.debug( "Creating mime type from CDR Source named [{}] using uri [{}] with value [{}] defaulting to [{}]", getId(), uri, mediaType );
+        } catch ( MimeTypeParseException e ) {
+            try {
+                mimeType = new MimeType( "application/octet-stream" );
+                LOGGER.warn( "Creating mime type from CDR Source named [{}] using uri [{}] with value [{}] defaulting to [{}]", getId(), uri, "application/octet-stream" );
+            } catch ( MimeTypeParseException e1 ) {
+                LOGGER.error( "Could not create MIMEType for resource being retrieved", e1 );
+            }
+
+        }
+        return mimeType;
+    }
+
+    private String getFileName( Response clientResponse ) {
+        String dispositionString = clientResponse.getHeaderString( HEADER_CONTENT_DISPOSITION );
+
+        String fileName = null;
+        if ( dispositionString != null ) {
+            ContentDisposition contentDisposition = new ContentDisposition( dispositionString );
+            fileName = contentDisposition.getParameter( "filename" );
+            if ( fileName == null ) {
+                fileName = contentDisposition.getParameter( "\"filename\"" );
+            }
+            if ( fileName == null ) {
+                // ECDR-74 use MIMEType parser to get the file extension in
+                fileName = getId() + "-" + System.currentTimeMillis();
+            }
+        } else {
+            // ECDR-74 use MIMEType parser to get the file extension in this case
+            fileName = getId() + "-" + System.currentTimeMillis();
+        }
+        return fileName;
+    }
+
+    /**
+     * Builds the complete query URI for a single request. The shared client is never modified so that concurrent queries
+     * to the same source do not interfere with each other.
+     */
+    protected URI buildQueryUri( Map<String, String> filterParameters ) {
+        // like resetQuery(), start from the base URI without any query parameters it was configured with
+        UriBuilder uriBuilder = UriBuilder.fromUri( cdrRestClient.getBaseURI() ).replaceQuery( null );
         for ( Entry<String, String> entry : filterParameters.entrySet() ) {
             String parameterName = parameterMap.get( entry.getKey() );
             if ( StringUtils.isNotBlank( parameterName ) ) {
-                cdrRestClient.replaceQueryParam( parameterName, entry.getValue() );
+                uriBuilder.replaceQueryParam( parameterName, entry.getValue() );
             } else if ( useDefaultParameters() ) {
-                cdrRestClient.replaceQueryParam( entry.getKey(), entry.getValue() );
+                uriBuilder.replaceQueryParam( entry.getKey(), entry.getValue() );
             }
         }
 
         Map<String, String> hardcodedQueryParams = getStaticUrlQueryValues();
         for ( Entry<String, String> entry : hardcodedQueryParams.entrySet() ) {
-            cdrRestClient.replaceQueryParam( entry.getKey(), entry.getValue() );
+            uriBuilder.replaceQueryParam( entry.getKey(), entry.getValue() );
         }
+        return uriBuilder.buildFromEncoded();
+    }
+
+    /**
+     * Creates a client for a single request to the given URI. The returned client shares the configuration (and
+     * therefore the HTTP conduit, timeouts and TLS settings) of the source's configured client, but keeps its own
+     * request state (URI, headers and cookies).
+     */
+    protected WebClient createQueryClient( URI requestUri ) {
+        return WebClient.fromClient( cdrRestClient ).to( requestUri.toString(), false );
+    }
+
+    private Semaphore acquireConnectionPermit() throws UnsupportedQueryException {
+        Semaphore permits = connectionPermits;
+        if ( permits != null ) {
+            try {
+                if ( connectionTimeout > 0 ) {
+                    if ( !permits.tryAcquire( connectionTimeout, TimeUnit.MILLISECONDS ) ) {
+                        throw new UnsupportedQueryException( "Timed out after [" + connectionTimeout + "] ms waiting for one of the [" + maxConnections + "] connections to source ["
+                                + getId() + "]" );
+                    }
+                } else {
+                    permits.acquire();
+                }
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new UnsupportedQueryException( "Interrupted while waiting for a connection to source [" + getId() + "]", e );
+            }
+        }
+        return permits;
+    }
+
+    private void releaseConnectionPermit( Semaphore permits ) {
+        if ( permits != null ) {
+            permits.release();
+        }
+    }
+
+    private void setAcceptEncoding( WebClient client ) {
+        if ( acceptCompression ) {
+            client.acceptEncoding( ENCODING_GZIP, ENCODING_DEFLATE );
+        }
+    }
+
+    /**
+     * Returns the response body, decompressing it while it is read if the remote source compressed it. The number of
+     * bytes read before and after decompression are added to the source's totals when the stream is closed.
+     */
+    protected InputStream getResponseStream( Response response ) throws IOException {
+        InputStream entity = (InputStream) response.getEntity();
+        if ( entity == null ) {
+            return null;
+        }
+        String contentEncoding = response.getHeaderString( HttpHeaders.CONTENT_ENCODING );
+        final CountingInputStream wireStream = new CountingInputStream( entity );
+        InputStream decodedStream = wireStream;
+        if ( ENCODING_GZIP.equalsIgnoreCase( contentEncoding ) || ENCODING_X_GZIP.equalsIgnoreCase( contentEncoding ) ) {
+            decodedStream = new GZIPInputStream( wireStream );
+        } else if ( ENCODING_DEFLATE.equalsIgnoreCase( contentEncoding ) ) {
+            decodedStream = new InflaterInputStream( wireStream );
+        }
+        LOGGER.debug( "Response from source [{}] has content encoding [{}]", getId(), contentEncoding );
+
+        return new CountingInputStream( decodedStream ) {
+            private boolean counted = false;
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if ( !counted ) {
+                        counted = true;
+                        long compressed = compressedBytesReceived.addAndGet( wireStream.getByteCount() );
+                        long uncompressed = uncompressedBytesReceived.addAndGet( getByteCount() );
+                        LOGGER.debug( "Received [{}] bytes ([{}] uncompressed) from source [{}], totals are now [{}] bytes ([{}] uncompressed)", wireStream.getByteCount(), getByteCount(),
+                                getId(), compressed, uncompressed );
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the number of queries that were sent to the remote source while query coalescing was enabled
+     */
+    public long getRemoteQueryCount() {
+        return queryCoalescer.getRemoteCalls();
+    }
+
+    /**
+     * @return the number of remote calls saved by sharing the response of an identical in flight query
+     */
+    public long getCoalescedQueryCount() {
+        return queryCoalescer.getCoalescedCalls();
+    }
+
+    /**
+     * @return the total number of bytes received from the remote source as sent over the wire (compressed if the source
+     *         supports compression)
+     */
+    public long getCompressedBytesReceived() {
+        return compressedBytesReceived.get();
+    }
+
+    /**
+     * @return the total number of bytes received from the remote source after decompression
+     */
+    public long getUncompressedBytesReceived() {
+        return uncompressedBytesReceived.get();
     }
 
     protected Map<String, String> getInitialFilterParameters( QueryRequest request ) {
@@ -482,19 +1223,112 @@ public abstract class AbstractCDRSource extends MaskableImpl implements Federate
         return sortOrderString;
     }
 
-    protected URI getURIFromMetacard( URI uri ) {
-        URI returnUri = null;
+    private static boolean isHttpUri( URI uri ) {
+        String scheme = uri.getScheme();
+        return "http".equalsIgnoreCase( scheme ) || "https".equalsIgnoreCase( scheme );
+    }
+
+    /**
+     * Returns the HTTP(S) product URI for a catalog resource URI, from the resolved URI cache if possible and otherwise
+     * by searching the remote source for the metacard with that resource URI.
+     */
+    private URI resolveResourceUri( URI catalogUri ) throws IOException {
+        ResourceUriCache uriCache = resourceUriCache;
+        URI resolvedUri = uriCache == null ? null : uriCache.get( catalogUri );
+        if ( resolvedUri != null ) {
+            LOGGER.debug( "Using cached product uri [{}] for resource uri [{}]", resolvedUri, catalogUri );
+            return resolvedUri;
+        }
+        resolvedUri = getURIFromMetacard( catalogUri );
+        if ( resolvedUri != null && uriCache != null && isHttpUri( resolvedUri ) ) {
+            uriCache.put( catalogUri, resolvedUri );
+        }
+        return resolvedUri;
+    }
+
+    protected URI getURIFromMetacard( URI uri ) throws IOException {
         Map<String, String> uriMap = new HashMap<String, String>( 3 );
         uriMap.put( Metacard.RESOURCE_URI, uri.toString() );
-        setURLQueryString( uriMap );
-        Response response = cdrRestClient.get();
-        AtomResponseTransformer transformer = new AtomResponseTransformer( getFilterConfig() );
-        SourceResponse sourceResponse = transformer.processSearchResponse( (InputStream) response.getEntity(), null, getId() );
-        List<Result> results = sourceResponse.getResults();
-        if ( !results.isEmpty() ) {
-            returnUri = results.get( 0 ).getMetacard().getResourceURI();
+        Metacard metacard = queryForMetacard( uriMap, null );
+        return metacard == null ? null : metacard.getResourceURI();
+    }
+
+    /**
+     * Queries the source for the full entry of a metacard that was returned by a brief query and returns its metadata.
+     * Returns null if the source can not be queried by id or the metadata could not be retrieved.
+     */
+    String fetchMetadata( String id, Map<String, Serializable> requestProperties ) {
+        if ( !parameterMap.containsKey( SearchConstants.UID_PARAMETER ) && !useDefaultParameters() ) {
+            LOGGER.debug( "Source [{}] does not support queries by id, so the full metadata of brief result [{}] can not be retrieved", getId(), id );
+            return null;
+        }
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put( SearchConstants.UID_PARAMETER, id );
+        if ( defaultResponseFormat != null ) {
+            parameters.put( SearchConstants.FORMAT_PARAMETER, defaultResponseFormat );
         }
-        return returnUri;
+        LOGGER.debug( "Retrieving the full metadata of brief result [{}] from source [{}]", id, getId() );
+        try {
+            Metacard metacard = queryForMetacard( parameters, requestProperties );
+            if ( metacard instanceof CDRMetacard ) {
+                // only the inline metadata, the caller decides whether to follow the metadata link
+                metacard = ((CDRMetacard) metacard).getOriginalMetacard();
+            }
+            return metacard == null ? null : metacard.getMetadata();
+        } catch ( IOException | RuntimeException e ) {
+            LOGGER.warn( "Could not retrieve the full metadata of result [{}] from source [{}]: {}", id, getId(), e.getMessage() );
+            return null;
+        }
+    }
+
+    /**
+     * Queries the source with the given parameters and returns the first metacard in the response, or null if there
+     * were no results.
+     */
+    private Metacard queryForMetacard( Map<String, String> parameters, Map<String, Serializable> requestProperties ) throws IOException {
+        URI requestUri = buildQueryUri( parameters );
+        EndpointBalancer.Endpoint endpoint = selectEndpoint();
+        WebClient queryClient = createQueryClient( endpoint == null ? requestUri : endpoint.resolve( requestUri ) );
+        if ( requestProperties != null ) {
+            setSecurityCredentials( queryClient, requestProperties );
+        }
+        setAcceptEncoding( queryClient );
+        long startTime = System.currentTimeMillis();
+        boolean sent = false;
+        boolean failed = true;
+        Semaphore permits = null;
+        SourceResponse sourceResponse;
+        try {
+            permits = acquireConnectionPermit();
+            Response response;
+            try {
+                sent = true;
+                response = queryClient.get();
+            } catch ( RuntimeException e ) {
+                circuitBreaker.recordFailure();
+                throw e;
+            }
+            failed = response.getStatus() >= Status.INTERNAL_SERVER_ERROR.getStatusCode();
+            if ( response.getStatus() != Status.OK.getStatusCode() ) {
+                circuitBreaker.recordFailure();
+                throw new IOException( "Query to source [" + getId() + "] returned http status code " + response.getStatus() );
+            }
+            try {
+                sourceResponse = processSearchResponse( response.getMediaType(), getResponseStream( response ), null, 0 );
+            } catch ( IOException e ) {
+                failed = true;
+                throw e;
+            }
+            circuitBreaker.recordSuccess();
+        } catch ( UnsupportedQueryException e ) {
+            // only thrown when no connection permit could be acquired
+            throw new IOException( e.getMessage(), e );
+        } finally {
+            releaseConnectionPermit( permits );
+            completeEndpointRequest( endpoint, sent, failed, startTime );
+        }
+        List<Result> results = sourceResponse.getResults();
+        return results.isEmpty() ? null : results.get( 0 ).getMetacard();
     }
 
     public synchronized void setUrl( String endpointUrl ) {
@@ -502,10 +1336,14 @@ public abstract class AbstractCDRSource extends MaskableImpl implements Federate
         if ( StringUtils.isNotBlank( endpointUrl ) && !endpointUrl.equals( existingUrl ) ) {
             LOGGER.debug( "ConfigUpdate: Updating the source endpoint url value from [{}] to [{}] for sourceId [{}]", existingUrl, endpointUrl, getId() );
             cdrRestClient = WebClient.create( endpointUrl, true );
+            resetQueryResultCache();
+            resetResourceUriCache();
+            resetEndpointBalancer();
 
             HTTPConduit conduit = WebClient.getConfig( cdrRestClient ).getHttpConduit();
             conduit.getClient().setReceiveTimeout( receiveTimeout );
             conduit.getClient().setConnectionTimeout( connectionTimeout );
+            conduit.getClient().setConnection( keepAliveConnections ? ConnectionType.KEEP_ALIVE : ConnectionType.CLOSE );
             conduit.setTlsClientParameters( getTlsClientParameters() );
         } else {
             LOGGER.warn( "OpenSearch Source Endpoint URL is not a valid value (either blank or same as previous value), so cannot update [{}]", endpointUrl );
@@ -523,6 +1361,10 @@ public abstract class AbstractCDRSource extends MaskableImpl implements Federate
             conduit.getClient().setReceiveTimeout( receiveTimeout );
             conduit.getClient().setConnectionTimeout( connectionTimeout );
             conduit.setTlsClientParameters( getTlsClientParameters() );
+            if ( healthMonitor.isRunning() ) {
+                // check the new url in the background straight away
+                healthMonitor.start( availableCheckCacheTime );
+            }
         } else {
             LOGGER.debug( "ConfigUpdate: Updating the ping (site availability check) endpoint url to [null], will not be performing ping checks" );
         }
@@ -530,29 +1372,17 @@ public abstract class AbstractCDRSource extends MaskableImpl implements Federate
 
     /*
      * This method is needed because of a CXF deficiency of not using the keystore values from the java system
-     * properties. So this specifically pulls the values from the system properties then sets them to a KeyManager being
-     * used
+     * properties. The shared SSL socket factory is built from those values (and only rebuilt when they change) so the
+     * keystore is not read on every call and TLS sessions are reused across all source clients
      */
     protected TLSClientParameters getTlsClientParameters() {
         TLSClientParameters tlsClientParameters = new TLSClientParameters();
         tlsClientParameters.setDisableCNCheck( disableCNCheck );
-        String keystore = System.getProperty( SSL_KEYSTORE_JAVA_PROPERTY );
-        String keystorePassword = System.getProperty( SSL_KEYSTORE_PASSWORD_JAVA_PROPERTY );
-
-        KeyManager[] keyManagers = null;
-        if ( StringUtils.isNotBlank( keystore ) && keystorePassword != null ) {
-            try {
-                KeyManager manager = KeyManagerUtils.createClientKeyManager( new File( keystore ), keystorePassword );
-                keyManagers = new KeyManager[1];
-                keyManagers[0] = manager;
-
-            } catch ( IOException | GeneralSecurityException ex ) {
-                LOGGER.debug( "Could not access keystore {}, using default java keystore.", keystore );
-            }
+        SSLSocketFactory socketFactory = SSLContextCache.getSocketFactory();
+        if ( socketFactory != null ) {
+            LOGGER.debug( "Setting the shared CXF SSL socket factory based on the Platform Global Configuration values" );
+            tlsClientParameters.setSSLSocketFactory( socketFactory );
         }
-
-        LOGGER.debug( "Setting the CXF KeyManager and TrustManager based on the Platform Global Configuration values" );
-        tlsClientParameters.setKeyManagers( keyManagers );
         return tlsClientParameters;
 
     }
@@ -569,6 +1399,50 @@ public abstract class AbstractCDRSource extends MaskableImpl implements Federate
         }
     }
 
+    /**
+     * Converts a query response into a SourceResponse, as JSON if the response parser is JSON or it is AUTO and the
+     * media type is JSON (application/json, application/geo+json and the like), and as Atom otherwise. A response that
+     * can not be read is reported as an IOException, like a failure to receive it.
+     */
+    private SourceResponse processSearchResponse( MediaType mediaType, InputStream inputStream, QueryRequest queryRequest, int maxResults ) throws IOException {
+        if ( isJsonResponse( mediaType ) ) {
+            LOGGER.debug( "Reading the JSON query response with media type [{}] from source [{}]", mediaType, getId() );
+            try {
+                return new JsonResponseTransformer().processSearchResponse( inputStream, queryRequest, getId(), maxResults );
+            } catch ( CatalogTransformerException e ) {
+                throw new IOException( e.getMessage(), e );
+            }
+        }
+        AtomResponseTransformer transformer = new AtomResponseTransformer( getFilterConfig() );
+        transformer.setParallelConversionThreshold( parallelConversionThreshold );
+        transformer.setConversionPool( conversionPool );
+        return transformer.processSearchResponse( inputStream, queryRequest, getId(), maxResults );
+    }
+
+    private boolean isJsonResponse( MediaType mediaType ) {
+        switch ( responseParser ) {
+        case JSON:
+            return true;
+        case ATOM:
+            return false;
+        default:
+            if ( mediaType == null ) {
+                return false;
+            }
+            String subtype = mediaType.getSubtype();
+            return "json".equalsIgnoreCase( subtype ) || StringUtils.endsWithIgnoreCase( subtype, "+json" );
+        }
+    }
+
+    public void setResponseParser( String parser ) {
+        try {
+            LOGGER.debug( "ConfigUpdate: Updating the response parser value from [{}] to [{}] for sourceId [{}]", responseParser, parser, getId() );
+            responseParser = StringUtils.isBlank( parser ) ? ResponseParser.AUTO : ResponseParser.valueOf( parser.trim().toUpperCase() );
+        } catch ( IllegalArgumentException e ) {
+            LOGGER.warn( "Could not update the response parser due to invalid value [{}], so leaving at [{}]", parser, responseParser );
+        }
+    }
+
     public void setPingMethod( PingMethod method ) {
         LOGGER.debug( "ConfigUpdate: Updating the httpPing method value from [{}] to [{}]", pingMethod, method );
         pingMethod = method;
@@ -590,6 +1464,10 @@ public abstract class AbstractCDRSource extends MaskableImpl implements Federate
         }
         LOGGER.debug( "ConfigUpdate: Updating the Available Check Cache Time value from [{}] to [{}] seconds", availableCheckCacheTime / 1000, newCacheTime );
         this.availableCheckCacheTime = newCacheTime * 1000;
+        circuitBreaker.setOpenInterval( availableCheckCacheTime );
+        if ( healthMonitor.isRunning() ) {
+            healthMonitor.start( availableCheckCacheTime );
+        }
     }
 
     public void setReceiveTimeoutSeconds( Integer seconds ) {
@@ -612,6 +1490,299 @@ public abstract class AbstractCDRSource extends MaskableImpl implements Federate
         }
     }
 
+    /**
+     * Sets the maximum number of concurrent connections (in-flight queries) that will be opened to the remote source.
+     * Queries that arrive while all connections are in use wait up to the connection timeout for one to free up.
+     *
+     * @param max maximum number of connections, 0 or null means unbounded
+     */
+    public synchronized void setMaxConnections( Integer max ) {
+        max = max == null || max < 0 ? 0 : max;
+        if ( max != maxConnections ) {
+            LOGGER.debug( "ConfigUpdate: Updating the max connections value from [{}] to [{}] for sourceId [{}]", maxConnections, max, getId() );
+            maxConnections = max;
+            connectionPermits = max > 0 ? new Semaphore( max, true ) : null;
+        }
+    }
+
+    /**
+     * Sets whether HTTP connections to the remote source are kept alive and reused across requests. Idle persistent
+     * connections are evicted by the JVM HTTP keep-alive cache once the server's keep-alive timeout has passed.
+     */
+    public void setKeepAliveConnections( boolean keepAlive ) {
+        if ( keepAlive != keepAliveConnections ) {
+            LOGGER.debug( "ConfigUpdate: Updating the keep alive connections value from [{}] to [{}] for sourceId [{}]", keepAliveConnections, keepAlive, getId() );
+            keepAliveConnections = keepAlive;
+            if ( cdrRestClient != null ) {
+                WebClient.getConfig( cdrRestClient ).getHttpConduit().getClient().setConnection( keepAlive ? ConnectionType.KEEP_ALIVE : ConnectionType.CLOSE );
+            }
+        }
+    }
+
+    /**
+     * Sets whether the source should ask the remote endpoint to compress (gzip or deflate) query responses and resources.
+     */
+    public void setAcceptCompression( boolean compression ) {
+        LOGGER.debug( "ConfigUpdate: Updating the accept compression value from [{}] to [{}] for sourceId [{}]", acceptCompression, compression, getId() );
+        acceptCompression = compression;
+    }
+
+    /**
+     * Sets the number of consecutive failed queries after which the source is marked as unavailable (until the next
+     * successful availability check).
+     */
+    public void setFailureThreshold( Integer threshold ) {
+        threshold = threshold == null ? 3 : threshold;
+        LOGGER.debug( "ConfigUpdate: Updating the failure threshold value to [{}] for sourceId [{}]", threshold, getId() );
+        circuitBreaker.setFailureThreshold( threshold );
+        if ( threshold != failureThreshold ) {
+            failureThreshold = threshold;
+            resetEndpointBalancer();
+        }
+    }
+
+    /**
+     * Sets the URLs of replicas of the endpoint URL. When replicas are configured queries are balanced across the
+     * endpoint URL and its replicas, while product retrievals go to the node that returned the product URI so that a
+     * product (and every range of it) is always retrieved from one node.
+     *
+     * @param urls comma separated replica URLs, blank sends every query to the endpoint URL
+     */
+    public synchronized void setReplicaUrls( String urls ) {
+        List<URI> uris = new ArrayList<URI>();
+        if ( StringUtils.isNotBlank( urls ) ) {
+            for ( String url : urls.split( "," ) ) {
+                if ( StringUtils.isNotBlank( url ) ) {
+                    try {
+                        uris.add( new URI( url.trim() ) );
+                    } catch ( URISyntaxException e ) {
+                        LOGGER.warn( "Ignoring the replica endpoint url [{}] for sourceId [{}] because it is not a valid URI: {}", url, getId(), e.getMessage() );
+                    }
+                }
+            }
+        }
+        LOGGER.debug( "ConfigUpdate: Updating the replica endpoint urls value from [{}] to [{}] for sourceId [{}]", replicaUris, uris, getId() );
+        replicaUris = uris;
+        resetEndpointBalancer();
+    }
+
+    /**
+     * Sets how queries are balanced across the replica endpoints, see {@link EndpointBalancer.Method}.
+     */
+    public synchronized void setLoadBalancingMethod( String method ) {
+        try {
+            LOGGER.debug( "ConfigUpdate: Updating the load balancing method value from [{}] to [{}] for sourceId [{}]", loadBalancingMethod, method, getId() );
+            if ( StringUtils.isNotBlank( method ) ) {
+                loadBalancingMethod = EndpointBalancer.Method.valueOf( method );
+                resetEndpointBalancer();
+            }
+        } catch ( IllegalArgumentException e ) {
+            LOGGER.warn( "Could not update the load balancing method due to invalid value [{}], so leaving at [{}]", method, loadBalancingMethod );
+        }
+    }
+
+    /**
+     * Sets how long a replica endpoint is taken out of the rotation after reaching the failure threshold.
+     */
+    public synchronized void setEndpointEjectionSeconds( Integer seconds ) {
+        seconds = seconds == null || seconds < 1 ? 30 : seconds;
+        LOGGER.debug( "ConfigUpdate: Updating the endpoint ejection time value from [{}] to [{}] seconds for sourceId [{}]", endpointEjectionTime / 1000, seconds, getId() );
+        endpointEjectionTime = TimeUnit.SECONDS.toMillis( seconds );
+        resetEndpointBalancer();
+    }
+
+    /**
+     * @return the balancer spreading queries over the replica endpoints, or null if no replicas are configured
+     */
+    public EndpointBalancer getEndpointBalancer() {
+        return endpointBalancer;
+    }
+
+    private synchronized void resetEndpointBalancer() {
+        if ( replicaUris.isEmpty() || cdrRestClient == null ) {
+            endpointBalancer = null;
+        } else {
+            List<URI> baseUris = new ArrayList<URI>( replicaUris.size() + 1 );
+            baseUris.add( cdrRestClient.getBaseURI() );
+            baseUris.addAll( replicaUris );
+            endpointBalancer = new EndpointBalancer( baseUris, loadBalancingMethod, failureThreshold, endpointEjectionTime );
+        }
+    }
+
+    /**
+     * Sets the number of connections used to download large resources from endpoints that support byte ranges. Each
+     * connection retrieves a different range of the resource into a temporary file.
+     *
+     * @param connections number of parallel connections, 1 or less retrieves every resource over a single connection
+     */
+    public void setParallelRetrievalConnections( Integer connections ) {
+        connections = connections == null || connections < 1 ? 1 : connections;
+        LOGGER.debug( "ConfigUpdate: Updating the parallel retrieval connections value from [{}] to [{}] for sourceId [{}]", parallelRetrievalConnections, connections, getId() );
+        parallelRetrievalConnections = connections;
+        int threads = Math.max( DEFAULT_RANGE_THREADS, connections );
+        // the core size can never be larger than the maximum size
+        if ( threads > rangeExecutor.getMaximumPoolSize() ) {
+            rangeExecutor.setMaximumPoolSize( threads );
+            rangeExecutor.setCorePoolSize( threads );
+        } else {
+            rangeExecutor.setCorePoolSize( threads );
+            rangeExecutor.setMaximumPoolSize( threads );
+        }
+    }
+
+    /**
+     * Sets the minimum size (in megabytes) a resource must be before it is downloaded over parallel connections.
+     */
+    public void setParallelRetrievalThresholdMB( Integer megabytes ) {
+        long bytes = (megabytes == null || megabytes < 0 ? 100 : megabytes) * 1024L * 1024L;
+        LOGGER.debug( "ConfigUpdate: Updating the parallel retrieval threshold value from [{}] to [{}] bytes for sourceId [{}]", parallelRetrievalThreshold, bytes, getId() );
+        parallelRetrievalThreshold = bytes;
+    }
+
+    /**
+     * Sets the maximum size (in megabytes) of the on-disk cache of retrieved products. Cached products are validated
+     * with the remote endpoint (ETag/Last-Modified) on every retrieval, and only transferred again if they changed.
+     *
+     * @param megabytes maximum size of the cache, 0 or null disables product caching
+     */
+    public synchronized void setProductCacheSizeMB( Integer megabytes ) {
+        long bytes = megabytes == null || megabytes < 0 ? 0 : megabytes * 1024L * 1024L;
+        if ( bytes != productCacheMaxBytes ) {
+            LOGGER.debug( "ConfigUpdate: Updating the product cache size value from [{}] to [{}] bytes for sourceId [{}]", productCacheMaxBytes, bytes, getId() );
+            productCacheMaxBytes = bytes;
+            productCache = null;
+        }
+    }
+
+    /**
+     * Sets the directory the product cache is kept in, each source uses its own sub directory.
+     */
+    public synchronized void setProductCacheDirectory( String directory ) {
+        if ( StringUtils.isNotBlank( directory ) && !directory.equals( productCacheDirectory ) ) {
+            LOGGER.debug( "ConfigUpdate: Updating the product cache directory value from [{}] to [{}] for sourceId [{}]", productCacheDirectory, directory, getId() );
+            productCacheDirectory = directory;
+            productCache = null;
+        }
+    }
+
+    /**
+     * Sets the time (in seconds) query responses are cached and returned without contacting the remote source. A
+     * shorter max-age sent by the remote source in the Cache-Control header takes precedence.
+     *
+     * @param seconds time to live of cached query responses, 0 or null disables the query result cache
+     */
+    public synchronized void setQueryCacheTTLSeconds( Integer seconds ) {
+        long millis = seconds == null || seconds < 0 ? 0 : seconds * 1000L;
+        LOGGER.debug( "ConfigUpdate: Updating the query cache time to live value from [{}] to [{}] milliseconds for sourceId [{}]", queryCacheTimeToLive, millis, getId() );
+        queryCacheTimeToLive = millis;
+        resetQueryResultCache();
+    }
+
+    /**
+     * Sets the time (in seconds) after they expire that cached query responses are still returned while they are
+     * refreshed in the background.
+     */
+    public synchronized void setQueryCacheStaleSeconds( Integer seconds ) {
+        long millis = seconds == null || seconds < 0 ? 0 : seconds * 1000L;
+        LOGGER.debug( "ConfigUpdate: Updating the query cache stale time value from [{}] to [{}] milliseconds for sourceId [{}]", queryCacheStaleTime, millis, getId() );
+        queryCacheStaleTime = millis;
+        resetQueryResultCache();
+    }
+
+    /**
+     * Sets the maximum size (in megabytes) of the cached query responses.
+     */
+    public synchronized void setQueryCacheSizeMB( Integer megabytes ) {
+        long bytes = (megabytes == null || megabytes < 1 ? 10 : megabytes) * 1024L * 1024L;
+        LOGGER.debug( "ConfigUpdate: Updating the query cache size value from [{}] to [{}] bytes for sourceId [{}]", queryCacheMaxBytes, bytes, getId() );
+        queryCacheMaxBytes = bytes;
+        resetQueryResultCache();
+    }
+
+    /**
+     * Sets whether concurrent identical queries (same outbound parameters and credentials) share a single call to the
+     * remote source. Off by default, as each coalesced caller pays for a copy of the metacards of the shared response.
+     */
+    public void setCoalesceQueries( boolean coalesce ) {
+        LOGGER.debug( "ConfigUpdate: Updating the coalesce queries value from [{}] to [{}] for sourceId [{}]", coalesceQueries, coalesce, getId() );
+        coalesceQueries = coalesce;
+    }
+
+    public void setResourceUriCacheTTLSeconds( long seconds ) {
+        LOGGER.debug( "ConfigUpdate: Updating the resource uri cache time to live value from [{}] to [{}] seconds for sourceId [{}]", resourceUriCacheTimeToLive / 1000, seconds,
+                getId() );
+        resourceUriCacheTimeToLive = TimeUnit.SECONDS.toMillis( seconds );
+        resetResourceUriCache();
+    }
+
+    public void setResourceUriCacheSize( int maxEntries ) {
+        LOGGER.debug( "ConfigUpdate: Updating the resource uri cache size value from [{}] to [{}] for sourceId [{}]", resourceUriCacheMaxEntries, maxEntries, getId() );
+        resourceUriCacheMaxEntries = maxEntries;
+        resetResourceUriCache();
+    }
+
+    private synchronized void resetResourceUriCache() {
+        resourceUriCache = resourceUriCacheTimeToLive > 0 && resourceUriCacheMaxEntries > 0 ? new ResourceUriCache( resourceUriCacheTimeToLive, resourceUriCacheMaxEntries ) : null;
+    }
+
+    private synchronized void resetQueryResultCache() {
+        queryResultCache = queryCacheTimeToLive > 0 ? new QueryResultCache( queryCacheTimeToLive, queryCacheStaleTime, queryCacheMaxBytes ) : null;
+    }
+
+    /**
+     * Sets how many concurrent requests a page larger than the max result count may be split into. 1 turns splitting
+     * off, so such pages are limited to the max result count. All queries to the source share the extra requests: at
+     * most one less than this number of sub-page requests run on the query threads at a time.
+     */
+    public synchronized void setMaxSubPageRequests( Integer requests ) {
+        LOGGER.debug( "ConfigUpdate: Updating the max sub-page requests value from [{}] to [{}] for sourceId [{}]", maxSubPageRequests, requests, getId() );
+        maxSubPageRequests = requests == null || requests < 1 ? 1 : requests;
+        subPagePermits = new Semaphore( maxSubPageRequests - 1 );
+    }
+
+    /**
+     * Sets the maximum number of threads the source uses to run asynchronous federated queries, sub-page requests and
+     * background refreshes of cached queries. Work beyond that waits for one of the threads to free up.
+     */
+    public synchronized void setQueryThreads( Integer threads ) {
+        threads = threads == null || threads < 1 ? DEFAULT_QUERY_THREADS : threads;
+        if ( threads != queryThreads ) {
+            LOGGER.debug( "ConfigUpdate: Updating the query threads value from [{}] to [{}] for sourceId [{}]", queryThreads, threads, getId() );
+            // the core size can never be larger than the maximum size
+            if ( threads > queryThreads ) {
+                queryExecutor.setMaximumPoolSize( threads );
+                queryExecutor.setCorePoolSize( threads );
+            } else {
+                queryExecutor.setCorePoolSize( threads );
+                queryExecutor.setMaximumPoolSize( threads );
+            }
+            queryThreads = threads;
+        }
+    }
+
+    /**
+     * Sets the number of entries an Atom response needs before the rest of its entries are converted to metacards in
+     * parallel, 0 turns parallel conversion off. The source converts them on its own fork-join pool, which is shut down
+     * when parallel conversion is turned off or the source is cleaned up.
+     */
+    public synchronized void setParallelConversionThreshold( Integer threshold ) {
+        LOGGER.debug( "ConfigUpdate: Updating the parallel conversion threshold value from [{}] to [{}] for sourceId [{}]", parallelConversionThreshold, threshold, getId() );
+        parallelConversionThreshold = threshold == null || threshold < 0 ? 0 : threshold;
+        if ( parallelConversionThreshold == 0 ) {
+            setConversionPool( null );
+        } else if ( conversionPool == null ) {
+            setConversionPool( new ForkJoinPool() );
+        }
+    }
+
+    private synchronized void setConversionPool( ForkJoinPool pool ) {
+        if ( conversionPool != null ) {
+            // conversions that are running finish, new ones on the old pool fall back to converting sequentially
+            conversionPool.shutdown();
+        }
+        conversionPool = pool;
+    }
+
     public void setMaxResultCount( Integer count ) {
         count = count == null ? 0 : count;
         if ( count != maxResultsCount ) {
@@ -625,6 +1796,34 @@ public abstract class AbstractCDRSource extends MaskableImpl implements Federate
         defaultResponseFormat = defaultFormat;
     }
 
+    /**
+     * Sets whether queries ask the remote source for brief entries, without the embedded metadata, to cut the bytes
+     * transferred and parsed for list views. The full metadata of a result is fetched from the source by id the first
+     * time it is read. Queries that ask for a specific format or for a single record by id are never brief.
+     */
+    public void setBriefQueries( boolean brief ) {
+        LOGGER.debug( "ConfigUpdate: Updating the brief queries value from [{}] to [{}] for sourceId [{}]", briefQueries, brief, getId() );
+        briefQueries = brief;
+    }
+
+    /**
+     * Sets the remote response format used for brief queries, blank keeps the default response format.
+     */
+    public void setBriefResponseFormat( String format ) {
+        LOGGER.debug( "ConfigUpdate: Updating the brief response format value from [{}] to [{}] for sourceId [{}]", briefResponseFormat, format, getId() );
+        briefResponseFormat = format;
+    }
+
+    /**
+     * Sets the extra query parameters sent with brief queries, as comma separated name=value pairs (for example the
+     * output fields parameter of the remote source).
+     */
+    public void setBriefParameters( String parameters ) {
+        Map<String, String> parameterValues = SearchUtils.convertToMap( parameters );
+        LOGGER.debug( "ConfigUpdate: Updating the brief parameters value from [{}] to [{}] for sourceId [{}]", briefParameters, parameterValues, getId() );
+        briefParameters = parameterValues;
+    }
+
     public void setSortMap( String sortMapStr ) {
         Map<String, String> convertedMap = SearchUtils.convertToMap( sortMapStr );
         LOGGER.debug( "Updating sortMap with new entries: {}", convertedMap.toString() );
@@ -645,6 +1844,7 @@ public abstract class AbstractCDRSource extends MaskableImpl implements Federate
 
     protected void setCdrRestClient( WebClient restClient ) {
         this.cdrRestClient = restClient;
+        resetEndpointBalancer();
     }
 
     protected void setCdrAvailabilityCheckClient( WebClient availabilityCheckClient ) {
@@ -667,16 +1867,129 @@ public abstract class AbstractCDRSource extends MaskableImpl implements Federate
         parameterMap = translateMap;
     }
 
+    /**
+     * Adds the SAML cookie of the subject in the request properties to the client. The cookie is only sent over https,
+     * and comes from the {@link SecurityCookieCache} so the assertion is not re-serialized for every request.
+     */
     private void setSecurityCredentials( WebClient client, Map<String, Serializable> requestProperties ) {
         if ( sendSecurityCookie ) {
             if (requestProperties.containsKey( SecurityConstants.SECURITY_SUBJECT )) {
                 Serializable property = requestProperties.get( SecurityConstants.SECURITY_SUBJECT );
-                if (property instanceof Subject ) {
-                    Subject subject = (Subject) property;
-                    RestSecurity.setSubjectOnClient( subject, client );
+                URI uri = client.getCurrentURI();
+                if ( property instanceof Subject && uri != null && "https".equalsIgnoreCase( uri.getScheme() ) ) {
+                    Cookie cookie = SecurityCookieCache.getCookie( (Subject) property );
+                    if ( cookie != null ) {
+                        client.cookie( cookie );
+                    } else {
+                        LOGGER.debug( "No SAML assertion found on the subject, so no security cookie is sent to source [{}]", getId() );
+                    }
                 }
             }
         }
     }
 
+    /**
+     * An asynchronous query that notifies its callback once the query has finished running. The HTTP call to the source
+     * can not be interrupted, so a query that is cancelled while it runs carries on until the call returns and only
+     * then notifies the callback. A query cancelled before it started notifies the callback when the executor gets to
+     * it.
+     */
+    private static final class AsyncQueryTask extends FutureTask<SourceResponse> {
+
+        private final SourceQueryCallback callback;
+
+        AsyncQueryTask( Callable<SourceResponse> callable, SourceQueryCallback callback ) {
+            super( callable );
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                notifyCallback();
+            }
+        }
+
+        private void notifyCallback() {
+            if ( callback != null ) {
+                try {
+                    callback.completed( get() );
+                } catch ( ExecutionException e ) {
+                    callback.failed( e.getCause() );
+                } catch ( InterruptedException | CancellationException e ) {
+                    callback.failed( e );
+                }
+            }
+        }
+    }
+
+    /**
+     * A sub-page request. A request submitted to the query threads holds a sub-page permit until it has finished
+     * running, which for a request cancelled while it runs is when the HTTP call returns.
+     */
+    private static final class SubPageTask extends FutureTask<SourceResponse> {
+
+        private volatile Semaphore permits;
+
+        SubPageTask( Callable<SourceResponse> callable ) {
+            super( callable );
+        }
+
+        void submit( ThreadPoolExecutor executor, Semaphore taskPermits ) {
+            permits = taskPermits;
+            try {
+                executor.execute( this );
+            } catch ( RejectedExecutionException e ) {
+                // the source is shutting down, the request is fetched on the calling thread instead
+                permits = null;
+                taskPermits.release();
+            }
+        }
+
+        /**
+         * Runs the request on the calling thread unless it is already running (or done) on one of the query threads.
+         */
+        void runIfNotStarted( ThreadPoolExecutor executor ) {
+            if ( permits == null || executor.remove( this ) ) {
+                run();
+            }
+        }
+
+        void cancel( ThreadPoolExecutor executor ) {
+            boolean queued = permits != null && executor.remove( this );
+            cancel( !queued );
+            if ( queued ) {
+                // releases the permit of a request that never started
+                run();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                if ( permits != null ) {
+                    permits.release();
+                    permits = null;
+                }
+            }
+        }
+    }
+
+    private static ThreadPoolExecutor createExecutor( int threads, final String threadName, final AtomicInteger threadCount ) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor( threads, threads, QUERY_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread( Runnable runnable ) {
+                Thread thread = new Thread( runnable, threadName + threadCount.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+        executor.allowCoreThreadTimeOut( true );
+        return executor;
+    }
+
 }
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.source.rest;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import net.di2e.ecdr.commons.CDRMetacard;
+
+import org.apache.commons.lang.StringUtils;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.impl.AttributeImpl;
+
+/**
+ * A metacard returned by a brief query. Its full metadata is not part of the brief response, so the first time the
+ * metadata is read it is retrieved from the source that returned the metacard, with the security credentials of the
+ * query. The metadata link of the metacard is only followed if the source could not return the metadata.
+ */
+class BriefMetacard extends CDRMetacard {
+
+    private static final long serialVersionUID = 1L;
+
+    // not serialized, a deserialized copy only has the metadata that was already retrieved
+    private final transient AbstractCDRSource source;
+    private final transient Map<String, Serializable> requestProperties;
+    private transient boolean metadataRequested = false;
+
+    BriefMetacard( Metacard metacard, AbstractCDRSource source, Map<String, Serializable> requestProperties ) {
+        // a CDRMetacard is unwrapped, so its metadata link is not followed before the source is asked for the metadata
+        super( metacard instanceof CDRMetacard ? ((CDRMetacard) metacard).getOriginalMetacard() : metacard );
+        this.source = source;
+        this.requestProperties = requestProperties;
+    }
+
+    @Override
+    public synchronized String getMetadata() {
+        String metadata = getOriginalMetacard().getMetadata();
+        if ( StringUtils.isBlank( metadata ) && !metadataRequested && source != null ) {
+            // only try once, a failed lookup is not repeated for every read
+            metadataRequested = true;
+            metadata = source.fetchMetadata( getId(), requestProperties );
+            if ( StringUtils.isNotBlank( metadata ) ) {
+                setAttribute( new AttributeImpl( Metacard.METADATA, metadata ) );
+            }
+        }
+        // falls back to the metadata link
+        return StringUtils.isBlank( metadata ) ? super.getMetadata() : metadata;
+    }
+
+}
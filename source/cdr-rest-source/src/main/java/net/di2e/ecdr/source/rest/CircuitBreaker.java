@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.source.rest;
+
+/**
+ * Tracks the health of a remote source so that callers can check it without making a remote call.
+ * <ul>
+ * <li>CLOSED - the source is healthy and requests flow normally</li>
+ * <li>OPEN - the source is considered down, requests should not be sent to it until the open interval has passed</li>
+ * <li>HALF_OPEN - the open interval has passed, the next request (or health check) decides whether the circuit closes
+ * or opens again</li>
+ * </ul>
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    private static final long DEFAULT_OPEN_INTERVAL = 60000;
+
+    private volatile State state = State.CLOSED;
+    private volatile long openedTime = 0;
+    private int consecutiveFailures = 0;
+
+    private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private volatile long openInterval = DEFAULT_OPEN_INTERVAL;
+
+    public State getState() {
+        State currentState = state;
+        if ( State.OPEN.equals( currentState ) && System.currentTimeMillis() - openedTime >= openInterval ) {
+            synchronized ( this ) {
+                if ( State.OPEN.equals( state ) ) {
+                    state = State.HALF_OPEN;
+                }
+                currentState = state;
+            }
+        }
+        return currentState;
+    }
+
+    /**
+     * @return true if requests should be sent to the source, false if the circuit is open
+     */
+    public boolean isRequestAllowed() {
+        return !State.OPEN.equals( getState() );
+    }
+
+    /**
+     * Records a successful request or health check, closing the circuit.
+     */
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Records a failed request. The circuit opens once the failure threshold is reached, or immediately if the circuit is
+     * half open.
+     */
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if ( State.HALF_OPEN.equals( getState() ) || consecutiveFailures >= failureThreshold ) {
+            trip();
+        }
+    }
+
+    /**
+     * Opens the circuit regardless of the number of failures, used when a health check reports the source as down.
+     */
+    public synchronized void trip() {
+        state = State.OPEN;
+        openedTime = System.currentTimeMillis();
+    }
+
+    public void setFailureThreshold( int threshold ) {
+        failureThreshold = threshold < 1 ? 1 : threshold;
+    }
+
+    public void setOpenInterval( long intervalMillis ) {
+        openInterval = intervalMillis;
+    }
+
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.source.rest;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads the queries of a source over the replicated endpoints of a remote CDR cluster. Each query goes to the
+ * available endpoint with the fewest outstanding requests, or with the lowest latency weighted by its outstanding
+ * requests. An endpoint that fails the failure threshold number of times in a row is ejected (skipped) for the ejection
+ * interval, after which the next request to it decides whether it is put back in rotation.
+ * <p/>
+ * Query URIs are built against the primary endpoint and then moved to the selected endpoint, so the replicas must accept
+ * the same path and query parameters.
+ */
+public class EndpointBalancer {
+
+    public enum Method {
+        LEAST_OUTSTANDING, LATENCY_WEIGHTED
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( EndpointBalancer.class );
+
+    // weight of the newest sample in the moving average of an endpoint's latency
+    private static final double LATENCY_SMOOTHING = 0.3;
+
+    private final List<Endpoint> endpoints;
+    private final Method method;
+    // rotates the starting point of the scan so ties are spread over the endpoints
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    public EndpointBalancer( List<URI> baseUris, Method method, int failureThreshold, long ejectionMillis ) {
+        List<Endpoint> list = new ArrayList<Endpoint>( baseUris.size() );
+        for ( URI baseUri : baseUris ) {
+            list.add( new Endpoint( baseUri, failureThreshold, ejectionMillis ) );
+        }
+        this.endpoints = Collections.unmodifiableList( list );
+        this.method = method == null ? Method.LEAST_OUTSTANDING : method;
+    }
+
+    /**
+     * Selects the endpoint for the next request and counts the request as outstanding on it. The caller must report the
+     * outcome with {@link Endpoint#succeeded(long)}, {@link Endpoint#failed()} or {@link Endpoint#released()}. If every
+     * endpoint is ejected the one with the fewest outstanding requests is used anyway, the availability of the source
+     * as a whole is left to its own circuit breaker.
+     */
+    public Endpoint select() {
+        int size = endpoints.size();
+        int offset = (nextIndex.getAndIncrement() & Integer.MAX_VALUE) % size;
+        Endpoint selected = null;
+        double selectedScore = 0;
+        for ( int i = 0; i < size; i++ ) {
+            Endpoint endpoint = endpoints.get( (offset + i) % size );
+            if ( endpoint.isAvailable() ) {
+                double score = endpoint.getScore( method );
+                if ( selected == null || score < selectedScore ) {
+                    selected = endpoint;
+                    selectedScore = score;
+                }
+            }
+        }
+        if ( selected == null ) {
+            for ( int i = 0; i < size; i++ ) {
+                Endpoint endpoint = endpoints.get( (offset + i) % size );
+                if ( selected == null || endpoint.getOutstandingRequests() < selected.getOutstandingRequests() ) {
+                    selected = endpoint;
+                }
+            }
+        }
+        selected.outstandingRequests.incrementAndGet();
+        return selected;
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * One replica of the remote endpoint along with the statistics used to balance requests across the replicas.
+     */
+    public static final class Endpoint {
+
+        private final URI baseUri;
+        private final AtomicInteger outstandingRequests = new AtomicInteger();
+        private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+        private volatile double averageLatency = 0;
+
+        Endpoint( URI baseUri, int failureThreshold, long ejectionMillis ) {
+            this.baseUri = baseUri;
+            circuitBreaker.setFailureThreshold( failureThreshold );
+            circuitBreaker.setOpenInterval( ejectionMillis );
+        }
+
+        public URI getBaseUri() {
+            return baseUri;
+        }
+
+        public int getOutstandingRequests() {
+            return outstandingRequests.get();
+        }
+
+        /**
+         * @return the moving average of the response time in milliseconds, 0 if no request has completed yet
+         */
+        public double getAverageLatency() {
+            return averageLatency;
+        }
+
+        /**
+         * @return false while the endpoint is ejected because of consecutive failures
+         */
+        public boolean isAvailable() {
+            return circuitBreaker.isRequestAllowed();
+        }
+
+        /**
+         * Moves a request URI built against another endpoint to this one, keeping its query string.
+         */
+        public URI resolve( URI requestUri ) {
+            StringBuilder uri = new StringBuilder( baseUri.getScheme() ).append( "://" ).append( baseUri.getRawAuthority() );
+            if ( baseUri.getRawPath() != null ) {
+                uri.append( baseUri.getRawPath() );
+            }
+            if ( requestUri.getRawQuery() != null ) {
+                uri.append( '?' ).append( requestUri.getRawQuery() );
+            }
+            return URI.create( uri.toString() );
+        }
+
+        /**
+         * Records a successful request and its response time.
+         */
+        public void succeeded( long latencyMillis ) {
+            outstandingRequests.decrementAndGet();
+            synchronized ( this ) {
+                averageLatency = averageLatency == 0 ? latencyMillis : averageLatency + LATENCY_SMOOTHING * (latencyMillis - averageLatency);
+            }
+            circuitBreaker.recordSuccess();
+        }
+
+        /**
+         * Records a failed request, ejecting the endpoint if it reached the failure threshold.
+         */
+        public void failed() {
+            outstandingRequests.decrementAndGet();
+            circuitBreaker.recordFailure();
+            if ( !circuitBreaker.isRequestAllowed() ) {
+                LOGGER.warn( "Ejecting endpoint [{}] from the load balancing rotation after consecutive failures", baseUri );
+            }
+        }
+
+        /**
+         * Ends a request without recording an outcome for it.
+         */
+        public void released() {
+            outstandingRequests.decrementAndGet();
+        }
+
+        double getScore( Method method ) {
+            if ( Method.LATENCY_WEIGHTED.equals( method ) ) {
+                // endpoints without a measured latency score 0 so they get tried
+                return averageLatency * (outstandingRequests.get() + 1);
+            }
+            return outstandingRequests.get();
+        }
+
+        @Override
+        public String toString() {
+            return baseUri + " (outstanding=" + outstandingRequests.get() + ", latency=" + Math.round( averageLatency ) + "ms, available=" + isAvailable() + ")";
+        }
+    }
+
+}
@@ -99,11 +99,13 @@ public class OpenSearchSource extends AbstractCDRSource {
         return filterConfig;
     }
 
+    @Override
     public void cleanUp() {
         LOGGER.debug( "Shutting down CDR Federated Source with id [{}]", getId() );
         if ( metacardCache != null ) {
             metacardCache.destroy();
         }
+        super.cleanUp();
     }
 
     public void setThumbnailLinkRelation( String rel ) {
@@ -0,0 +1,402 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.source.rest;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.cxf.jaxrs.client.WebClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downloads a resource over several connections at once, each one retrieving a different byte range into a memory
+ * mapped temporary file. The stream returned by {@link #start()} reads the file in order, blocking only when it gets
+ * ahead of the range that is currently being downloaded, so the client can consume the beginning of the resource while
+ * the rest is still in flight. The temporary file is deleted when the stream is closed.
+ * <p/>
+ * Every range request carries an If-Range header with the validator the resource was advertised with, and a range is
+ * only accepted if it comes back as a 206 with the requested Content-Range (and the same validator), so the file is
+ * never stitched together from different versions of the resource.
+ */
+public class ParallelRangeDownload {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( ParallelRangeDownload.class );
+
+    private static final String HEADER_RANGE = "Range";
+    private static final String HEADER_IF_RANGE = "If-Range";
+    private static final String HEADER_CONTENT_RANGE = "Content-Range";
+    private static final int STATUS_PARTIAL_CONTENT = 206;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // a single mapping can not be larger than 2GB
+    private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+    private final AbstractCDRSource source;
+    private final ExecutorService executor;
+    private final URI uri;
+    private final Map<String, Serializable> requestProperties;
+    private final long contentLength;
+    private final int connections;
+    private final String eTag;
+    private final String lastModified;
+
+    private final Object lock = new Object();
+    private final AtomicInteger nextSegment = new AtomicInteger();
+    private final List<RangeDownloader> downloads = new ArrayList<RangeDownloader>();
+    private File spoolFile = null;
+    private Segment[] segments = null;
+    private long segmentSize = 0;
+    // the already validated response to the first range, until a download takes it (guarded by the lock)
+    private InputStream firstRange = null;
+    private IOException failure = null;
+    private boolean closed = false;
+
+    /**
+     * @param executor runs the range downloads, owned (and shut down) by the source
+     * @param eTag the ETag the resource was advertised with, or null
+     * @param lastModified the Last-Modified date the resource was advertised with, or null
+     */
+    public ParallelRangeDownload( AbstractCDRSource source, ExecutorService executor, URI uri, Map<String, Serializable> requestProperties, long contentLength, int connections,
+            String eTag, String lastModified ) {
+        this.source = source;
+        this.executor = executor;
+        this.uri = uri;
+        this.requestProperties = requestProperties;
+        this.contentLength = contentLength;
+        this.connections = connections;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Creates and maps the temporary file, requests the first range and, if the endpoint returns it, starts the rest of
+     * the range downloads and returns a stream over the resource.
+     *
+     * @return the stream over the resource, or null if the resource has no validator or the endpoint did not return the
+     *         first range of the advertised version, in which case it should be retrieved over a single connection
+     */
+    public InputStream start() throws IOException {
+        if ( getIfRange() == null ) {
+            LOGGER.debug( "Resource [{}] from source [{}] has no strong ETag or Last-Modified date to send with range requests", uri, source.getId() );
+            return null;
+        }
+        segmentSize = Math.min( MAX_SEGMENT_SIZE, (contentLength + connections - 1) / connections );
+        int segmentCount = (int) ((contentLength + segmentSize - 1) / segmentSize);
+        segments = new Segment[segmentCount];
+
+        spoolFile = File.createTempFile( "cdr-retrieval-", ".spool" );
+        try ( RandomAccessFile file = new RandomAccessFile( spoolFile, "rw" ) ) {
+            file.setLength( contentLength );
+            FileChannel channel = file.getChannel();
+            for ( int i = 0; i < segmentCount; i++ ) {
+                long start = i * segmentSize;
+                long length = Math.min( segmentSize, contentLength - start );
+                // the mapping stays valid after the channel is closed
+                segments[i] = new Segment( start, length, channel.map( MapMode.READ_WRITE, start, length ) );
+            }
+        } catch ( IOException e ) {
+            deleteSpoolFile();
+            throw e;
+        }
+
+        // the first range is requested on the calling thread so a single connection can still be used if it is refused
+        try {
+            firstRange = openRange( segments[0] );
+        } catch ( IOException | RuntimeException e ) {
+            LOGGER.debug( "Range request to [{}] for source [{}] was not honored, retrieving the resource over a single connection: {}", uri, source.getId(), e.getMessage() );
+            deleteSpoolFile();
+            return null;
+        }
+
+        LOGGER.debug( "Downloading [{}] bytes from [{}] for source [{}] in [{}] ranges over [{}] connections", contentLength, uri, source.getId(), segmentCount, connections );
+        SpoolInputStream spoolStream = new SpoolInputStream();
+        synchronized ( lock ) {
+            try {
+                for ( int i = 0; i < Math.min( connections, segmentCount ); i++ ) {
+                    RangeDownloader download = new RangeDownloader();
+                    downloads.add( download );
+                    executor.execute( download );
+                }
+            } catch ( RejectedExecutionException e ) {
+                spoolStream.close();
+                throw new IOException( "Source [" + source.getId() + "] is shutting down, could not download [" + uri + "]", e );
+            }
+        }
+        return spoolStream;
+    }
+
+    /**
+     * Returns the validator sent with the range requests, either the strong ETag or the Last-Modified date of the
+     * resource. Weak ETags can not be used with If-Range.
+     */
+    private String getIfRange() {
+        if ( eTag != null && !eTag.startsWith( "W/" ) ) {
+            return eTag;
+        }
+        return lastModified;
+    }
+
+    /**
+     * Requests the range of the segment and returns its body, failing unless the endpoint returned exactly that range of
+     * the version of the resource the download started with.
+     */
+    private InputStream openRange( Segment segment ) throws IOException {
+        long end = segment.start + segment.length - 1;
+        WebClient client = source.createRetrievalClient( uri, requestProperties );
+        client.header( HEADER_RANGE, "bytes=" + segment.start + "-" + end );
+        client.header( HEADER_IF_RANGE, getIfRange() );
+        Response response = client.get();
+
+        InputStream rangeStream = source.getResponseStream( response );
+        String expectedRange = "bytes " + segment.start + "-" + end + "/" + contentLength;
+        String contentRange = StringUtils.trim( response.getHeaderString( HEADER_CONTENT_RANGE ) );
+        if ( response.getStatus() != STATUS_PARTIAL_CONTENT || !expectedRange.equals( contentRange ) ) {
+            IOUtils.closeQuietly( rangeStream );
+            throw new IOException( "Range request to [" + uri + "] returned http status code " + response.getStatus() + " with Content-Range [" + contentRange
+                    + "] instead of " + STATUS_PARTIAL_CONTENT + " with [" + expectedRange + "]" );
+        }
+        if ( !matches( eTag, response.getHeaderString( HttpHeaders.ETAG ) ) || !matches( lastModified, response.getHeaderString( HttpHeaders.LAST_MODIFIED ) ) ) {
+            IOUtils.closeQuietly( rangeStream );
+            throw new IOException( "Range request to [" + uri + "] returned a different version of the resource than the download started with" );
+        }
+        return rangeStream;
+    }
+
+    private static boolean matches( String expected, String actual ) {
+        return expected == null || actual == null || expected.equals( actual );
+    }
+
+    private InputStream takeFirstRange() {
+        synchronized ( lock ) {
+            InputStream rangeStream = firstRange;
+            firstRange = null;
+            return rangeStream;
+        }
+    }
+
+    private void deleteSpoolFile() {
+        if ( spoolFile != null && !spoolFile.delete() ) {
+            // still mapped on some platforms, try again when the JVM exits
+            spoolFile.deleteOnExit();
+        }
+    }
+
+    private static final class Segment {
+        private final long start;
+        private final long length;
+        private final MappedByteBuffer buffer;
+        // guarded by the download lock
+        private long written = 0;
+
+        private Segment( long start, long length, MappedByteBuffer buffer ) {
+            this.start = start;
+            this.length = length;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Takes segments in order until there are none left, so earlier parts of the file are always downloaded first.
+     */
+    private class SegmentDownloads implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                int index;
+                while ( (index = nextSegment.getAndIncrement()) < segments.length && !isFinished() ) {
+                    // the first segment was already requested by start()
+                    InputStream rangeStream = index == 0 ? takeFirstRange() : openRange( segments[index] );
+                    download( segments[index], rangeStream );
+                }
+            } catch ( IOException | RuntimeException e ) {
+                fail( e );
+            }
+        }
+    }
+
+    /**
+     * Runs the segment downloads on the executor of the source, failing the stream if it is cancelled before it finishes
+     * (when the source is cleaned up).
+     */
+    private class RangeDownloader extends FutureTask<Void> {
+
+        private RangeDownloader() {
+            super( new SegmentDownloads(), null );
+        }
+
+        @Override
+        protected void done() {
+            if ( isCancelled() ) {
+                fail( new InterruptedIOException( "Ranged download of [" + uri + "] was cancelled" ) );
+            }
+        }
+    }
+
+    private void download( Segment segment, InputStream rangeStream ) throws IOException {
+        try {
+            ByteBuffer target = segment.buffer.duplicate();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = segment.length;
+            while ( remaining > 0 ) {
+                if ( isFinished() ) {
+                    return;
+                }
+                if ( Thread.currentThread().isInterrupted() ) {
+                    throw new InterruptedIOException( "Ranged download of [" + uri + "] was interrupted" );
+                }
+                int read = rangeStream == null ? -1 : rangeStream.read( buffer, 0, (int) Math.min( buffer.length, remaining ) );
+                if ( read == -1 ) {
+                    throw new EOFException( "Range request to [" + uri + "] ended " + remaining + " bytes early" );
+                }
+                target.put( buffer, 0, read );
+                remaining -= read;
+                synchronized ( lock ) {
+                    segment.written += read;
+                    lock.notifyAll();
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly( rangeStream );
+        }
+    }
+
+    private boolean isFinished() {
+        synchronized ( lock ) {
+            return closed || failure != null;
+        }
+    }
+
+    private void fail( Exception e ) {
+        synchronized ( lock ) {
+            if ( closed ) {
+                return;
+            }
+            if ( failure == null ) {
+                LOGGER.warn( "Ranged download of [{}] from source [{}] failed: {}", uri, source.getId(), e.getMessage() );
+                failure = e instanceof IOException ? (IOException) e : new IOException( e.getMessage(), e );
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Reads the temporary file in order, waiting on the range downloads when it gets ahead of them.
+     */
+    private class SpoolInputStream extends InputStream {
+
+        private long position = 0;
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read( single, 0, 1 );
+            return read == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read( byte[] bytes, int offset, int length ) throws IOException {
+            if ( position >= contentLength ) {
+                return -1;
+            }
+            if ( length == 0 ) {
+                return 0;
+            }
+            Segment segment = segments[(int) (position / segmentSize)];
+            long segmentOffset = position - segment.start;
+            long written = awaitData( segment, segmentOffset );
+
+            int count = (int) Math.min( length, written - segmentOffset );
+            ByteBuffer view = segment.buffer.duplicate();
+            view.position( (int) segmentOffset );
+            view.get( bytes, offset, count );
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            if ( position >= contentLength ) {
+                return 0;
+            }
+            Segment segment = segments[(int) (position / segmentSize)];
+            synchronized ( lock ) {
+                return (int) Math.min( Integer.MAX_VALUE, segment.written - (position - segment.start) );
+            }
+        }
+
+        private long awaitData( Segment segment, long segmentOffset ) throws IOException {
+            synchronized ( lock ) {
+                while ( segment.written <= segmentOffset ) {
+                    if ( closed ) {
+                        throw new IOException( "Stream closed" );
+                    }
+                    if ( failure != null ) {
+                        throw failure;
+                    }
+                    try {
+                        lock.wait();
+                    } catch ( InterruptedException e ) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException( "Interrupted while waiting on ranged download of [" + uri + "]", e );
+                    }
+                }
+                return segment.written;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized ( lock ) {
+                if ( closed ) {
+                    return;
+                }
+                closed = true;
+                for ( RangeDownloader download : downloads ) {
+                    download.cancel( true );
+                }
+                // not taken if the first download never ran
+                IOUtils.closeQuietly( firstRange );
+                firstRange = null;
+                lock.notifyAll();
+            }
+            deleteSpoolFile();
+        }
+    }
+
+}
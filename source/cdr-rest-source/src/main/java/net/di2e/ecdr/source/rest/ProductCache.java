@@ -0,0 +1,295 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.source.rest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import javax.activation.MimeType;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded on-disk cache of retrieved products (and thumbnails, which are retrieved the same way). Products are keyed
+ * by resource URI and stored with the ETag and Last-Modified validators the remote endpoint returned, so a cached copy
+ * is only used after the endpoint confirms it is unchanged. When the total size of the cached files goes over the
+ * limit the least recently used products are removed first.
+ * <p/>
+ * The index is only kept in memory, so any files left in the cache directory by a previous run are removed when the
+ * cache is created.
+ */
+public class ProductCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( ProductCache.class );
+
+    private final File directory;
+    private final long maxBytes;
+
+    // access ordered, so iteration starts with the least recently used product
+    private final LinkedHashMap<String, CachedProduct> products = new LinkedHashMap<String, CachedProduct>( 16, 0.75f, true );
+    private long totalBytes = 0;
+
+    public ProductCache( File directory, long maxBytes ) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        if ( directory.exists() ) {
+            FileUtils.cleanDirectory( directory );
+        } else {
+            FileUtils.forceMkdir( directory );
+        }
+        LOGGER.debug( "Created product cache in directory [{}] with a maximum size of [{}] bytes", directory, maxBytes );
+    }
+
+    public synchronized CachedProduct get( URI uri ) {
+        return products.get( uri.toString() );
+    }
+
+    public synchronized void remove( URI uri ) {
+        CachedProduct product = products.remove( uri.toString() );
+        if ( product != null ) {
+            totalBytes -= product.getLength();
+            deleteFile( product.getFile() );
+        }
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Wraps the stream of a product being retrieved so that the product is copied to the cache as it is read. It is only
+     * added to the cache if the stream is read all the way to the end; products without a validator are never cached
+     * since there is no way to check if they changed.
+     */
+    public InputStream cache( URI uri, InputStream productStream, String eTag, String lastModified, MimeType mimeType, String fileName ) {
+        if ( productStream == null || (eTag == null && lastModified == null) ) {
+            return productStream;
+        }
+        try {
+            File file = File.createTempFile( "product-", ".cache", directory );
+            return new CachingInputStream( productStream, uri.toString(), file, eTag, lastModified, mimeType, fileName );
+        } catch ( IOException e ) {
+            LOGGER.warn( "Could not create a file in the product cache directory [{}], product [{}] will not be cached: {}", directory, uri, e.getMessage() );
+            return productStream;
+        }
+    }
+
+    private synchronized void put( String key, CachedProduct product ) {
+        if ( product.getLength() > maxBytes ) {
+            LOGGER.debug( "Product [{}] of [{}] bytes is larger than the cache, so it will not be cached", key, product.getLength() );
+            deleteFile( product.getFile() );
+            return;
+        }
+        CachedProduct previous = products.put( key, product );
+        if ( previous != null ) {
+            totalBytes -= previous.getLength();
+            deleteFile( previous.getFile() );
+        }
+        totalBytes += product.getLength();
+
+        Iterator<Entry<String, CachedProduct>> iterator = products.entrySet().iterator();
+        while ( totalBytes > maxBytes && iterator.hasNext() ) {
+            CachedProduct eldest = iterator.next().getValue();
+            iterator.remove();
+            totalBytes -= eldest.getLength();
+            deleteFile( eldest.getFile() );
+            LOGGER.debug( "Evicted product of [{}] bytes from the cache, cache size is now [{}] bytes", eldest.getLength(), totalBytes );
+        }
+    }
+
+    private static void deleteFile( File file ) {
+        // streams that are still reading the file keep working on most platforms, otherwise try again on exit
+        if ( !file.delete() ) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * A product in the cache along with the validators and metadata it was retrieved with.
+     */
+    public static final class CachedProduct {
+        private final File file;
+        private final long length;
+        private final String eTag;
+        private final String lastModified;
+        private final MimeType mimeType;
+        private final String fileName;
+
+        private CachedProduct( File file, long length, String eTag, String lastModified, MimeType mimeType, String fileName ) {
+            this.file = file;
+            this.length = length;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.mimeType = mimeType;
+            this.fileName = fileName;
+        }
+
+        /**
+         * Opens the cached file, skipping ahead the given number of bytes without reading them.
+         */
+        public FileInputStream openStream( long bytesToSkip ) throws IOException {
+            FileInputStream stream = new FileInputStream( file );
+            if ( bytesToSkip > 0 ) {
+                stream.getChannel().position( bytesToSkip );
+            }
+            return stream;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public MimeType getMimeType() {
+            return mimeType;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+    }
+
+    /**
+     * Copies everything that is read to a file and adds the file to the cache when the end of the product is reached and
+     * the stream is closed.
+     */
+    private class CachingInputStream extends FilterInputStream {
+
+        private final String key;
+        private final File file;
+        private final String eTag;
+        private final String lastModified;
+        private final MimeType mimeType;
+        private final String fileName;
+
+        private OutputStream cacheStream;
+        private long length = 0;
+        private boolean complete = false;
+        private boolean closed = false;
+
+        private CachingInputStream( InputStream productStream, String key, File file, String eTag, String lastModified, MimeType mimeType, String fileName ) throws IOException {
+            super( productStream );
+            this.key = key;
+            this.file = file;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.mimeType = mimeType;
+            this.fileName = fileName;
+            this.cacheStream = new FileOutputStream( file );
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if ( value == -1 ) {
+                complete = true;
+            } else if ( cacheStream != null ) {
+                try {
+                    cacheStream.write( value );
+                    length++;
+                } catch ( IOException e ) {
+                    abandon( e );
+                }
+            }
+            return value;
+        }
+
+        @Override
+        public int read( byte[] bytes, int offset, int count ) throws IOException {
+            int read = super.read( bytes, offset, count );
+            if ( read == -1 ) {
+                complete = true;
+            } else if ( cacheStream != null ) {
+                try {
+                    cacheStream.write( bytes, offset, read );
+                    length += read;
+                } catch ( IOException e ) {
+                    abandon( e );
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public long skip( long count ) throws IOException {
+            // skipped bytes never make it to the file, so the product can not be cached
+            abandon( null );
+            return super.skip( count );
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if ( closed ) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                if ( cacheStream != null ) {
+                    IOUtils.closeQuietly( cacheStream );
+                    cacheStream = null;
+                    if ( complete ) {
+                        put( key, new CachedProduct( file, length, eTag, lastModified, mimeType, fileName ) );
+                    } else {
+                        LOGGER.debug( "Product [{}] was not read completely, so it will not be cached", key );
+                        deleteFile( file );
+                    }
+                }
+            }
+        }
+
+        private void abandon( IOException e ) {
+            if ( cacheStream != null ) {
+                if ( e != null ) {
+                    LOGGER.warn( "Could not write product [{}] to the cache: {}", key, e.getMessage() );
+                }
+                IOUtils.closeQuietly( cacheStream );
+                cacheStream = null;
+                deleteFile( file );
+            }
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.source.rest;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.operation.QueryRequest;
+import ddf.catalog.operation.SourceResponse;
+import ddf.catalog.source.UnsupportedQueryException;
+
+/**
+ * Lets concurrent identical queries share a single remote call. The first caller for a key executes the query, and
+ * callers that arrive with the same key while it is running wait for its response instead of making their own call.
+ * Every caller, including the first, gets its own copy of the parsed response and its metacards. Coalescing is off
+ * by default, see {@link AbstractCDRSource#setCoalesceQueries(boolean)}.
+ */
+public class QueryCoalescer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( QueryCoalescer.class );
+
+    private final ConcurrentMap<String, FutureTask<SourceResponse>> inFlightQueries = new ConcurrentHashMap<String, FutureTask<SourceResponse>>();
+
+    private final AtomicLong remoteCalls = new AtomicLong();
+    private final AtomicLong coalescedCalls = new AtomicLong();
+
+    /**
+     * Executes the query, or waits on an identical query that is already running.
+     * 
+     * @param key
+     *            identifies the outbound query, including the credentials it is sent with
+     * @param queryRequest
+     *            the request the returned response is for
+     * @param query
+     *            makes the remote call, only called if there is no identical query in flight
+     */
+    public SourceResponse execute( String key, QueryRequest queryRequest, Callable<SourceResponse> query ) throws UnsupportedQueryException {
+        FutureTask<SourceResponse> task = new FutureTask<SourceResponse>( query );
+        FutureTask<SourceResponse> inFlight = inFlightQueries.putIfAbsent( key, task );
+        if ( inFlight == null ) {
+            remoteCalls.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                inFlightQueries.remove( key, task );
+            }
+            inFlight = task;
+        } else {
+            long saved = coalescedCalls.incrementAndGet();
+            LOGGER.debug( "Joining in flight query [{}], [{}] remote calls saved so far", key, saved );
+        }
+
+        try {
+            return QueryResultCache.copyResponse( inFlight.get(), queryRequest );
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new UnsupportedQueryException( "Interrupted while waiting on query [" + key + "]", e );
+        } catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof UnsupportedQueryException ) {
+                throw (UnsupportedQueryException) cause;
+            } else if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            }
+            throw new UnsupportedQueryException( cause.getMessage(), cause );
+        }
+    }
+
+    /**
+     * @return the number of queries that were sent to the remote source
+     */
+    public long getRemoteCalls() {
+        return remoteCalls.get();
+    }
+
+    /**
+     * @return the number of queries that shared the response of an identical query instead of calling the remote source
+     */
+    public long getCoalescedCalls() {
+        return coalescedCalls.get();
+    }
+
+}
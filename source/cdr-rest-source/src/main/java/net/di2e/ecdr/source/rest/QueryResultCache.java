@@ -0,0 +1,282 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.source.rest;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.di2e.ecdr.commons.CDRMetacard;
+import net.di2e.ecdr.commons.constants.SecurityConstants;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.data.Attribute;
+import ddf.catalog.data.AttributeDescriptor;
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.data.impl.ResultImpl;
+import ddf.catalog.operation.QueryRequest;
+import ddf.catalog.operation.SourceResponse;
+import ddf.catalog.operation.impl.SourceResponseImpl;
+
+/**
+ * Caches parsed query responses from a source. Entries are fresh for the configured time to live (or the max-age the
+ * remote endpoint sent in its Cache-Control header, if that is shorter), after which they can still be served for the
+ * stale period while they are refreshed in the background. Entries keep the ETag and Last-Modified validators of the
+ * response so that a refresh can be a conditional request. The cache is bounded by the (approximate) number of bytes
+ * of the cached responses, evicting the least recently used entries first.
+ */
+public class QueryResultCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( QueryResultCache.class );
+
+    private static final String NO_STORE = "no-store";
+    private static final String NO_CACHE = "no-cache";
+    private static final String MAX_AGE = "max-age=";
+    // rough per entry (and per result) overhead on top of the size of the response body
+    private static final long ENTRY_OVERHEAD_BYTES = 512;
+    // attributes the transformers set that are not part of the basic metacard type
+    private static final List<String> EXTENDED_ATTRIBUTES = Arrays.asList( CDRMetacard.RESOURCE_TITLE, CDRMetacard.RESOURCE_MIME_TYPE,
+            CDRMetacard.THUMBNAIL_LINK, CDRMetacard.THUMBNAIL_LENGTH, CDRMetacard.THUMBNAIL_MIMETYPE, CDRMetacard.THUMBNAIL_LINK_TITLE,
+            CDRMetacard.METADATA_LINK, SecurityConstants.SECURITY, SecurityConstants.SECURITY_NAMESPACE );
+
+    private final long timeToLive;
+    private final long staleTime;
+    private final long maxBytes;
+
+    // access ordered, so iteration starts with the least recently used entry
+    private final LinkedHashMap<String, CachedQueryResponse> entries = new LinkedHashMap<String, CachedQueryResponse>( 16, 0.75f, true );
+    private long totalBytes = 0;
+
+    /**
+     * @param timeToLive
+     *            time in milliseconds a response is used without checking with the source
+     * @param staleTime
+     *            time in milliseconds after it expires that a response is still returned while it is refreshed
+     * @param maxBytes
+     *            maximum total size of the cached responses
+     */
+    public QueryResultCache( long timeToLive, long staleTime, long maxBytes ) {
+        this.timeToLive = timeToLive;
+        this.staleTime = staleTime;
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized CachedQueryResponse get( String key ) {
+        CachedQueryResponse entry = entries.get( key );
+        // entries past the stale period are only worth keeping if they can be revalidated
+        if ( entry != null && !entry.hasValidator() && !entry.isUsable( System.currentTimeMillis() ) ) {
+            remove( key );
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Adds the response to the cache unless the Cache-Control header of the remote response forbids it.
+     * 
+     * @param responseBytes
+     *            size of the response body the results were parsed from
+     */
+    public synchronized void put( String key, SourceResponse response, long responseBytes, String eTag, String lastModified, String cacheControl ) {
+        if ( StringUtils.containsIgnoreCase( cacheControl, NO_STORE ) ) {
+            LOGGER.debug( "Response for [{}] is marked as no-store so it will not be cached", key );
+            return;
+        }
+        long size = responseBytes + ENTRY_OVERHEAD_BYTES * (1 + response.getResults().size());
+        if ( size > maxBytes ) {
+            LOGGER.debug( "Response of [{}] bytes is larger than the cache, so it will not be cached", size );
+            return;
+        }
+        remove( key );
+        CachedQueryResponse entry = new CachedQueryResponse( response, size, eTag, lastModified );
+        entry.renew( getExpiration( cacheControl ), isMustRevalidate( cacheControl ) );
+        entries.put( key, entry );
+        totalBytes += size;
+
+        Iterator<CachedQueryResponse> iterator = entries.values().iterator();
+        while ( totalBytes > maxBytes && iterator.hasNext() ) {
+            CachedQueryResponse eldest = iterator.next();
+            iterator.remove();
+            totalBytes -= eldest.size;
+        }
+    }
+
+    /**
+     * Marks the entry as fresh again after the source confirmed (with a 304 response) that it has not changed.
+     */
+    public void renew( CachedQueryResponse entry, String cacheControl ) {
+        entry.renew( getExpiration( cacheControl ), isMustRevalidate( cacheControl ) );
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    private void remove( String key ) {
+        CachedQueryResponse entry = entries.remove( key );
+        if ( entry != null ) {
+            totalBytes -= entry.size;
+        }
+    }
+
+    private long getExpiration( String cacheControl ) {
+        long ttl = timeToLive;
+        if ( cacheControl != null ) {
+            for ( String directive : cacheControl.split( "," ) ) {
+                directive = directive.trim().toLowerCase();
+                if ( directive.startsWith( MAX_AGE ) ) {
+                    long maxAge = NumberUtils.toLong( directive.substring( MAX_AGE.length() ), -1 );
+                    if ( maxAge >= 0 ) {
+                        ttl = Math.min( ttl, maxAge * 1000 );
+                    }
+                }
+            }
+        }
+        return System.currentTimeMillis() + ttl;
+    }
+
+    private static boolean isMustRevalidate( String cacheControl ) {
+        return StringUtils.containsIgnoreCase( cacheControl, NO_CACHE );
+    }
+
+    /**
+     * Returns a copy of the response for the given request. The copy has its own result list, results, metacards and
+     * properties so callers can modify them without affecting the cache or each other. The attribute values are shared,
+     * attributes are not changed once they are set on a metacard, only replaced.
+     */
+    public static SourceResponse copyResponse( SourceResponse response, QueryRequest queryRequest ) {
+        List<Result> results = new ArrayList<Result>( response.getResults().size() );
+        for ( Result result : response.getResults() ) {
+            ResultImpl copy = new ResultImpl( copyMetacard( result.getMetacard() ) );
+            copy.setRelevanceScore( result.getRelevanceScore() );
+            copy.setDistanceInMeters( result.getDistanceInMeters() );
+            results.add( copy );
+        }
+        Map<String, Serializable> properties = response.getProperties() == null ? new HashMap<String, Serializable>() : new HashMap<String, Serializable>(
+                response.getProperties() );
+        return new SourceResponseImpl( queryRequest, properties, results, response.getHits() );
+    }
+
+    /**
+     * Copies the attributes into a new metacard. MetacardImpl(Metacard) cannot be used for this as it writes through to
+     * the metacard it is created from. A CDRMetacard is copied from the metacard it wraps so the copy does not retrieve
+     * the metadata or thumbnail from their links.
+     */
+    static Metacard copyMetacard( Metacard metacard ) {
+        if ( metacard == null ) {
+            return null;
+        }
+        if ( metacard instanceof CDRMetacard ) {
+            return new CDRMetacard( copyMetacard( ((CDRMetacard) metacard).getOriginalMetacard() ) );
+        }
+        MetacardImpl copy = new MetacardImpl( metacard.getMetacardType() );
+        Set<String> names = new LinkedHashSet<String>( EXTENDED_ATTRIBUTES );
+        for ( AttributeDescriptor descriptor : metacard.getMetacardType().getAttributeDescriptors() ) {
+            names.add( descriptor.getName() );
+        }
+        for ( String name : names ) {
+            Attribute attribute = metacard.getAttribute( name );
+            if ( attribute != null ) {
+                copy.setAttribute( attribute );
+            }
+        }
+        copy.setSourceId( metacard.getSourceId() );
+        return copy;
+    }
+
+    /**
+     * A cached response along with its validators and freshness.
+     */
+    public final class CachedQueryResponse {
+        private final SourceResponse response;
+        private final long size;
+        private final String eTag;
+        private final String lastModified;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile long expiration = 0;
+        private volatile boolean mustRevalidate = false;
+
+        private CachedQueryResponse( SourceResponse response, long size, String eTag, String lastModified ) {
+            this.response = response;
+            this.size = size;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+
+        private void renew( long newExpiration, boolean revalidate ) {
+            expiration = newExpiration;
+            mustRevalidate = revalidate;
+        }
+
+        public boolean isFresh( long now ) {
+            return !mustRevalidate && now < expiration;
+        }
+
+        /**
+         * @return true if the entry is fresh or expired less than the stale time ago
+         */
+        public boolean isUsable( long now ) {
+            return !mustRevalidate && now < expiration + staleTime;
+        }
+
+        public boolean hasValidator() {
+            return eTag != null || lastModified != null;
+        }
+
+        /**
+         * @return true if the caller should refresh the entry, false if another refresh is already running
+         */
+        public boolean startRefresh() {
+            return refreshing.compareAndSet( false, true );
+        }
+
+        public void finishRefresh() {
+            refreshing.set( false );
+        }
+
+        public SourceResponse copyResponse( QueryRequest queryRequest ) {
+            return QueryResultCache.copyResponse( response, queryRequest );
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+    }
+
+}
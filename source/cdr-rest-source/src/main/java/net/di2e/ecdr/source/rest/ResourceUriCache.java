@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.source.rest;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Caches the HTTP(S) product URIs that catalog resource URIs resolve to, so that a retrieval using a non-HTTP catalog
+ * URI does not need a search against the remote source to find the product link. Entries expire after the configured
+ * time to live, and the least recently used entries are evicted once the maximum number of entries is reached.
+ * <p>
+ * Catalog URIs that identify a metacard by id (<code>catalog:id:&lt;id&gt;</code> or
+ * <code>urn:catalog:id:&lt;id&gt;</code>) are keyed by that id, which allows the cache to be filled from query results
+ * before a retrieval ever asks for them.
+ */
+public class ResourceUriCache {
+
+    private static final String CATALOG_ID_PREFIX = "catalog:id:";
+    private static final String CATALOG_ID_URN_PREFIX = "urn:" + CATALOG_ID_PREFIX;
+
+    private final long timeToLive;
+
+    private final Map<String, ResolvedUri> entries;
+
+    /**
+     * @param timeToLive
+     *            time in milliseconds a resolved URI is used before it is looked up again
+     * @param maxEntries
+     *            maximum number of resolved URIs that are kept
+     */
+    public ResourceUriCache( long timeToLive, final int maxEntries ) {
+        this.timeToLive = timeToLive;
+        entries = new LinkedHashMap<String, ResolvedUri>( 16, 0.75f, true ) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, ResolvedUri> eldest ) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return the HTTP(S) URI the catalog URI resolved to, or null if it is not cached or has expired
+     */
+    public synchronized URI get( URI catalogUri ) {
+        String key = getKey( catalogUri );
+        ResolvedUri entry = entries.get( key );
+        if ( entry != null && entry.expiration < System.currentTimeMillis() ) {
+            entries.remove( key );
+            entry = null;
+        }
+        return entry == null ? null : entry.uri;
+    }
+
+    public synchronized void put( URI catalogUri, URI resolvedUri ) {
+        entries.put( getKey( catalogUri ), new ResolvedUri( resolvedUri, System.currentTimeMillis() + timeToLive ) );
+    }
+
+    /**
+     * Caches the product URI for the metacard with the given id, so it is found for the catalog id URI of that metacard.
+     */
+    public synchronized void putForId( String metacardId, URI resolvedUri ) {
+        entries.put( metacardId, new ResolvedUri( resolvedUri, System.currentTimeMillis() + timeToLive ) );
+    }
+
+    public synchronized void remove( URI catalogUri ) {
+        entries.remove( getKey( catalogUri ) );
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    static String getKey( URI catalogUri ) {
+        String uri = catalogUri.toString();
+        if ( StringUtils.startsWithIgnoreCase( uri, CATALOG_ID_URN_PREFIX ) ) {
+            return uri.substring( CATALOG_ID_URN_PREFIX.length() );
+        } else if ( StringUtils.startsWithIgnoreCase( uri, CATALOG_ID_PREFIX ) ) {
+            return uri.substring( CATALOG_ID_PREFIX.length() );
+        }
+        return uri;
+    }
+
+    private static class ResolvedUri {
+        private final URI uri;
+        private final long expiration;
+
+        ResolvedUri( URI uri, long expiration ) {
+            this.uri = uri;
+            this.expiration = expiration;
+        }
+    }
+
+}
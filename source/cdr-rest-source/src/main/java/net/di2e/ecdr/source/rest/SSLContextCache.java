@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.source.rest;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.net.util.KeyManagerUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds a single {@link SSLContext} built from the keystore and truststore Java system properties (which are set by the
+ * GlobalSSLClientConfigurator from the Platform Global Configuration). All source clients share its socket factory, so
+ * the keystore is only read from disk once and TLS sessions negotiated by one client can be resumed by the others. The
+ * context is rebuilt when the properties change or when the keystore or truststore file is modified.
+ */
+public final class SSLContextCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( SSLContextCache.class );
+
+    private static final String SSL_KEYSTORE_JAVA_PROPERTY = "javax.net.ssl.keyStore";
+    private static final String SSL_KEYSTORE_PASSWORD_JAVA_PROPERTY = "javax.net.ssl.keyStorePassword";
+    private static final String SSL_TRUSTSTORE_JAVA_PROPERTY = "javax.net.ssl.trustStore";
+    private static final String SSL_TRUSTSTORE_PASSWORD_JAVA_PROPERTY = "javax.net.ssl.trustStorePassword";
+
+    private static final int SESSION_CACHE_SIZE = 1000;
+    private static final int SESSION_TIMEOUT_SECONDS = 60 * 60;
+
+    private static Object[] currentKey = null;
+    private static SSLSocketFactory socketFactory = null;
+
+    private SSLContextCache() {
+    }
+
+    /**
+     * Returns the shared socket factory, rebuilding the SSL context first if the configuration changed since it was
+     * last built. Returns null if the context could not be created, in which case CXF falls back to its own defaults.
+     */
+    public static synchronized SSLSocketFactory getSocketFactory() {
+        Object[] key = getConfigurationKey();
+        if ( socketFactory == null || !Arrays.equals( key, currentKey ) ) {
+            LOGGER.debug( "Building the shared client SSL context, the SSL configuration or keystore files changed" );
+            try {
+                socketFactory = createContext().getSocketFactory();
+                currentKey = key;
+            } catch ( GeneralSecurityException e ) {
+                LOGGER.warn( "Could not create the client SSL context, using the CXF defaults: {}", e.getMessage() );
+                socketFactory = null;
+                currentKey = null;
+            }
+        }
+        return socketFactory;
+    }
+
+    private static SSLContext createContext() throws GeneralSecurityException {
+        String keystore = System.getProperty( SSL_KEYSTORE_JAVA_PROPERTY );
+        String keystorePassword = System.getProperty( SSL_KEYSTORE_PASSWORD_JAVA_PROPERTY );
+
+        KeyManager[] keyManagers = null;
+        if ( StringUtils.isNotBlank( keystore ) && keystorePassword != null ) {
+            try {
+                keyManagers = new KeyManager[] { KeyManagerUtils.createClientKeyManager( new File( keystore ), keystorePassword ) };
+            } catch ( IOException | GeneralSecurityException ex ) {
+                LOGGER.debug( "Could not access keystore {}, using default java keystore.", keystore );
+            }
+        }
+
+        // a null keystore makes the factory load the truststore from the system properties
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance( TrustManagerFactory.getDefaultAlgorithm() );
+        trustManagerFactory.init( (KeyStore) null );
+
+        SSLContext context = SSLContext.getInstance( "TLS" );
+        context.init( keyManagers, trustManagerFactory.getTrustManagers(), null );
+        context.getClientSessionContext().setSessionCacheSize( SESSION_CACHE_SIZE );
+        context.getClientSessionContext().setSessionTimeout( SESSION_TIMEOUT_SECONDS );
+        return context;
+    }
+
+    /**
+     * The values that the SSL context is built from, including the size and modification time of the store files so that
+     * replacing a keystore in place is picked up.
+     */
+    private static Object[] getConfigurationKey() {
+        String keystore = System.getProperty( SSL_KEYSTORE_JAVA_PROPERTY );
+        String truststore = System.getProperty( SSL_TRUSTSTORE_JAVA_PROPERTY );
+        File keystoreFile = StringUtils.isBlank( keystore ) ? null : new File( keystore );
+        File truststoreFile = StringUtils.isBlank( truststore ) ? null : new File( truststore );
+        return new Object[] { keystore, System.getProperty( SSL_KEYSTORE_PASSWORD_JAVA_PROPERTY ), keystoreFile == null ? 0L : keystoreFile.lastModified(),
+            keystoreFile == null ? 0L : keystoreFile.length(), truststore, System.getProperty( SSL_TRUSTSTORE_PASSWORD_JAVA_PROPERTY ),
+            truststoreFile == null ? 0L : truststoreFile.lastModified(), truststoreFile == null ? 0L : truststoreFile.length() };
+    }
+
+}
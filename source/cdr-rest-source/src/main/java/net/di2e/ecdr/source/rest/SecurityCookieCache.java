@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.source.rest;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.Cookie;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.cxf.ws.security.tokenstore.SecurityToken;
+import org.codice.ddf.security.common.jaxrs.RestSecurity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import ddf.security.Subject;
+import ddf.security.assertion.SecurityAssertion;
+
+/**
+ * Caches the SAML cookie created for a {@link Subject}, so the assertion is serialized and encoded once instead of for
+ * every query and retrieval to every source. Cookies are keyed by the id and expiration of the subject's security token
+ * and are shared by all sources; a cookie is not used once its assertion is about to expire, so a renewed assertion
+ * gets a new cookie.
+ */
+public final class SecurityCookieCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( SecurityCookieCache.class );
+
+    private static final int MAX_ENTRIES = 1000;
+    // stop using a cookie a little before the assertion expires so it does not expire in flight
+    private static final long EXPIRATION_MARGIN_MILLIS = TimeUnit.SECONDS.toMillis( 30 );
+
+    private static final String SAML2_NAMESPACE = "urn:oasis:names:tc:SAML:2.0:assertion";
+
+    private static final Map<String, CachedCookie> COOKIES = new LinkedHashMap<String, CachedCookie>( 16, 0.75f, true ) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<String, CachedCookie> eldest ) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private SecurityCookieCache() {
+    }
+
+    /**
+     * Returns the SAML cookie for the subject, creating it if it is not cached yet.
+     * 
+     * @return the cookie, or null if the subject has no SAML assertion
+     */
+    public static Cookie getCookie( Subject subject ) {
+        SecurityToken token = getSecurityToken( subject );
+        if ( token == null ) {
+            return null;
+        }
+        Date expires = token.getExpires();
+        if ( token.getId() == null || expires == null ) {
+            // nothing to safely key the cookie by
+            return RestSecurity.createSamlCookie( subject );
+        }
+
+        String key = token.getId() + '|' + expires.getTime();
+        long now = System.currentTimeMillis();
+        synchronized ( COOKIES ) {
+            CachedCookie cached = COOKIES.get( key );
+            if ( cached != null ) {
+                if ( cached.useUntil > now ) {
+                    return cached.cookie;
+                }
+                COOKIES.remove( key );
+            }
+        }
+
+        Cookie cookie = RestSecurity.createSamlCookie( subject );
+        long useUntil = expires.getTime() - EXPIRATION_MARGIN_MILLIS;
+        if ( cookie != null && useUntil > now ) {
+            LOGGER.debug( "Caching the SAML cookie for security token [{}] until [{}]", token.getId(), expires );
+            synchronized ( COOKIES ) {
+                COOKIES.put( key, new CachedCookie( cookie, useUntil ) );
+            }
+        }
+        return cookie;
+    }
+
+    /**
+     * Returns a digest of what the SAML assertion sent in the cookie of the subject says about the user: the name of
+     * the subject and the attributes of the assertion (such as the roles and clearance) with their values. The digest
+     * does not depend on the order of the attributes, or on the id and validity period of the assertion, so it is the
+     * same for renewed assertions of the same user.
+     * 
+     * @return the digest, or an empty string if the subject has no SAML assertion (in which case no cookie is sent)
+     */
+    public static String getAssertionFingerprint( Subject subject ) {
+        SecurityToken token = getSecurityToken( subject );
+        if ( token == null || token.getToken() == null ) {
+            return "";
+        }
+        Element assertion = token.getToken();
+        List<String> claims = new ArrayList<String>();
+        NodeList nameIds = assertion.getElementsByTagNameNS( SAML2_NAMESPACE, "NameID" );
+        for ( int i = 0; i < nameIds.getLength(); i++ ) {
+            claims.add( "NameID=" + StringUtils.trim( nameIds.item( i ).getTextContent() ) );
+        }
+        NodeList attributes = assertion.getElementsByTagNameNS( SAML2_NAMESPACE, "Attribute" );
+        for ( int i = 0; i < attributes.getLength(); i++ ) {
+            Element attribute = (Element) attributes.item( i );
+            NodeList values = attribute.getElementsByTagNameNS( SAML2_NAMESPACE, "AttributeValue" );
+            for ( int j = 0; j < values.getLength(); j++ ) {
+                claims.add( attribute.getAttribute( "Name" ) + '=' + StringUtils.trim( values.item( j ).getTextContent() ) );
+            }
+        }
+        Collections.sort( claims );
+        String text = StringUtils.join( claims, '\n' );
+        try {
+            byte[] hash = MessageDigest.getInstance( "SHA-256" ).digest( text.getBytes( StandardCharsets.UTF_8 ) );
+            return new BigInteger( 1, hash ).toString( 16 );
+        } catch ( NoSuchAlgorithmException e ) {
+            return String.valueOf( text.hashCode() );
+        }
+    }
+
+    private static SecurityToken getSecurityToken( Subject subject ) {
+        SecurityToken token = null;
+        if ( subject.getPrincipals() != null ) {
+            for ( Object principal : subject.getPrincipals().asList() ) {
+                if ( principal instanceof SecurityAssertion ) {
+                    token = ((SecurityAssertion) principal).getSecurityToken();
+                }
+            }
+        }
+        return token;
+    }
+
+    private static final class CachedCookie {
+        private final Cookie cookie;
+        private final long useUntil;
+
+        CachedCookie( Cookie cookie, long useUntil ) {
+            this.cookie = cookie;
+            this.useUntil = useUntil;
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.source.rest;
+
+import java.lang.ref.WeakReference;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically checks the availability of a source in the background. Each check is scheduled with a random jitter so
+ * that checks against many sources do not all fire at the same time.
+ * <p/>
+ * All monitors share a single scheduler thread, which only hands the checks off to a bounded pool of worker threads,
+ * so a source that is slow to answer never delays the checks of the other sources. The scheduler and workers are
+ * created when the first monitor starts and shut down when the last running monitor stops (sources stop their monitor
+ * in cleanUp()).
+ */
+public class SourceHealthMonitor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( SourceHealthMonitor.class );
+
+    // +/- 20% of the check interval
+    private static final double JITTER_FACTOR = 0.2;
+    private static final long MIN_INTERVAL = 1000;
+
+    private static final int WORKER_THREADS = 10;
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 60;
+
+    private static final Random RANDOM = new Random();
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    // guarded by the class, null while no monitor is running
+    private static ScheduledExecutorService scheduler = null;
+    private static ThreadPoolExecutor workers = null;
+    private static int runningMonitors = 0;
+
+    // weak so that a source that is removed (and never stopped) does not stay in memory through the scheduler
+    private final WeakReference<AbstractCDRSource> sourceReference;
+    private long interval = 0;
+    private boolean running = false;
+    private ScheduledFuture<?> nextCheck = null;
+    // changed on every (re)start, so a check that is already running when the monitor is restarted does not schedule a
+    // second chain of checks
+    private int generation = 0;
+
+    public SourceHealthMonitor( AbstractCDRSource source ) {
+        sourceReference = new WeakReference<AbstractCDRSource>( source );
+    }
+
+    /**
+     * Starts (or restarts with the new interval) the background availability checks. The first check runs straight
+     * away on a scheduler thread, the following ones once every interval.
+     *
+     * @param intervalMillis
+     *            the average time between availability checks
+     */
+    public synchronized void start( long intervalMillis ) {
+        interval = Math.max( intervalMillis, MIN_INTERVAL );
+        if ( !running ) {
+            monitorStarted();
+        }
+        running = true;
+        generation++;
+        if ( nextCheck != null ) {
+            nextCheck.cancel( false );
+        }
+        scheduleCheck( 0, generation );
+    }
+
+    public synchronized void stop() {
+        if ( running ) {
+            monitorStopped();
+        }
+        running = false;
+        generation++;
+        if ( nextCheck != null ) {
+            nextCheck.cancel( false );
+            nextCheck = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    private synchronized void scheduleNextCheck( int checkGeneration ) {
+        long jitter = (long) (interval * JITTER_FACTOR * (2 * RANDOM.nextDouble() - 1));
+        scheduleCheck( interval + jitter, checkGeneration );
+    }
+
+    private synchronized void scheduleCheck( long delayMillis, final int checkGeneration ) {
+        if ( running && checkGeneration == generation ) {
+            nextCheck = schedule( new Runnable() {
+                @Override
+                public void run() {
+                    checkSource( checkGeneration );
+                }
+            }, delayMillis );
+        }
+    }
+
+    private void checkSource( int checkGeneration ) {
+        AbstractCDRSource source = sourceReference.get();
+        if ( source == null ) {
+            stop();
+            return;
+        }
+        try {
+            source.checkAvailability();
+        } catch ( RuntimeException e ) {
+            LOGGER.warn( "Unexpected error while checking the availability of source [" + source.getId() + "]", e );
+        } finally {
+            scheduleNextCheck( checkGeneration );
+        }
+    }
+
+    private static synchronized void monitorStarted() {
+        if ( runningMonitors++ == 0 ) {
+            scheduler = Executors.newSingleThreadScheduledExecutor( createThreadFactory( "cdr-source-health-scheduler-" ) );
+            workers = new ThreadPoolExecutor( WORKER_THREADS, WORKER_THREADS, WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    createThreadFactory( "cdr-source-health-monitor-" ) );
+            workers.allowCoreThreadTimeOut( true );
+        }
+    }
+
+    private static synchronized void monitorStopped() {
+        if ( --runningMonitors == 0 ) {
+            LOGGER.debug( "No source health monitors are running, shutting down the health monitor threads" );
+            scheduler.shutdownNow();
+            // checks that are in progress finish, but do not schedule another check since their monitor stopped
+            workers.shutdown();
+            scheduler = null;
+            workers = null;
+        }
+    }
+
+    /**
+     * Schedules the check on the scheduler thread, which runs it on a worker thread once it is due.
+     */
+    private static synchronized ScheduledFuture<?> schedule( final Runnable check, long delayMillis ) {
+        final ThreadPoolExecutor checkWorkers = workers;
+        return scheduler.schedule( new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    checkWorkers.execute( check );
+                } catch ( RejectedExecutionException e ) {
+                    LOGGER.debug( "Health monitor threads were shut down, the availability check will not run" );
+                }
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS );
+    }
+
+    private static ThreadFactory createThreadFactory( final String threadName ) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread( Runnable runnable ) {
+                Thread thread = new Thread( runnable, threadName + THREAD_COUNT.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        };
+    }
+
+}
@@ -17,19 +17,29 @@ package net.di2e.ecdr.source.rest;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.net.URI;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
 
 import javax.ws.rs.core.Response;
 
@@ -40,6 +50,8 @@ import org.apache.cxf.jaxrs.client.WebClient;
 import org.geotools.filter.text.cql2.CQL;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.opengis.filter.sort.SortBy;
 import org.opengis.filter.sort.SortOrder;
 
@@ -59,15 +71,16 @@ public abstract class CDRAbstractSourceTest {
     private static final String PING_URL = "http://localhost:8181/services/cdr/ping";
     private static final String RESOURCE_URL = "http://localhost:8181/services/catalog/sources/SELF/553b8ce5718c40ac9e093823817bbb98?transform=resource";
 
-    private static final String RESPONSE_FILE = "/exampleResponse.xml";
+    protected static final String RESPONSE_FILE = "/exampleResponse.xml";
 
     protected static final GeotoolsFilterAdapterImpl FILTER_ADAPTER = new GeotoolsFilterAdapterImpl();
 
-    private WebClient client;
+    protected WebClient client;
 
     @Before
-    public void setUp() {
+    public void setUp() throws Exception {
         client = mock( WebClient.class );
+        when( client.getBaseURI() ).thenReturn( new URI( SERVICE_URL ) );
     }
 
     /**
@@ -82,6 +95,8 @@ public abstract class CDRAbstractSourceTest {
         when( response.getStatus() ).thenReturn( Response.Status.OK.getStatusCode() );
         when( pingClient.get() ).thenReturn( response );
         assertTrue( source.isAvailable() );
+        // the first check runs in the background
+        verify( pingClient, timeout( 5000 ) ).get();
         // test cache
         assertTrue( source.isAvailable() );
         // verify get was only called once
@@ -102,6 +117,8 @@ public abstract class CDRAbstractSourceTest {
         when( pingClient.head() ).thenReturn( response );
         source.setPingMethod( AbstractCDRSource.PingMethod.HEAD );
         assertTrue( source.isAvailable( monitor ) );
+        // the first check runs in the background
+        verify( pingClient, timeout( 5000 ) ).head();
         // test cache
         assertTrue( source.isAvailable() );
         // verify head was only called once
@@ -124,11 +141,39 @@ public abstract class CDRAbstractSourceTest {
         when( response.getStatus() ).thenReturn( Response.Status.NOT_FOUND.getStatusCode() );
         when( pingClient.head() ).thenReturn( response );
         source.setPingMethod( AbstractCDRSource.PingMethod.HEAD );
-        assertFalse( source.isAvailable( monitor ) );
+        // availability is unknown until the first check, which runs in the background, has finished
+        assertTrue( source.isAvailable( monitor ) );
+        verify( monitor ).setAvailable();
+        // the failed check marks the source unavailable and tells the monitor
+        verify( monitor, timeout( 5000 ) ).setUnavailable();
         verify( pingClient ).head();
-        // verify monitor was called unavailable and not available
-        verify( monitor ).setUnavailable();
-        verify( monitor, never() ).setAvailable();
+        assertFalse( source.isAvailable() );
+        verify( monitor, times( 2 ) ).setUnavailable();
+        verify( monitor ).setAvailable();
+    }
+
+    /**
+     * Tests that the ping endpoint is never called on the thread asking for the availability.
+     */
+    @Test
+    public void testPingNotOnCallingThread() {
+        WebClient pingClient = mock( WebClient.class );
+        AbstractCDRSource source = configureSource();
+        source.setCdrAvailabilityCheckClient( pingClient );
+        final AtomicReference<Thread> pingThread = new AtomicReference<Thread>();
+        final Response response = mock( Response.class );
+        when( response.getStatus() ).thenReturn( Response.Status.OK.getStatusCode() );
+        when( pingClient.get() ).thenAnswer( new Answer<Response>() {
+            @Override
+            public Response answer( InvocationOnMock invocation ) {
+                pingThread.set( Thread.currentThread() );
+                return response;
+            }
+        } );
+        assertTrue( source.isAvailable() );
+        verify( pingClient, timeout( 5000 ) ).get();
+        assertNotSame( Thread.currentThread(), pingThread.get() );
+        assertTrue( source.isAvailable() );
     }
 
     /**
@@ -182,6 +227,82 @@ public abstract class CDRAbstractSourceTest {
         performQuery( "created before 2014-05-05T00:00:00" );
     }
 
+    @Test
+    public void testQueryUriDoesNotModifySharedClient() throws Exception {
+        AbstractCDRSource source = configureSource();
+        source.setParameterMap( "os:count=count" );
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put( SearchConstants.COUNT_PARAMETER, "5" );
+        URI first = source.buildQueryUri( parameters );
+        parameters.put( SearchConstants.COUNT_PARAMETER, "7" );
+        URI second = source.buildQueryUri( parameters );
+        assertTrue( first.getQuery().contains( "count=5" ) );
+        assertTrue( second.getQuery().contains( "count=7" ) );
+        verify( client, never() ).resetQuery();
+    }
+
+    @Test
+    public void testGzipResponseStream() throws Exception {
+        AbstractCDRSource source = configureSource();
+        byte[] original = IOUtils.toByteArray( getClass().getResourceAsStream( RESPONSE_FILE ) );
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try ( GZIPOutputStream gzip = new GZIPOutputStream( compressed ) ) {
+            gzip.write( original );
+        }
+        Response webResponse = mock( Response.class );
+        when( webResponse.getHeaderString( "Content-Encoding" ) ).thenReturn( "gzip" );
+        when( webResponse.getEntity() ).thenReturn( new ByteArrayInputStream( compressed.toByteArray() ) );
+
+        try ( InputStream stream = source.getResponseStream( webResponse ) ) {
+            assertEquals( original.length, IOUtils.toByteArray( stream ).length );
+        }
+        assertEquals( compressed.size(), source.getCompressedBytesReceived() );
+        assertEquals( original.length, source.getUncompressedBytesReceived() );
+    }
+
+    @Test
+    public void testQueryResultCache() throws Exception {
+        AbstractCDRSource source = configureSource();
+        source.setQueryCacheTTLSeconds( 60 );
+        QueryRequestImpl request = new QueryRequestImpl( new QueryImpl( CQL.toFilter( "metadata like 'example'" ), 0, 20, null, true, 10000 ) );
+        request.setProperties( new HashMap<String, Serializable>() );
+        Response webResponse = mock( Response.class );
+        when( webResponse.getStatus() ).thenReturn( Response.Status.OK.getStatusCode() );
+        when( webResponse.getEntity() ).thenReturn( getClass().getResourceAsStream( RESPONSE_FILE ) );
+        when( client.get() ).thenReturn( webResponse );
+
+        SourceResponse first = source.query( request );
+        SourceResponse second = source.query( request );
+        verify( client, times( 1 ) ).get();
+        assertEquals( first.getHits(), second.getHits() );
+        assertEquals( 10, second.getResults().size() );
+        // each caller gets its own copy of the results
+        assertTrue( first.getResults() != second.getResults() );
+    }
+
+    @Test
+    public void testSubPageRequests() throws Exception {
+        AbstractCDRSource source = configureSource();
+        source.setMaxResultCount( 5 );
+        source.setMaxSubPageRequests( 4 );
+        QueryRequestImpl request = new QueryRequestImpl( new QueryImpl( CQL.toFilter( "metadata like 'example'" ), 1, 10, null, true, 10000 ) );
+        request.setProperties( new HashMap<String, Serializable>() );
+        when( client.get() ).thenAnswer( new Answer<Response>() {
+            @Override
+            public Response answer( InvocationOnMock invocation ) {
+                Response webResponse = mock( Response.class );
+                when( webResponse.getStatus() ).thenReturn( Response.Status.OK.getStatusCode() );
+                when( webResponse.getEntity() ).thenReturn( getClass().getResourceAsStream( RESPONSE_FILE ) );
+                return webResponse;
+            }
+        } );
+
+        // 10 results in two concurrent requests of 5
+        SourceResponse response = source.query( request );
+        verify( client, times( 2 ) ).get();
+        assertEquals( 10, response.getResults().size() );
+    }
+
     @Test
     public void testdoRetrieval() throws Exception {
         AbstractCDRSource source = configureSource();
@@ -228,10 +349,11 @@ public abstract class CDRAbstractSourceTest {
         SourceResponse response = source.query( request );
         assertEquals( 19, response.getHits() );
         assertFalse( response.getResults().isEmpty() );
-        assertEquals( 19, response.getResults().size() );
+        // the source has a max result count of 10 so the rest of the response is not read
+        assertEquals( 10, response.getResults().size() );
     }
 
-    private AbstractCDRSource configureSource() {
+    protected AbstractCDRSource configureSource() {
 
         AbstractCDRSource source = createSource();
         source.setId( "example_site" );
@@ -245,6 +367,9 @@ public abstract class CDRAbstractSourceTest {
         source.setConnectionTimeoutSeconds( 1 );
         source.setCdrRestClient( client );
 
+        // every per-request query client is the mocked client
+        source = spy( source );
+        doReturn( client ).when( source ).createQueryClient( any( URI.class ) );
         return source;
     }
 
@@ -110,7 +110,7 @@ public class CDRRestSourceSecureTest {
         restSource.getOptions( null );
         restSource.getSupportedSchemes();
         // hit server
-        if ( restSource.isAvailable() == false ) {
+        if ( isAvailable( restSource ) == false ) {
             fail( "Could not get capabilities from the test server. This means no connection was established." );
         }
 
@@ -126,7 +126,7 @@ public class CDRRestSourceSecureTest {
         CDRRestSource restSource = createSecuredSource( "/client-bad.jks", "", "/serverTruststore.jks", "changeit" );
         // hit server
         try {
-            if ( restSource.isAvailable() ) {
+            if ( isAvailable( restSource ) ) {
                 fail( "Server should have errored out with bad certificate but request passed instead." );
             }
         } catch ( ClientException e ) {
@@ -144,7 +144,7 @@ public class CDRRestSourceSecureTest {
         CDRRestSource restSource = createSecuredSource( "/serverKeystore.jks", "changeit", "/client-bad.jks", "" );
         // hit server
         try {
-            if ( restSource.isAvailable() ) {
+            if ( isAvailable( restSource ) ) {
                 fail( "Client should have errored out with no valid certification path found, but request passed instead." );
             }
         } catch ( ClientException e ) {
@@ -153,6 +153,14 @@ public class CDRRestSourceSecureTest {
 
     }
 
+    /**
+     * Checks the availability on this thread rather than waiting for the background check of the source
+     */
+    private boolean isAvailable( CDRRestSource restSource ) {
+        restSource.checkAvailability();
+        return restSource.isAvailable();
+    }
+
     /**
      * Creates the Rest Source and sets the ping method and no ping caching so it the tests will return the proper value
      */
@@ -15,6 +15,29 @@
  */
 package net.di2e.ecdr.source.rest;
 
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.net.URI;
+import java.util.HashMap;
+
+import javax.ws.rs.core.Response;
+
+import org.geotools.filter.text.cql2.CQL;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.operation.SourceResponse;
+import ddf.catalog.operation.impl.QueryImpl;
+import ddf.catalog.operation.impl.QueryRequestImpl;
+
 public class CDRRestSourceTest extends CDRAbstractSourceTest{
 
     @Override
@@ -22,4 +45,39 @@ public class CDRRestSourceTest extends CDRAbstractSourceTest{
         return new CDRRestSource(FILTER_ADAPTER);
     }
 
+    @Test
+    public void testBriefQuery() throws Exception {
+        AbstractCDRSource source = configureSource();
+        source.setBriefQueries( true );
+        source.setBriefResponseFormat( "cdr-brief" );
+        source.setBriefParameters( "view=brief" );
+        QueryRequestImpl request = new QueryRequestImpl( new QueryImpl( CQL.toFilter( "metadata like 'example'" ), 1, 10, null, true, 10000 ) );
+        request.setProperties( new HashMap<String, Serializable>() );
+        when( client.get() ).thenAnswer( new Answer<Response>() {
+            @Override
+            public Response answer( InvocationOnMock invocation ) {
+                Response webResponse = mock( Response.class );
+                when( webResponse.getStatus() ).thenReturn( Response.Status.OK.getStatusCode() );
+                when( webResponse.getEntity() ).thenReturn( getClass().getResourceAsStream( RESPONSE_FILE ) );
+                return webResponse;
+            }
+        } );
+
+        SourceResponse response = source.query( request );
+        ArgumentCaptor<URI> uris = ArgumentCaptor.forClass( URI.class );
+        verify( source ).createQueryClient( uris.capture() );
+        assertTrue( uris.getValue().getQuery().contains( "format=cdr-brief" ) );
+        assertTrue( uris.getValue().getQuery().contains( "view=brief" ) );
+
+        // the full metadata is only looked up (by id, in the default format) once it is read, and only once
+        Metacard metacard = response.getResults().get( 0 ).getMetacard();
+        verify( client, times( 1 ) ).get();
+        metacard.getMetadata();
+        metacard.getMetadata();
+        verify( client, times( 2 ) ).get();
+        verify( source, times( 2 ) ).createQueryClient( uris.capture() );
+        assertTrue( uris.getValue().getQuery().contains( "uid=553b8ce5718c40ac9e093823817bbb98" ) );
+        assertTrue( uris.getValue().getQuery().contains( "format=atom-cdr" ) );
+    }
+
 }
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.source.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import net.di2e.ecdr.source.rest.CircuitBreaker.State;
+
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpensAfterThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker();
+        breaker.setFailureThreshold( 2 );
+        breaker.recordFailure();
+        assertEquals( State.CLOSED, breaker.getState() );
+        breaker.recordFailure();
+        assertEquals( State.OPEN, breaker.getState() );
+        assertFalse( breaker.isRequestAllowed() );
+    }
+
+    @Test
+    public void testSuccessResetsFailures() {
+        CircuitBreaker breaker = new CircuitBreaker();
+        breaker.setFailureThreshold( 2 );
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        assertEquals( State.CLOSED, breaker.getState() );
+    }
+
+    @Test
+    public void testHalfOpenAfterInterval() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker();
+        breaker.setOpenInterval( 10 );
+        breaker.trip();
+        Thread.sleep( 20 );
+        assertEquals( State.HALF_OPEN, breaker.getState() );
+        assertTrue( breaker.isRequestAllowed() );
+
+        // a single failure while half open re-opens the circuit
+        breaker.recordFailure();
+        assertEquals( State.OPEN, breaker.getState() );
+    }
+
+}
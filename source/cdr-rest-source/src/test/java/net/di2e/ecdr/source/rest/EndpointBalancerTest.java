@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.source.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.Arrays;
+
+import net.di2e.ecdr.source.rest.EndpointBalancer.Endpoint;
+import net.di2e.ecdr.source.rest.EndpointBalancer.Method;
+
+import org.junit.Test;
+
+public class EndpointBalancerTest {
+
+    private static final URI NODE_1 = URI.create( "https://node1:8993/services/cdr/search/rest" );
+    private static final URI NODE_2 = URI.create( "https://node2:8993/services/cdr/search/rest" );
+
+    @Test
+    public void testLeastOutstanding() {
+        EndpointBalancer balancer = new EndpointBalancer( Arrays.asList( NODE_1, NODE_2 ), Method.LEAST_OUTSTANDING, 3, 60000 );
+        Endpoint first = balancer.select();
+        Endpoint second = balancer.select();
+        assertNotSame( first, second );
+        assertEquals( 1, first.getOutstandingRequests() );
+
+        second.succeeded( 10 );
+        assertSame( second, balancer.select() );
+        assertEquals( 1, second.getOutstandingRequests() );
+    }
+
+    @Test
+    public void testLatencyWeighted() {
+        EndpointBalancer balancer = new EndpointBalancer( Arrays.asList( NODE_1, NODE_2 ), Method.LATENCY_WEIGHTED, 3, 60000 );
+        Endpoint slow = balancer.getEndpoints().get( 0 );
+        Endpoint fast = balancer.getEndpoints().get( 1 );
+        // endpoints without a latency are tried first, after that the faster endpoint wins
+        for ( int i = 0; i < 4; i++ ) {
+            Endpoint endpoint = balancer.select();
+            endpoint.succeeded( endpoint == slow ? 500 : 50 );
+        }
+        assertEquals( 500, slow.getAverageLatency(), 0.1 );
+        for ( int i = 0; i < 5; i++ ) {
+            assertSame( fast, balancer.select() );
+        }
+    }
+
+    @Test
+    public void testEjection() {
+        EndpointBalancer balancer = new EndpointBalancer( Arrays.asList( NODE_1, NODE_2 ), Method.LEAST_OUTSTANDING, 1, 60000 );
+        Endpoint failing = balancer.select();
+        failing.failed();
+        assertFalse( failing.isAvailable() );
+        Endpoint healthy = null;
+        for ( int i = 0; i < 5; i++ ) {
+            healthy = balancer.select();
+            assertNotSame( failing, healthy );
+        }
+
+        // with every endpoint ejected requests still go out, to the least loaded endpoint
+        healthy.failed();
+        assertFalse( healthy.isAvailable() );
+        assertSame( failing, balancer.select() );
+    }
+
+    @Test
+    public void testEjectedEndpointReturns() throws Exception {
+        EndpointBalancer balancer = new EndpointBalancer( Arrays.asList( NODE_1, NODE_2 ), Method.LEAST_OUTSTANDING, 1, 20 );
+        Endpoint endpoint = balancer.select();
+        endpoint.failed();
+        assertFalse( endpoint.isAvailable() );
+        Thread.sleep( 40 );
+        assertTrue( endpoint.isAvailable() );
+    }
+
+    @Test
+    public void testResolve() {
+        EndpointBalancer balancer = new EndpointBalancer( Arrays.asList( NODE_1, NODE_2 ), Method.LEAST_OUTSTANDING, 3, 60000 );
+        URI requestUri = URI.create( NODE_1 + "?q=a%20b&count=10" );
+        assertEquals( URI.create( NODE_2 + "?q=a%20b&count=10" ), balancer.getEndpoints().get( 1 ).resolve( requestUri ) );
+    }
+
+}
@@ -0,0 +1,245 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.source.rest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.cxf.jaxrs.client.WebClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class ParallelRangeDownloadTest {
+
+    private static final String ETAG = "\"v1\"";
+    private static final int LENGTH = 1000;
+    private static final int CONNECTIONS = 4;
+
+    private final byte[] content = new byte[LENGTH];
+    // the If-Range header of every range request that was sent
+    private final List<String> ifRanges = new CopyOnWriteArrayList<String>();
+    private ExecutorService executor;
+    private URI uri;
+
+    @Before
+    public void setUp() throws Exception {
+        new Random( 42 ).nextBytes( content );
+        executor = Executors.newCachedThreadPool();
+        uri = new URI( "http://example.com/product/1" );
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Tests that every range is requested with the ETag as If-Range and the ranges are put back together in order.
+     */
+    @Test
+    public void testPartialContent() throws Exception {
+        InputStream stream = start( new Endpoint() );
+        assertNotNull( stream );
+        try {
+            assertArrayEquals( content, IOUtils.toByteArray( stream ) );
+        } finally {
+            stream.close();
+        }
+        assertEquals( Arrays.asList( ETAG, ETAG, ETAG, ETAG ), ifRanges );
+    }
+
+    /**
+     * Tests that a range that ends before all of its bytes were returned fails the stream.
+     */
+    @Test( expected = EOFException.class )
+    public void testShortRange() throws Exception {
+        InputStream stream = start( new Endpoint() {
+            @Override
+            Response respond( int start, int end ) {
+                // the third range is missing its last 10 bytes
+                return start == 500 ? partialContent( start, end, Arrays.copyOfRange( content, start, end - 9 ), ETAG ) : super.respond( start, end );
+            }
+        } );
+        try {
+            IOUtils.toByteArray( stream );
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Tests that an endpoint returning the whole resource (a 200) for the first range makes the download fall back to a
+     * single connection without requesting the other ranges.
+     */
+    @Test
+    public void testNonPartialContentFallsBack() throws Exception {
+        InputStream stream = start( new Endpoint() {
+            @Override
+            Response respond( int start, int end ) {
+                return response( 200, null, content, ETAG );
+            }
+        } );
+        assertNull( stream );
+        assertEquals( 1, ifRanges.size() );
+    }
+
+    /**
+     * Tests that a range of a different version of the resource fails the stream instead of being stitched in.
+     */
+    @Test( expected = IOException.class )
+    public void testChangedVersion() throws Exception {
+        InputStream stream = start( new Endpoint() {
+            @Override
+            Response respond( int start, int end ) {
+                return start == 750 ? partialContent( start, end, Arrays.copyOfRange( content, start, end + 1 ), "\"v2\"" ) : super.respond( start, end );
+            }
+        } );
+        try {
+            IOUtils.toByteArray( stream );
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Tests that the beginning of the resource can be read while the later ranges are still being downloaded.
+     */
+    @Test
+    public void testReadPrefixWhileLaterRangesPending() throws Exception {
+        final CountDownLatch release = new CountDownLatch( 1 );
+        InputStream stream = start( new Endpoint() {
+            @Override
+            Response respond( int start, int end ) {
+                if ( start > 0 ) {
+                    try {
+                        release.await( 5, TimeUnit.SECONDS );
+                    } catch ( InterruptedException e ) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.respond( start, end );
+            }
+        } );
+        try {
+            byte[] prefix = new byte[LENGTH / CONNECTIONS];
+            IOUtils.readFully( stream, prefix );
+            assertArrayEquals( Arrays.copyOfRange( content, 0, prefix.length ), prefix );
+            assertEquals( 0, stream.available() );
+
+            release.countDown();
+            byte[] rest = IOUtils.toByteArray( stream );
+            assertArrayEquals( Arrays.copyOfRange( content, prefix.length, LENGTH ), rest );
+        } finally {
+            release.countDown();
+            stream.close();
+        }
+    }
+
+    private InputStream start( final Endpoint endpoint ) throws Exception {
+        AbstractCDRSource source = mock( AbstractCDRSource.class );
+        when( source.createRetrievalClient( any( URI.class ), Matchers.<Map<String, Serializable>> any() ) ).thenAnswer( new Answer<WebClient>() {
+            @Override
+            public WebClient answer( InvocationOnMock invocation ) {
+                return endpoint.createClient();
+            }
+        } );
+        when( source.getResponseStream( any( Response.class ) ) ).thenAnswer( new Answer<InputStream>() {
+            @Override
+            public InputStream answer( InvocationOnMock invocation ) {
+                return (InputStream) ((Response) invocation.getArguments()[0]).getEntity();
+            }
+        } );
+        return new ParallelRangeDownload( source, executor, uri, new HashMap<String, Serializable>(), LENGTH, CONNECTIONS, ETAG, null ).start();
+    }
+
+    /**
+     * A remote endpoint that returns the requested range of the content, unless a test overrides it.
+     */
+    private class Endpoint {
+
+        Response respond( int start, int end ) {
+            return partialContent( start, end, Arrays.copyOfRange( content, start, end + 1 ), ETAG );
+        }
+
+        WebClient createClient() {
+            final Map<String, String> headers = new HashMap<String, String>();
+            final WebClient client = mock( WebClient.class );
+            when( client.header( anyString(), anyVararg() ) ).thenAnswer( new Answer<WebClient>() {
+                @Override
+                public WebClient answer( InvocationOnMock invocation ) {
+                    Object[] arguments = invocation.getArguments();
+                    headers.put( (String) arguments[0], String.valueOf( arguments[1] ) );
+                    return client;
+                }
+            } );
+            when( client.get() ).thenAnswer( new Answer<Response>() {
+                @Override
+                public Response answer( InvocationOnMock invocation ) {
+                    ifRanges.add( headers.get( "If-Range" ) );
+                    String[] range = headers.get( "Range" ).substring( "bytes=".length() ).split( "-" );
+                    return respond( Integer.parseInt( range[0] ), Integer.parseInt( range[1] ) );
+                }
+            } );
+            return client;
+        }
+    }
+
+    private static Response partialContent( int start, int end, byte[] body, String eTag ) {
+        return response( 206, "bytes " + start + "-" + end + "/" + LENGTH, body, eTag );
+    }
+
+    private static Response response( int status, String contentRange, byte[] body, String eTag ) {
+        Response response = mock( Response.class );
+        when( response.getStatus() ).thenReturn( status );
+        when( response.getHeaderString( "Content-Range" ) ).thenReturn( contentRange );
+        when( response.getHeaderString( HttpHeaders.ETAG ) ).thenReturn( eTag );
+        when( response.getEntity() ).thenReturn( new ByteArrayInputStream( body ) );
+        return response;
+    }
+
+}
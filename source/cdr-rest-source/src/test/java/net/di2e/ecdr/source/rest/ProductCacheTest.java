@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.source.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.net.URI;
+
+import net.di2e.ecdr.source.rest.ProductCache.CachedProduct;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProductCacheTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = new File( System.getProperty( "java.io.tmpdir" ), "product-cache-test-" + System.nanoTime() );
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly( directory );
+    }
+
+    @Test
+    public void testCacheAndRangedRead() throws Exception {
+        ProductCache cache = new ProductCache( directory, 1024 );
+        URI uri = new URI( "http://example.com/product/1" );
+        InputStream stream = cache.cache( uri, new ByteArrayInputStream( "0123456789".getBytes() ), "\"abc\"", null, null, "product.txt" );
+        assertEquals( "0123456789", IOUtils.toString( stream ) );
+        stream.close();
+
+        CachedProduct product = cache.get( uri );
+        assertNotNull( product );
+        assertEquals( 10, product.getLength() );
+        assertEquals( "\"abc\"", product.getETag() );
+        assertEquals( "product.txt", product.getFileName() );
+
+        try ( InputStream cached = product.openStream( 4 ) ) {
+            assertEquals( "456789", IOUtils.toString( cached ) );
+        }
+    }
+
+    @Test
+    public void testIncompleteReadNotCached() throws Exception {
+        ProductCache cache = new ProductCache( directory, 1024 );
+        URI uri = new URI( "http://example.com/product/1" );
+        InputStream stream = cache.cache( uri, new ByteArrayInputStream( "0123456789".getBytes() ), "\"abc\"", null, null, "product.txt" );
+        stream.read( new byte[5] );
+        stream.close();
+        assertNull( cache.get( uri ) );
+        assertEquals( 0, cache.getTotalBytes() );
+    }
+
+    @Test
+    public void testNoValidatorNotCached() throws Exception {
+        ProductCache cache = new ProductCache( directory, 1024 );
+        InputStream original = new ByteArrayInputStream( "0123456789".getBytes() );
+        assertSame( original, cache.cache( new URI( "http://example.com/product/1" ), original, null, null, null, "product.txt" ) );
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() throws Exception {
+        ProductCache cache = new ProductCache( directory, 25 );
+        URI first = new URI( "http://example.com/product/1" );
+        URI second = new URI( "http://example.com/product/2" );
+        URI third = new URI( "http://example.com/product/3" );
+        cacheProduct( cache, first );
+        cacheProduct( cache, second );
+        // touch the first product so the second one is the least recently used
+        cache.get( first );
+        cacheProduct( cache, third );
+
+        assertNotNull( cache.get( first ) );
+        assertNull( cache.get( second ) );
+        assertNotNull( cache.get( third ) );
+        assertEquals( 20, cache.getTotalBytes() );
+        assertEquals( 2, directory.list().length );
+    }
+
+    private void cacheProduct( ProductCache cache, URI uri ) throws Exception {
+        try ( InputStream stream = cache.cache( uri, new ByteArrayInputStream( "0123456789".getBytes() ), null, "Tue, 15 Nov 1994 12:45:26 GMT", null, "product.txt" ) ) {
+            IOUtils.toByteArray( stream );
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.source.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.data.impl.ResultImpl;
+import ddf.catalog.operation.SourceResponse;
+import ddf.catalog.operation.impl.SourceResponseImpl;
+import ddf.catalog.source.UnsupportedQueryException;
+
+public class QueryCoalescerTest {
+
+    @Test
+    public void testConcurrentQueriesShareOneCall() throws Exception {
+        final QueryCoalescer coalescer = new QueryCoalescer();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final Callable<SourceResponse> query = new Callable<SourceResponse>() {
+            @Override
+            public SourceResponse call() throws Exception {
+                calls.incrementAndGet();
+                release.await( 5, TimeUnit.SECONDS );
+                return createResponse();
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool( 3 );
+        try {
+            Future<SourceResponse> first = executor.submit( new Callable<SourceResponse>() {
+                @Override
+                public SourceResponse call() throws Exception {
+                    return coalescer.execute( "key", null, query );
+                }
+            } );
+            // wait until the first query is in flight before sending the identical ones
+            while ( calls.get() == 0 ) {
+                Thread.sleep( 5 );
+            }
+            Future<SourceResponse> second = executor.submit( new Callable<SourceResponse>() {
+                @Override
+                public SourceResponse call() throws Exception {
+                    return coalescer.execute( "key", null, query );
+                }
+            } );
+            Future<SourceResponse> third = executor.submit( new Callable<SourceResponse>() {
+                @Override
+                public SourceResponse call() throws Exception {
+                    return coalescer.execute( "key", null, query );
+                }
+            } );
+            while ( coalescer.getCoalescedCalls() < 2 ) {
+                Thread.sleep( 5 );
+            }
+            release.countDown();
+
+            assertTrue( first.get().getResults() != second.get().getResults() );
+            assertTrue( second.get().getResults() != third.get().getResults() );
+            // callers can change their metacards without affecting each other
+            assertNotSame( first.get().getResults().get( 0 ).getMetacard(), second.get().getResults().get( 0 ).getMetacard() );
+            assertNotSame( second.get().getResults().get( 0 ).getMetacard(), third.get().getResults().get( 0 ).getMetacard() );
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals( 1, calls.get() );
+        assertEquals( 1, coalescer.getRemoteCalls() );
+        assertEquals( 2, coalescer.getCoalescedCalls() );
+
+        // once the query completes the next identical query goes to the source again
+        coalescer.execute( "key", null, query );
+        assertEquals( 2, calls.get() );
+    }
+
+    @Test( expected = UnsupportedQueryException.class )
+    public void testFailurePropagates() throws Exception {
+        new QueryCoalescer().execute( "key", null, new Callable<SourceResponse>() {
+            @Override
+            public SourceResponse call() throws Exception {
+                throw new UnsupportedQueryException( "failed" );
+            }
+        } );
+    }
+
+    private SourceResponse createResponse() {
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setId( "id" );
+        return new SourceResponseImpl( null, new HashMap<String, Serializable>(), Collections.<Result> singletonList( new ResultImpl( metacard ) ), 1 );
+    }
+
+}
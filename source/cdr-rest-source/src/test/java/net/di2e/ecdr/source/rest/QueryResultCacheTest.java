@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.source.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+
+import net.di2e.ecdr.commons.CDRMetacard;
+import net.di2e.ecdr.source.rest.QueryResultCache.CachedQueryResponse;
+
+import org.junit.Test;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.AttributeImpl;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.data.impl.ResultImpl;
+import ddf.catalog.operation.SourceResponse;
+import ddf.catalog.operation.impl.SourceResponseImpl;
+
+public class QueryResultCacheTest {
+
+    @Test
+    public void testFreshAndStale() throws Exception {
+        QueryResultCache cache = new QueryResultCache( 50, 60000, 1024 * 1024 );
+        cache.put( "key", createResponse(), 100, null, null, null );
+        CachedQueryResponse entry = cache.get( "key" );
+        assertNotNull( entry );
+        assertTrue( entry.isFresh( System.currentTimeMillis() ) );
+        Thread.sleep( 60 );
+        assertFalse( entry.isFresh( System.currentTimeMillis() ) );
+        assertTrue( entry.isUsable( System.currentTimeMillis() ) );
+
+        // only one refresh at a time
+        assertTrue( entry.startRefresh() );
+        assertFalse( entry.startRefresh() );
+        entry.finishRefresh();
+        assertTrue( entry.startRefresh() );
+    }
+
+    @Test
+    public void testCacheControl() throws Exception {
+        QueryResultCache cache = new QueryResultCache( 60000, 0, 1024 * 1024 );
+        cache.put( "no-store", createResponse(), 100, "\"1\"", null, "private, no-store" );
+        assertNull( cache.get( "no-store" ) );
+
+        cache.put( "no-cache", createResponse(), 100, "\"1\"", null, "no-cache" );
+        CachedQueryResponse entry = cache.get( "no-cache" );
+        assertFalse( entry.isUsable( System.currentTimeMillis() ) );
+        assertEquals( "\"1\"", entry.getETag() );
+
+        cache.put( "max-age", createResponse(), 100, null, null, "max-age=0" );
+        assertNull( cache.get( "max-age" ) );
+    }
+
+    @Test
+    public void testEvictsByBytes() throws Exception {
+        QueryResultCache cache = new QueryResultCache( 60000, 0, 6000 );
+        cache.put( "first", createResponse(), 2000, null, null, null );
+        cache.put( "second", createResponse(), 2000, null, null, null );
+        cache.get( "first" );
+        cache.put( "third", createResponse(), 2000, null, null, null );
+        assertNotNull( cache.get( "first" ) );
+        assertNull( cache.get( "second" ) );
+        assertNotNull( cache.get( "third" ) );
+    }
+
+    @Test
+    public void testCopiesMetacards() throws Exception {
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setId( "id" );
+        metacard.setTitle( "title" );
+        metacard.setSourceId( "source" );
+        metacard.setAttribute( CDRMetacard.METADATA_LINK, URI.create( "http://localhost/metadata" ) );
+        SourceResponse response = new SourceResponseImpl( null, new HashMap<String, Serializable>(),
+                Collections.<Result> singletonList( new ResultImpl( new CDRMetacard( metacard ) ) ), 1 );
+
+        QueryResultCache cache = new QueryResultCache( 60000, 0, 1024 * 1024 );
+        cache.put( "key", response, 100, null, null, null );
+        Metacard first = cache.get( "key" ).copyResponse( null ).getResults().get( 0 ).getMetacard();
+        Metacard second = cache.get( "key" ).copyResponse( null ).getResults().get( 0 ).getMetacard();
+        assertNotSame( first, second );
+        assertTrue( first instanceof CDRMetacard );
+        assertEquals( "title", second.getTitle() );
+        assertEquals( "source", second.getSourceId() );
+        assertEquals( URI.create( "http://localhost/metadata" ), second.getAttribute( CDRMetacard.METADATA_LINK ).getValue() );
+
+        first.setAttribute( new AttributeImpl( Metacard.TITLE, "changed" ) );
+        assertEquals( "title", second.getTitle() );
+        assertEquals( "title", metacard.getTitle() );
+    }
+
+    private SourceResponse createResponse() {
+        return new SourceResponseImpl( null, new HashMap<String, Serializable>(), Collections.<Result> emptyList(), 0 );
+    }
+
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.source.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.URI;
+
+import org.junit.Test;
+
+public class ResourceUriCacheTest {
+
+    private static final URI PRODUCT_URI = URI.create( "https://example.com/services/catalog/123?transform=resource" );
+
+    @Test
+    public void testCatalogIdUris() throws Exception {
+        ResourceUriCache cache = new ResourceUriCache( 60000, 10 );
+        cache.putForId( "123", PRODUCT_URI );
+        assertEquals( PRODUCT_URI, cache.get( URI.create( "catalog:id:123" ) ) );
+        assertEquals( PRODUCT_URI, cache.get( URI.create( "urn:catalog:id:123" ) ) );
+        assertNull( cache.get( URI.create( "catalog:id:456" ) ) );
+
+        URI contentUri = URI.create( "content:abc" );
+        cache.put( contentUri, PRODUCT_URI );
+        assertEquals( PRODUCT_URI, cache.get( contentUri ) );
+        cache.remove( contentUri );
+        assertNull( cache.get( contentUri ) );
+    }
+
+    @Test
+    public void testExpiresAndEvicts() throws Exception {
+        ResourceUriCache cache = new ResourceUriCache( 50, 2 );
+        cache.putForId( "1", PRODUCT_URI );
+        cache.putForId( "2", PRODUCT_URI );
+        cache.get( URI.create( "catalog:id:1" ) );
+        cache.putForId( "3", PRODUCT_URI );
+        assertEquals( 2, cache.size() );
+        assertNull( cache.get( URI.create( "catalog:id:2" ) ) );
+
+        Thread.sleep( 60 );
+        assertNull( cache.get( URI.create( "catalog:id:1" ) ) );
+    }
+
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.source.rest;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.Properties;
+
+import javax.net.ssl.SSLSocketFactory;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SSLContextCacheTest {
+
+    private static final String SSL_KEYSTORE_JAVA_PROPERTY = "javax.net.ssl.keyStore";
+    private static final String SSL_KEYSTORE_PASSWORD_JAVA_PROPERTY = "javax.net.ssl.keyStorePassword";
+    private static final String SSL_TRUSTSTORE_JAVA_PROPERTY = "javax.net.ssl.trustStore";
+    private static final String SSL_TRUSTSTORE_PASSWORD_JAVA_PROPERTY = "javax.net.ssl.trustStorePassword";
+
+    private Properties originalProperties;
+    private File directory;
+    private File keystore;
+    private File truststore;
+
+    @Before
+    public void setUp() throws Exception {
+        originalProperties = (Properties) System.getProperties().clone();
+        directory = new File( System.getProperty( "java.io.tmpdir" ), "ssl-context-cache-test-" + System.nanoTime() );
+        keystore = new File( directory, "keystore.jks" );
+        truststore = new File( directory, "truststore.jks" );
+        FileUtils.copyURLToFile( SSLContextCacheTest.class.getResource( "/serverKeystore.jks" ), keystore );
+        FileUtils.copyURLToFile( SSLContextCacheTest.class.getResource( "/serverTruststore.jks" ), truststore );
+
+        System.setProperty( SSL_KEYSTORE_JAVA_PROPERTY, keystore.getPath() );
+        System.setProperty( SSL_KEYSTORE_PASSWORD_JAVA_PROPERTY, "changeit" );
+        System.setProperty( SSL_TRUSTSTORE_JAVA_PROPERTY, truststore.getPath() );
+        System.setProperty( SSL_TRUSTSTORE_PASSWORD_JAVA_PROPERTY, "changeit" );
+    }
+
+    @After
+    public void tearDown() {
+        System.setProperties( originalProperties );
+        FileUtils.deleteQuietly( directory );
+    }
+
+    @Test
+    public void testUnchangedConfigurationReusesContext() {
+        SSLSocketFactory socketFactory = SSLContextCache.getSocketFactory();
+        assertNotNull( socketFactory );
+        assertSame( socketFactory, SSLContextCache.getSocketFactory() );
+    }
+
+    @Test
+    public void testKeystorePropertyChangeRebuildsContext() throws Exception {
+        SSLSocketFactory socketFactory = SSLContextCache.getSocketFactory();
+        File otherKeystore = new File( directory, "other-keystore.jks" );
+        FileUtils.copyFile( keystore, otherKeystore );
+        System.setProperty( SSL_KEYSTORE_JAVA_PROPERTY, otherKeystore.getPath() );
+
+        SSLSocketFactory rebuilt = SSLContextCache.getSocketFactory();
+        assertNotNull( rebuilt );
+        assertNotSame( socketFactory, rebuilt );
+        assertSame( rebuilt, SSLContextCache.getSocketFactory() );
+    }
+
+    @Test
+    public void testKeystoreModifiedInPlaceRebuildsContext() {
+        SSLSocketFactory socketFactory = SSLContextCache.getSocketFactory();
+        assertSame( socketFactory, SSLContextCache.getSocketFactory() );
+        // replacing the file in place only changes its modification time (and maybe its size)
+        keystore.setLastModified( keystore.lastModified() - 60000 );
+
+        SSLSocketFactory rebuilt = SSLContextCache.getSocketFactory();
+        assertNotNull( rebuilt );
+        assertNotSame( socketFactory, rebuilt );
+    }
+
+    @Test
+    public void testTruststoreModifiedInPlaceRebuildsContext() {
+        SSLSocketFactory socketFactory = SSLContextCache.getSocketFactory();
+        truststore.setLastModified( truststore.lastModified() - 60000 );
+
+        SSLSocketFactory rebuilt = SSLContextCache.getSocketFactory();
+        assertNotNull( rebuilt );
+        assertNotSame( socketFactory, rebuilt );
+    }
+
+    @Test
+    public void testTruststorePropertyChangeRebuildsContext() throws Exception {
+        SSLSocketFactory socketFactory = SSLContextCache.getSocketFactory();
+        File otherTruststore = new File( directory, "other-truststore.jks" );
+        FileUtils.copyFile( truststore, otherTruststore );
+        System.setProperty( SSL_TRUSTSTORE_JAVA_PROPERTY, otherTruststore.getPath() );
+
+        SSLSocketFactory rebuilt = SSLContextCache.getSocketFactory();
+        assertNotNull( rebuilt );
+        assertNotSame( socketFactory, rebuilt );
+        assertSame( rebuilt, SSLContextCache.getSocketFactory() );
+    }
+
+}
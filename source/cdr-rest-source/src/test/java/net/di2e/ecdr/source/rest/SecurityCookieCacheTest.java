@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.source.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.StringReader;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.Cookie;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.cxf.ws.security.tokenstore.SecurityToken;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+import ddf.security.Subject;
+import ddf.security.assertion.SecurityAssertion;
+
+public class SecurityCookieCacheTest {
+
+    private static final long MARGIN_MILLIS = TimeUnit.SECONDS.toMillis( 30 );
+
+    @Test
+    public void testCookieReusedForSameAssertion() throws Exception {
+        String id = UUID.randomUUID().toString();
+        Date expires = new Date( System.currentTimeMillis() + TimeUnit.HOURS.toMillis( 1 ) );
+        Cookie cookie = SecurityCookieCache.getCookie( createSubject( id, expires, "USER", "SECRET" ) );
+        assertNotNull( cookie );
+        assertSame( cookie, SecurityCookieCache.getCookie( createSubject( id, expires, "USER", "SECRET" ) ) );
+    }
+
+    @Test
+    public void testRenewedAssertionGetsNewCookie() throws Exception {
+        String id = UUID.randomUUID().toString();
+        long now = System.currentTimeMillis();
+        Cookie cookie = SecurityCookieCache.getCookie( createSubject( id, new Date( now + TimeUnit.HOURS.toMillis( 1 ) ), "USER", "SECRET" ) );
+        Cookie renewed = SecurityCookieCache.getCookie( createSubject( id, new Date( now + TimeUnit.HOURS.toMillis( 2 ) ), "USER", "SECRET" ) );
+        assertNotNull( renewed );
+        assertNotSame( cookie, renewed );
+    }
+
+    /**
+     * Tests that a cookie for an assertion that expires within the margin is created for every request instead of
+     * being cached.
+     */
+    @Test
+    public void testAssertionExpiringWithinMarginNotCached() throws Exception {
+        String id = UUID.randomUUID().toString();
+        Date expires = new Date( System.currentTimeMillis() + MARGIN_MILLIS - TimeUnit.SECONDS.toMillis( 5 ) );
+        Cookie cookie = SecurityCookieCache.getCookie( createSubject( id, expires, "USER", "SECRET" ) );
+        Cookie next = SecurityCookieCache.getCookie( createSubject( id, expires, "USER", "SECRET" ) );
+        assertNotNull( cookie );
+        assertNotNull( next );
+        assertNotSame( cookie, next );
+    }
+
+    /**
+     * Tests that a cached cookie is no longer used once its assertion is within the margin of expiring.
+     */
+    @Test
+    public void testCachedCookieNotUsedWithinMargin() throws Exception {
+        String id = UUID.randomUUID().toString();
+        Date expires = new Date( System.currentTimeMillis() + MARGIN_MILLIS + 500 );
+        Cookie cookie = SecurityCookieCache.getCookie( createSubject( id, expires, "USER", "SECRET" ) );
+        Thread.sleep( 1000 );
+        Cookie next = SecurityCookieCache.getCookie( createSubject( id, expires, "USER", "SECRET" ) );
+        assertNotNull( next );
+        assertNotSame( cookie, next );
+    }
+
+    @Test
+    public void testNoAssertion() {
+        Subject subject = mock( Subject.class );
+        when( subject.getPrincipals() ).thenReturn( new SimplePrincipalCollection( "user", "test" ) );
+        assertNull( SecurityCookieCache.getCookie( subject ) );
+        assertEquals( "", SecurityCookieCache.getAssertionFingerprint( subject ) );
+    }
+
+    /**
+     * Tests that the fingerprint only depends on the user and attributes of the assertion, not on its id or validity.
+     */
+    @Test
+    public void testAssertionFingerprint() throws Exception {
+        long now = System.currentTimeMillis();
+        String fingerprint = SecurityCookieCache.getAssertionFingerprint( createSubject( "id-1", new Date( now + 60000 ), "USER", "SECRET" ) );
+        assertEquals( fingerprint, SecurityCookieCache.getAssertionFingerprint( createSubject( "id-2", new Date( now + 120000 ), "USER", "SECRET" ) ) );
+        assertFalse( fingerprint.equals( SecurityCookieCache.getAssertionFingerprint( createSubject( "id-1", new Date( now + 60000 ), "USER", "TOP SECRET" ) ) ) );
+    }
+
+    private static Subject createSubject( String id, Date expires, String role, String clearance ) throws Exception {
+        SecurityToken token = mock( SecurityToken.class );
+        when( token.getId() ).thenReturn( id );
+        when( token.getExpires() ).thenReturn( expires );
+        when( token.getToken() ).thenReturn( createAssertion( id, role, clearance ) );
+        SecurityAssertion assertion = mock( SecurityAssertion.class );
+        when( assertion.getSecurityToken() ).thenReturn( token );
+
+        Subject subject = mock( Subject.class );
+        when( subject.getPrincipals() ).thenReturn( new SimplePrincipalCollection( assertion, "test" ) );
+        return subject;
+    }
+
+    private static Element createAssertion( String id, String role, String clearance ) throws Exception {
+        String xml = "<saml2:Assertion xmlns:saml2=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"" + id + "\" Version=\"2.0\">"
+                + "<saml2:Subject><saml2:NameID>user</saml2:NameID></saml2:Subject>"
+                + "<saml2:AttributeStatement>"
+                + "<saml2:Attribute Name=\"role\"><saml2:AttributeValue>" + role + "</saml2:AttributeValue></saml2:Attribute>"
+                + "<saml2:Attribute Name=\"clearance\"><saml2:AttributeValue>" + clearance + "</saml2:AttributeValue></saml2:Attribute>"
+                + "</saml2:AttributeStatement></saml2:Assertion>";
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware( true );
+        return factory.newDocumentBuilder().parse( new InputSource( new StringReader( xml ) ) ).getDocumentElement();
+    }
+
+}
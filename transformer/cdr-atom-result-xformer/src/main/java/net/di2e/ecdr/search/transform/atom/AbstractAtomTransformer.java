@@ -15,11 +15,10 @@
  */
 package net.di2e.ecdr.search.transform.atom;
 
-import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.io.ParseException;
-import com.vividsolutions.jts.io.WKTReader;
 import ddf.action.Action;
 import ddf.action.ActionProvider;
+import ddf.catalog.data.Attribute;
 import ddf.catalog.data.BinaryContent;
 import ddf.catalog.data.Metacard;
 import ddf.catalog.data.Result;
@@ -37,14 +36,14 @@ import net.di2e.ecdr.commons.constants.SearchConstants;
 import net.di2e.ecdr.commons.constants.SecurityConstants;
 import net.di2e.ecdr.search.transform.atom.constants.AtomResponseConstants;
 import net.di2e.ecdr.search.transform.atom.geo.GeoHelper;
+import net.di2e.ecdr.search.transform.atom.geo.GeoRssPositionCache;
+import net.di2e.ecdr.search.transform.atom.response.LazyAttribute.LocationAttribute;
 import net.di2e.ecdr.search.transform.atom.security.SecurityConfiguration;
 import net.di2e.ecdr.search.transform.atom.security.SecurityData;
 import net.di2e.ecdr.search.transform.atom.security.SecurityMarkingHandler;
 import net.di2e.ecdr.search.transform.atom.security.impl.ConfigurationSecurityMarkingHandler;
 import net.di2e.ecdr.search.transform.atom.security.impl.MetacardSecurityMarkingHandler;
 import net.di2e.ecdr.search.transform.atom.security.impl.XmlMetadataSecurityMarkingHandler;
-import net.di2e.ecdr.search.transform.geo.formatter.CompositeGeometry;
-import org.apache.abdera.Abdera;
 import org.apache.abdera.ext.geo.Position;
 import org.apache.abdera.ext.opensearch.OpenSearchConstants;
 import org.apache.abdera.model.Element;
@@ -68,6 +67,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -140,16 +140,7 @@ public abstract class AbstractAtomTransformer implements MetacardTransformer, Qu
         if ( properties == null ) {
             properties = new HashMap<String, Serializable>();
         }
-        ClassLoader currentClassLoader = Thread.currentThread().getContextClassLoader();
-        Feed feed = null;
-        // The Adbera.getInstance.newFeed() spins up a new thread so must do
-        // this
-        try {
-            Thread.currentThread().setContextClassLoader( AbstractAtomTransformer.class.getClassLoader() );
-            feed = Abdera.getInstance().newFeed();
-        } finally {
-            Thread.currentThread().setContextClassLoader( currentClassLoader );
-        }
+        Feed feed = SharedAbdera.getFactory().newFeed();
 
         feed.declareNS( AtomResponseConstants.CDRB_NAMESPACE, AtomResponseConstants.CDRB_NAMESPACE_PREFIX );
         feed.declareNS( AtomResponseConstants.CDRS_EXT_NAMESPACE, AtomResponseConstants.CDRS_EXT_NAMESPACE_PREFIX );
@@ -201,14 +192,7 @@ public abstract class AbstractAtomTransformer implements MetacardTransformer, Qu
 
         try {
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            // Feed writeTo spins up a new thread so must do this
-            currentClassLoader = Thread.currentThread().getContextClassLoader();
-            try {
-                Thread.currentThread().setContextClassLoader( AbstractAtomTransformer.class.getClassLoader() );
-                feed.writeTo( outputStream );
-            } finally {
-                Thread.currentThread().setContextClassLoader( currentClassLoader );
-            }
+            SharedAbdera.writeDocument( feed, outputStream );
 
             binaryContent = new BinaryContentImpl( new ByteArrayInputStream( outputStream.toByteArray() ), new MimeType( AtomResponseConstants.ATOM_MIME_TYPE ) );
         } catch ( IOException e ) {
@@ -400,7 +384,7 @@ public abstract class AbstractAtomTransformer implements MetacardTransformer, Qu
 
         String format = (String) properties.get( SearchConstants.FORMAT_PARAMETER );
 
-        Entry entry = Abdera.getInstance().newEntry();
+        Entry entry = SharedAbdera.getFactory().newEntry();
 
         entry.declareNS( AtomResponseConstants.GEORSS_NAMESPACE, AtomResponseConstants.GEORSS_NAMESPACE_PREFIX );
         entry.declareNS( AtomResponseConstants.RELEVANCE_NAMESPACE, AtomResponseConstants.RELEVANCE_NAMESPACE_PREFIX );
@@ -502,20 +486,25 @@ public abstract class AbstractAtomTransformer implements MetacardTransformer, Qu
     }
 
     protected void addLocation( Entry entry, Metacard metacard, boolean useGmlEncoding ) {
-        WKTReader reader = new WKTReader();
-        try {
-            Geometry geo = reader.read( metacard.getLocation() );
-
-            List<Position> positions = CompositeGeometry.getCompositeGeometry( geo ).toGeoRssPositions();
-            for ( Position position : positions ) {
-                if ( useGmlEncoding ) {
-                    GeoHelper.addPosition( entry, position, GeoHelper.Encoding.GML );
-                } else {
-                    GeoHelper.addPosition( entry, position, GeoHelper.Encoding.SIMPLE );
-                }
+        List<Position> positions;
+        Attribute location = metacard.getAttribute( Metacard.GEOGRAPHY );
+        if ( location instanceof LocationAttribute ) {
+            // the metacard was parsed from GeoRSS, so write the positions it was parsed from instead of parsing its WKT
+            positions = Arrays.asList( ((LocationAttribute) location).getPositions() );
+        } else {
+            try {
+                positions = GeoRssPositionCache.getPositions( metacard.getLocation() );
+            } catch ( ParseException e ) {
+                LOGGER.error( e.getMessage(), e );
+                return;
+            }
+        }
+        for ( Position position : positions ) {
+            if ( useGmlEncoding ) {
+                GeoHelper.addPosition( entry, position, GeoHelper.Encoding.GML );
+            } else {
+                GeoHelper.addPosition( entry, position, GeoHelper.Encoding.SIMPLE );
             }
-        } catch ( ParseException e ) {
-            LOGGER.error( e.getMessage(), e );
         }
     }
 
@@ -29,7 +29,6 @@ import net.di2e.ecdr.commons.CDRMetacard;
 import net.di2e.ecdr.commons.constants.SearchConstants;
 import net.di2e.ecdr.search.transform.atom.security.SecurityConfiguration;
 
-import org.apache.abdera.Abdera;
 import org.apache.abdera.model.Entry;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
@@ -59,19 +58,12 @@ public class AtomTransformerWithPayload extends AtomTransformer {
 
     @Override
     public void addEntryElements( Entry entry, CDRMetacard metacard, Map<String, Serializable> properties ) {
-        // Abdera.getParser() spins up a new thread so must do this
-        ClassLoader currentClassLoader = Thread.currentThread().getContextClassLoader();
-        try {
-            Thread.currentThread().setContextClassLoader( AtomTransformerWithPayload.class.getClassLoader() );
-            String metadata = getMetadataXML( metacard, (String) properties.get( SearchConstants.METACARD_TRANSFORMER_NAME ) );
-            entry.addExtension( Abdera.getNewParser().parse( new StringReader( metadata ) ).getRoot() );
-            CDRMetacard newMetacard = new CDRMetacard( metacard );
-            newMetacard.setMetadata( metadata );
+        String metadata = getMetadataXML( metacard, (String) properties.get( SearchConstants.METACARD_TRANSFORMER_NAME ) );
+        entry.addExtension( SharedAbdera.parse( new StringReader( metadata ) ).getRoot() );
+        CDRMetacard newMetacard = new CDRMetacard( metacard );
+        newMetacard.setMetadata( metadata );
 
-            super.setEntrySecurity( entry, newMetacard );
-        } finally {
-            Thread.currentThread().setContextClassLoader( currentClassLoader );
-        }
+        super.setEntrySecurity( entry, newMetacard );
     }
 
     /**
@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.search.transform.atom;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.abdera.Abdera;
+import org.apache.abdera.factory.Factory;
+import org.apache.abdera.model.Document;
+import org.apache.abdera.model.Element;
+import org.apache.abdera.parser.ParseException;
+import org.apache.abdera.parser.Parser;
+import org.apache.axiom.om.OMElement;
+
+/**
+ * The Abdera and StAX instances shared by the Atom transformers. Abdera finds its factory and parser, and Axiom finds
+ * the StAX factories it reads and writes with, through the thread context classloader, which is why the transformers
+ * used to swap the context classloader (and create new parsers) around every parse, write and new feed. Here they are
+ * created once, with the context classloader set to this bundle's classloader, and then used from any thread without
+ * swapping it. The Abdera factory and parser and the StAX factories are thread safe, so a single instance of each is
+ * shared by all callers instead of being pooled. Like the {@code TextParser} of the Atom parser, the input factory does
+ * not support DTDs or external entities.
+ */
+public final class SharedAbdera {
+
+    private static final String ENCODING = StandardCharsets.UTF_8.name();
+    private static final String XML_VERSION = "1.0";
+
+    private static final Abdera ABDERA;
+    private static final Parser PARSER;
+    private static final XMLInputFactory INPUT_FACTORY;
+    private static final XMLOutputFactory OUTPUT_FACTORY;
+
+    static {
+        ClassLoader tccl = Thread.currentThread().getContextClassLoader();
+        try {
+            Thread.currentThread().setContextClassLoader( SharedAbdera.class.getClassLoader() );
+            ABDERA = new Abdera();
+            ABDERA.getFactory();
+            PARSER = ABDERA.getParser();
+            INPUT_FACTORY = XMLInputFactory.newInstance();
+            // remote responses are parsed with this factory, so DTDs and external entities are never resolved
+            INPUT_FACTORY.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE );
+            INPUT_FACTORY.setProperty( XMLInputFactory.SUPPORT_DTD, Boolean.FALSE );
+            INPUT_FACTORY.setProperty( XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, Boolean.FALSE );
+            OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+        } finally {
+            Thread.currentThread().setContextClassLoader( tccl );
+        }
+    }
+
+    private SharedAbdera() {
+    }
+
+    public static Abdera getAbdera() {
+        return ABDERA;
+    }
+
+    /**
+     * Returns the factory used to create new feeds and entries.
+     */
+    public static Factory getFactory() {
+        return ABDERA.getFactory();
+    }
+
+    /**
+     * Parses the XML read from the reader. Like any Abdera parse, the document is built as it is read, so the reader has
+     * to stay open until the document is no longer used.
+     *
+     * @throws ParseException
+     *             if the XML reader could not be created
+     */
+    public static <T extends Element> Document<T> parse( Reader reader ) {
+        try {
+            return PARSER.parse( INPUT_FACTORY.createXMLStreamReader( reader ) );
+        } catch ( XMLStreamException e ) {
+            throw new ParseException( e );
+        }
+    }
+
+    /**
+     * Writes the element, without an XML declaration, to the writer.
+     */
+    public static void writeTo( Element element, Writer writer ) throws IOException {
+        try {
+            XMLStreamWriter xmlWriter = OUTPUT_FACTORY.createXMLStreamWriter( writer );
+            ((OMElement) element).serialize( xmlWriter );
+            xmlWriter.flush();
+        } catch ( XMLStreamException e ) {
+            throw new IOException( e );
+        }
+    }
+
+    /**
+     * Writes the element as a UTF-8 XML document to the output stream.
+     */
+    public static void writeDocument( Element element, OutputStream outputStream ) throws IOException {
+        try {
+            XMLStreamWriter xmlWriter = OUTPUT_FACTORY.createXMLStreamWriter( outputStream, ENCODING );
+            xmlWriter.writeStartDocument( ENCODING, XML_VERSION );
+            ((OMElement) element).serialize( xmlWriter );
+            xmlWriter.writeEndDocument();
+            xmlWriter.flush();
+        } catch ( XMLStreamException e ) {
+            throw new IOException( e );
+        }
+    }
+
+}
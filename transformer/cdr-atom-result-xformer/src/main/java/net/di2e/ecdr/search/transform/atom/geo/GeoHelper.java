@@ -32,8 +32,11 @@
  */
 package net.di2e.ecdr.search.transform.atom.geo;
 
+import net.di2e.ecdr.search.transform.atom.response.AtomValueDecoder;
+
 import org.apache.abdera.ext.geo.Box;
 import org.apache.abdera.ext.geo.Coordinate;
+import org.apache.abdera.ext.geo.Coordinates;
 import org.apache.abdera.ext.geo.Line;
 import org.apache.abdera.ext.geo.Multiple;
 import org.apache.abdera.ext.geo.Point;
@@ -235,7 +238,7 @@ public final class GeoHelper {
             if (element != null) {
                 text = element.getText();
                 if (text != null) {
-                    pos = new Point(text.trim());
+                    pos = new Point(toCoordinate(text));
                 }
             }
         } else if (qname.equals(QNAME_GML_LINESTRING)) {
@@ -243,7 +246,7 @@ public final class GeoHelper {
             if (element != null) {
                 text = element.getText();
                 if (text != null) {
-                    pos = new Line(text.trim());
+                    pos = new Line(toCoordinates(text));
                 }
             }
         } else if (qname.equals(QNAME_GML_POLYGON)) {
@@ -251,25 +254,25 @@ public final class GeoHelper {
             if (element != null) {
                 text = element.getText();
                 if (text != null) {
-                    pos = new Polygon(text.trim());
+                    pos = new Polygon(toCoordinates(text));
                 }
             }
         } else if (qname.equals(QNAME_GML_ENVELOPE)) {
             String lc = ((ExtensibleElement) element).getSimpleExtension(QNAME_GML_LOWERCORNER);
             String uc = ((ExtensibleElement) element).getSimpleExtension(QNAME_GML_UPPERCORNER);
             if (lc != null && uc != null) {
-                Coordinate c1 = new Coordinate(lc);
-                Coordinate c2 = new Coordinate(uc);
+                Coordinate c1 = toCoordinate(lc);
+                Coordinate c2 = toCoordinate(uc);
                 pos = new Box(c1, c2);
             }
         } else if (qname.equals(QNAME_SIMPLE_POINT) && text != null) {
-            pos = new Point(text.trim());
+            pos = new Point(toCoordinate(text));
         } else if (qname.equals(QNAME_SIMPLE_LINE) && text != null) {
-            pos = new Line(text.trim());
+            pos = new Line(toCoordinates(text));
         } else if (qname.equals(QNAME_SIMPLE_BOX) && text != null) {
-            pos = new Box(text.trim());
+            pos = toBox(text);
         } else if (qname.equals(QNAME_SIMPLE_POLYGON) && text != null) {
-            pos = new Polygon(text.trim());
+            pos = new Polygon(toCoordinates(text));
         } else if (qname.equals(QNAME_W3C_POINT) || qname.equals(Constants.ENTRY)) {
             List<Position> list = new ArrayList<Position>();
             getW3CPosition((ExtensibleElement) element, list);
@@ -311,6 +314,38 @@ public final class GeoHelper {
         }
     }
 
+    /*
+     * The coordinate text is decoded straight into doubles instead of going through the String based constructors of
+     * the Abdera geo classes, which trim and split the text and parse each value from a copy.
+     */
+    private static Coordinate toCoordinate(String text) {
+        double[] values = AtomValueDecoder.parseDoubles(text);
+        if (values.length != 2) {
+            throw new IllegalArgumentException("Expected a single latitude and longitude but found [" + text + "]");
+        }
+        return new Coordinate(values[0], values[1]);
+    }
+
+    private static Coordinates toCoordinates(String text) {
+        double[] values = AtomValueDecoder.parseDoubles(text);
+        if (values.length % 2 != 0) {
+            throw new IllegalArgumentException("Expected latitude and longitude pairs but found [" + text + "]");
+        }
+        Coordinate[] coordinates = new Coordinate[values.length / 2];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = new Coordinate(values[i * 2], values[i * 2 + 1]);
+        }
+        return new Coordinates(coordinates);
+    }
+
+    private static Box toBox(String text) {
+        double[] values = AtomValueDecoder.parseDoubles(text);
+        if (values.length != 4) {
+            throw new IllegalArgumentException("Expected a lower and upper corner but found [" + text + "]");
+        }
+        return new Box(new Coordinate(values[0], values[1]), new Coordinate(values[2], values[3]));
+    }
+
     private static ExtensibleElement traverse(ExtensibleElement element, QName... qnames) {
         for (QName qname : qnames) {
             element = element.getExtension(qname);
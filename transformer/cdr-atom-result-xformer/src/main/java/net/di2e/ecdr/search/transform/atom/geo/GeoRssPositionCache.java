@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.search.transform.atom.geo;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.di2e.ecdr.search.transform.geo.formatter.CompositeGeometry;
+
+import org.apache.abdera.ext.geo.Position;
+
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+
+/**
+ * Caches the GeoRSS positions that a WKT location converts to, so the location of a metacard that is rendered as Atom
+ * more than once (the same result returned by repeated or paged queries, or cached by a source) is only parsed once.
+ * Positions are shared between callers and must not be modified. Very large WKT values are converted but not cached
+ * so that a few detailed geometries cannot take up a large amount of memory.
+ */
+public final class GeoRssPositionCache {
+
+    private static final int MAX_ENTRIES = 1000;
+    private static final int MAX_WKT_LENGTH = 16 * 1024;
+
+    private static final Map<String, List<Position>> POSITIONS = new LinkedHashMap<String, List<Position>>( 16, 0.75f, true ) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<String, List<Position>> eldest ) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private GeoRssPositionCache() {
+    }
+
+    /**
+     * Returns the GeoRSS positions of the WKT location, converting it if it is not cached yet.
+     *
+     * @throws ParseException
+     *             if the WKT can not be parsed
+     */
+    public static List<Position> getPositions( String wkt ) throws ParseException {
+        synchronized ( POSITIONS ) {
+            List<Position> positions = POSITIONS.get( wkt );
+            if ( positions != null ) {
+                return positions;
+            }
+        }
+
+        List<Position> positions = Collections.unmodifiableList( CompositeGeometry.getCompositeGeometry( new WKTReader().read( wkt ) ).toGeoRssPositions() );
+        if ( wkt.length() <= MAX_WKT_LENGTH ) {
+            synchronized ( POSITIONS ) {
+                POSITIONS.put( wkt, positions );
+            }
+        }
+        return positions;
+    }
+
+}
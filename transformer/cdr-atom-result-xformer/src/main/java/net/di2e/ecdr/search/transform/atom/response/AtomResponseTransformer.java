@@ -18,13 +18,16 @@ package net.di2e.ecdr.search.transform.atom.response;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.Serializable;
-import java.io.StringWriter;
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RecursiveAction;
 
 import javax.activation.MimeType;
 import javax.xml.namespace.QName;
@@ -33,25 +36,27 @@ import net.di2e.ecdr.commons.CDRMetacard;
 import net.di2e.ecdr.commons.filter.config.FilterConfig;
 import net.di2e.ecdr.commons.filter.config.FilterConfig.AtomContentXmlWrapOption;
 import net.di2e.ecdr.commons.response.SearchResponseTransformer;
+import net.di2e.ecdr.search.transform.atom.SharedAbdera;
 import net.di2e.ecdr.search.transform.atom.constants.AtomResponseConstants;
 import net.di2e.ecdr.search.transform.atom.geo.AbderaConverter;
+import net.di2e.ecdr.search.transform.atom.geo.GeoHelper;
+import net.di2e.ecdr.search.transform.atom.response.LazyMetadataAttribute.Utf8Buffer;
 import net.di2e.ecdr.search.transform.atom.response.security.SecurityMarkingParser;
 
-import org.apache.abdera.Abdera;
 import org.apache.abdera.ext.geo.Position;
 import org.apache.abdera.ext.opensearch.OpenSearchConstants;
 import org.apache.abdera.i18n.iri.IRI;
 import org.apache.abdera.model.Category;
 import org.apache.abdera.model.Content;
+import org.apache.abdera.model.DateTime;
 import org.apache.abdera.model.Document;
 import org.apache.abdera.model.Element;
 import org.apache.abdera.model.Entry;
 import org.apache.abdera.model.Feed;
 import org.apache.abdera.model.Link;
-import org.apache.abdera.parser.Parser;
+import org.apache.abdera.util.Constants;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
-import org.joda.time.format.DateTimeFormatter;
-import org.joda.time.format.ISODateTimeFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -67,62 +72,135 @@ public class AtomResponseTransformer implements SearchResponseTransformer {
 
     private static final transient Logger LOGGER = LoggerFactory.getLogger( AtomResponseTransformer.class );
     private static final String METADATA_ELEMENT_NAME = "Resource";
+    private static final int METADATA_BUFFER_SIZE = 1024;
 
-    private static final DateTimeFormatter DATE_FORMATTER = ISODateTimeFormat.dateTimeParser();
-
-    private static final Abdera ABDERA = Abdera.getInstance();
+    // entries converted on a single fork-join worker before the range is split any further
+    private static final int CONVERSION_BATCH_SIZE = 16;
 
     private FilterConfig filterConfig = null;
+    private int parallelConversionThreshold = 0;
+    private ForkJoinPool conversionPool = null;
 
     public AtomResponseTransformer( FilterConfig config ) {
         this.filterConfig = config;
     }
 
+    /**
+     * Sets the number of entries a response needs before its entries are converted to metacards in parallel on the
+     * conversion pool, 0 or less turns parallel conversion off. The first threshold entries are converted and discarded
+     * one at a time as usual, so smaller responses are not affected. The entries after them are read and kept in memory
+     * until the end of the response and then converted in parallel.
+     */
+    public void setParallelConversionThreshold( int threshold ) {
+        this.parallelConversionThreshold = threshold;
+    }
+
+    /**
+     * Sets the fork-join pool large responses are converted on, see {@link #setParallelConversionThreshold(int)}.
+     * Entries are only converted in parallel when a pool is set. The pool belongs to the caller, which has to shut it
+     * down.
+     */
+    public void setConversionPool( ForkJoinPool pool ) {
+        this.conversionPool = pool;
+    }
+
     @Override
     public SourceResponse processSearchResponse( InputStream inputStream, QueryRequest request, String siteName ) {
+        return processSearchResponse( inputStream, request, siteName, 0 );
+    }
+
+    /**
+     * Converts the Atom feed into a SourceResponse. The feed is read as a stream, one entry at a time, and each entry is
+     * discarded once it has been converted so only a single entry is held in memory. Once maxResults entries have been
+     * converted the rest of the feed is not read and the stream is closed. See
+     * {@link #setParallelConversionThreshold(int)} for reading large responses in parallel.
+     *
+     * @param maxResults
+     *            the maximum number of results to read from the feed, 0 or less means read all of them
+     */
+    public SourceResponse processSearchResponse( InputStream inputStream, QueryRequest request, String siteName, int maxResults ) {
         List<Result> resultList = new ArrayList<Result>();
+        ForkJoinPool pool = parallelConversionThreshold > 0 ? conversionPool : null;
+        // entries after the parallel conversion threshold, converted once the whole feed has been read; null while
+        // entries are converted as they are read
+        List<Entry> entries = null;
+        Long totalResults = null;
 
-        ClassLoader tccl = Thread.currentThread().getContextClassLoader();
-        Parser parser = null;
-        Document<Feed> atomDoc;
+        Reader reader = new InputStreamReader( inputStream );
         try {
-
-            Thread.currentThread().setContextClassLoader( AtomResponseTransformer.class.getClassLoader() );
-            parser = ABDERA.getParser();
-            atomDoc = parser.parse( new InputStreamReader( inputStream ) );
-
+            Document<Feed> atomDoc = SharedAbdera.parse( reader );
+
+            // Walk the children of the feed instead of calling getEntries() so that the underlying pull parser only
+            // builds one entry at a time
+            Element child = atomDoc.getRoot().getFirstChild();
+            while ( child != null ) {
+                QName childName = child.getQName();
+                Element next;
+                if ( Constants.ENTRY.equals( childName ) ) {
+                    if ( maxResults > 0 && resultList.size() + (entries == null ? 0 : entries.size()) >= maxResults ) {
+                        LOGGER.debug( "Read the maximum number of results [{}] from site [{}], not reading the rest of the response", maxResults, siteName );
+                        break;
+                    }
+                    Entry entry = (Entry) child;
+                    if ( entries == null && pool != null && resultList.size() >= parallelConversionThreshold ) {
+                        LOGGER.debug( "Response from site [{}] reached [{}] entries, converting the rest of them in parallel", siteName, parallelConversionThreshold );
+                        entries = new ArrayList<Entry>();
+                    }
+                    if ( !isValidEntry( entry ) ) {
+                        LOGGER.debug( "Skipping invalid entry: {}", entry );
+                        next = child.getNextSibling();
+                        child.discard();
+                    } else if ( entries != null ) {
+                        // fully build the entry so that it can be read by other threads while nothing else is parsed
+                        entries.add( entry.<Entry> complete() );
+                        next = child.getNextSibling();
+                    } else {
+                        resultList.add( entryToResult( entry, siteName ) );
+                        next = child.getNextSibling();
+                        child.discard();
+                    }
+                } else {
+                    if ( OpenSearchConstants.TOTAL_RESULTS.equals( childName ) ) {
+                        try {
+                            totalResults = Long.valueOf( child.getText() );
+                        } catch ( NumberFormatException e ) {
+                            LOGGER.warn( "Received invalid number of results from Atom response [" + child.getText() + "]", e );
+                        }
+                    }
+                    next = child.getNextSibling();
+                }
+                child = next;
+            }
+            if ( entries != null ) {
+                resultList.addAll( convertEntries( pool, entries, siteName ) );
+            }
         } finally {
-            Thread.currentThread().setContextClassLoader( tccl );
+            IOUtils.closeQuietly( reader );
         }
 
-        Feed feed = atomDoc.getRoot();
-
-        List<Entry> entries = feed.getEntries();
-        int size = entries.size();
-        for ( Entry entry : entries ) {
-            if (isValidEntry( entry )) {
-                Metacard metacard = entryToMetacard( entry, siteName );
-                resultList.add( metacardToResult( entry, metacard ) );
-            } else {
-                LOGGER.debug( "Skipping invalid entry: {}", entry );
-                size--;
-            }
-        }
+        Map<String, Serializable> responseProperties = null;
 
-        long totalResults = size;
-        Element totalResultsElement = atomDoc.getRoot().getExtension( OpenSearchConstants.TOTAL_RESULTS );
+        return new SourceResponseImpl( request, responseProperties, resultList, totalResults == null ? resultList.size() : totalResults );
+    }
 
-        if ( totalResultsElement != null ) {
-            try {
-                totalResults = Long.parseLong( totalResultsElement.getText() );
-            } catch ( NumberFormatException e ) {
-                LOGGER.warn( "Received invalid number of results from Atom response [" + totalResultsElement.getText() + "]", e );
-            }
+    /**
+     * Converts the entries that have been read into results on the fork-join pool, in the order of the entries.
+     */
+    private List<Result> convertEntries( ForkJoinPool pool, List<Entry> entries, String siteName ) {
+        int size = entries.size();
+        Result[] results = new Result[size];
+        LOGGER.debug( "Converting [{}] entries from site [{}] in parallel", size, siteName );
+        try {
+            pool.invoke( new ConversionTask( entries, results, 0, size, siteName ) );
+        } catch ( RejectedExecutionException e ) {
+            LOGGER.debug( "Conversion pool has been shut down, converting the entries from site [{}] sequentially", siteName );
+            new ConversionTask( entries, results, 0, size, siteName ).convert();
         }
+        return Arrays.asList( results );
+    }
 
-        Map<String, Serializable> responseProperties = null;
-
-        return new SourceResponseImpl( request, responseProperties, resultList, totalResults );
+    private Result entryToResult( Entry entry, String siteName ) {
+        return metacardToResult( entry, entryToMetacard( entry, siteName ) );
     }
 
     private Metacard entryToMetacard( Entry entry, String siteName ) {
@@ -147,34 +225,34 @@ public class AtomResponseTransformer implements SearchResponseTransformer {
             }
         }
 
-        try {
-            metacard.setModifiedDate( entry.getUpdated() );
-        } catch ( IllegalArgumentException e ) {
-            LOGGER.warn( "InvalidDate found in atom reponse, setting Metacard modified time to now " );
-            metacard.setEffectiveDate( new Date() );
-        }
-        try {
-            metacard.setEffectiveDate( entry.getPublished() );
-        } catch ( IllegalArgumentException e ) {
-            LOGGER.warn( "InvalidDate found in atom reponse, setting Metacard Effective time to now " );
-            metacard.setEffectiveDate( new Date() );
+        // dates, location and security are only captured here, they are decoded the first time they are read
+        metacard.setAttribute( LazyAttribute.atomDate( Metacard.MODIFIED, entry.getUpdatedElement().getText() ) );
+        DateTime published = entry.getPublishedElement();
+        if ( published != null ) {
+            metacard.setAttribute( LazyAttribute.atomDate( Metacard.EFFECTIVE, published.getText() ) );
         }
 
+        // an invalid ISO date leaves the attribute unset
         String createdDate = entry.getSimpleExtension( new QName( AtomResponseConstants.METACARD_ATOM_NAMESPACE, AtomResponseConstants.METACARD_CREATED_DATE_ELEMENT ) );
-        if ( createdDate != null ) {
-            metacard.setCreatedDate( new Date( DATE_FORMATTER.parseMillis( createdDate ) ) );
+        LazyAttribute created = createdDate == null ? null : LazyAttribute.isoDate( Metacard.CREATED, createdDate );
+        if ( created != null ) {
+            metacard.setAttribute( created );
         }
 
         String expirationDate = entry.getSimpleExtension( new QName( AtomResponseConstants.METACARD_ATOM_NAMESPACE, AtomResponseConstants.METADATA_EXPIRATION_DATE_ELEMENT ) );
-        if ( expirationDate != null ) {
-            metacard.setExpirationDate( new Date( DATE_FORMATTER.parseMillis( expirationDate ) ) );
+        LazyAttribute expiration = expirationDate == null ? null : LazyAttribute.isoDate( Metacard.EXPIRATION, expirationDate );
+        if ( expiration != null ) {
+            metacard.setAttribute( expiration );
         }
 
         AtomContentXmlWrapOption wrap = filterConfig.getAtomContentXmlWrapOption();
         String metadata = entry.getContent();
         populateMetadata( entry, metacard, wrap, metadata );
 
-        metacard.setLocation( getWKT( entry ) );
+        Position[] positions = GeoHelper.getPositions( entry );
+        if ( positions.length > 0 ) {
+            metacard.setAttribute( LazyAttribute.location( positions ) );
+        }
 
         Link productLink = entry.getLink( filterConfig.getProductLinkRelation() );
         if ( productLink != null ) {
@@ -218,26 +296,21 @@ public class AtomResponseTransformer implements SearchResponseTransformer {
         metacard.setTitle( entry.getTitle() );
 
         boolean isMetadataSet = false;
-        ClassLoader tccl = Thread.currentThread().getContextClassLoader();
-        try {
-            Thread.currentThread().setContextClassLoader( AtomResponseTransformer.class.getClassLoader() );
-            List<Element> extensions = entry.getExtensions();
-            for ( Element element : extensions ) {
-                if ( METADATA_ELEMENT_NAME.equalsIgnoreCase( element.getQName().getLocalPart() ) ) {
-                    StringWriter writer = new StringWriter();
-                    try {
-                        element.writeTo( writer );
-                        metacard.setMetadata( writer.toString() );
-                        isMetadataSet = true;
-                        break;
-                    } catch ( IOException e ) {
-                        LOGGER.error( "Could not convert Metadata String value from Atom to Metacard.METADATA attribute", e );
-                    }
-
+        List<Element> extensions = entry.getExtensions();
+        for ( Element element : extensions ) {
+            if ( METADATA_ELEMENT_NAME.equalsIgnoreCase( element.getQName().getLocalPart() ) ) {
+                // write the element straight into UTF-8 bytes, it is only decoded into a String if it is read
+                Utf8Buffer buffer = new Utf8Buffer( METADATA_BUFFER_SIZE );
+                try {
+                    SharedAbdera.writeTo( element, buffer );
+                    metacard.setAttribute( LazyMetadataAttribute.fromUtf8( buffer ) );
+                    isMetadataSet = true;
+                    break;
+                } catch ( IOException e ) {
+                    LOGGER.error( "Could not convert Metadata String value from Atom to Metacard.METADATA attribute", e );
                 }
+
             }
-        } finally {
-            Thread.currentThread().setContextClassLoader( tccl );
         }
         if ( !isMetadataSet ) {
             String metadataLinkRel = filterConfig.getMetadataLinkRelation();
@@ -255,8 +328,8 @@ public class AtomResponseTransformer implements SearchResponseTransformer {
                 }
             }
         }
-        Metacard returnMetacard = SecurityMarkingParser.addSecurityToMetacard( metacard, entry );
-        return new CDRMetacard( returnMetacard );
+        SecurityMarkingParser.addSecurity( metacard, entry );
+        return new CDRMetacard( metacard );
     }
 
     protected void populateMetadata( Entry entry, MetacardImpl metacard, AtomContentXmlWrapOption wrap, String metadata ) {
@@ -269,14 +342,15 @@ public class AtomResponseTransformer implements SearchResponseTransformer {
                     case TEXT:
                     case HTML:
                         // add content element to make sure it has single root
-                        metadata = "<xml-fragment>" + metadata + "</xml-fragment>";
-                        break;
+                        metacard.setAttribute( LazyMetadataAttribute.wrapped( metadata ) );
+                        return;
                     default:
                         // other items are xml-based
                         break;
                     }
                 } else {
-                    metadata = "<xml-fragment>" + metadata + "</xml-fragment>";
+                    metacard.setAttribute( LazyMetadataAttribute.wrapped( metadata ) );
+                    return;
                 }
             }
             metacard.setMetadata( metadata );
@@ -288,7 +362,7 @@ public class AtomResponseTransformer implements SearchResponseTransformer {
         String relevance = entry.getSimpleExtension( AtomResponseConstants.RELEVANCE_NAMESPACE, AtomResponseConstants.RELEVANCE_ELEMENT, AtomResponseConstants.RELEVANCE_NAMESPACE_PREFIX );
         if ( relevance != null ) {
             try {
-                result.setRelevanceScore( Double.parseDouble( relevance ) );
+                result.setRelevanceScore( AtomValueDecoder.parseDouble( relevance ) );
             } catch ( NumberFormatException e ) {
                 LOGGER.warn( "Received invalid number for relevance from Atom response [" + relevance + "]", e );
             }
@@ -297,7 +371,7 @@ public class AtomResponseTransformer implements SearchResponseTransformer {
         String distance = entry.getSimpleExtension( AtomResponseConstants.CDRS_EXT_NAMESPACE, AtomResponseConstants.DISTANCE_ELEMENT, AtomResponseConstants.CDRS_EXT_NAMESPACE_PREFIX );
         if ( distance != null ) {
             try {
-                result.setDistanceInMeters( Double.parseDouble( distance ) );
+                result.setDistanceInMeters( AtomValueDecoder.parseDouble( distance ) );
             } catch ( NumberFormatException e ) {
                 LOGGER.warn( "Received invalid number for distance from Atom response [" + distance + "]", e );
             }
@@ -308,7 +382,7 @@ public class AtomResponseTransformer implements SearchResponseTransformer {
 
     protected String getWKT( Entry entry ) {
         String wkt = null;
-        Position[] positions = net.di2e.ecdr.search.transform.atom.geo.GeoHelper.getPositions( entry );
+        Position[] positions = GeoHelper.getPositions( entry );
         int length = positions.length;
         if ( length == 1 ) {
             LOGGER.debug( "Found one geometry in the current Atom entry, converting to WKT for inclusion in metacard" );
@@ -321,6 +395,45 @@ public class AtomResponseTransformer implements SearchResponseTransformer {
         return wkt;
     }
 
+    /**
+     * Converts a range of the entries, splitting it in half until it is small enough to convert on one thread. Each
+     * result is stored at the index of its entry so the order of the feed is kept.
+     */
+    private class ConversionTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Entry> entries;
+        private final Result[] results;
+        private final int start;
+        private final int end;
+        private final String siteName;
+
+        ConversionTask( List<Entry> entries, Result[] results, int start, int end, String siteName ) {
+            this.entries = entries;
+            this.results = results;
+            this.start = start;
+            this.end = end;
+            this.siteName = siteName;
+        }
+
+        @Override
+        protected void compute() {
+            if ( end - start <= CONVERSION_BATCH_SIZE ) {
+                convert();
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll( new ConversionTask( entries, results, start, middle, siteName ), new ConversionTask( entries, results, middle, end, siteName ) );
+            }
+        }
+
+        void convert() {
+            for ( int i = start; i < end; i++ ) {
+                results[i] = entryToResult( entries.get( i ), siteName );
+            }
+        }
+    }
+
     /**
      * Check to see if entry is a valid ATOM Entry conforming to the specification.
      * @param entry
@@ -0,0 +1,286 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.search.transform.atom.response;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.apache.abdera.model.AtomDate;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+/**
+ * Decodes the small values of an Atom entry (dates, numbers and GeoRSS coordinates) straight from their characters.
+ * Unlike Double.parseDouble on a trimmed and split copy of the text, or a Joda or Abdera date parser, the common forms
+ * are decoded without creating any intermediate strings or objects. Anything outside of the common forms is handed to
+ * the general purpose parsers, so the decoded values are always the same as theirs.
+ */
+public final class AtomValueDecoder {
+
+    private static final DateTimeFormatter DATE_FORMATTER = ISODateTimeFormat.dateTimeParser();
+
+    // powers of ten that are exact doubles, a double with at most 15 digits multiplied or divided by one of them is
+    // correctly rounded
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17,
+        1e18, 1e19, 1e20, 1e21, 1e22 };
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private static final long NOT_DECODED = Long.MIN_VALUE;
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+    private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    private static final int INITIAL_COORDINATES = 8;
+
+    private AtomValueDecoder() {
+    }
+
+    /**
+     * Parses the text the same way as {@link Double#parseDouble(String)}.
+     *
+     * @throws NumberFormatException
+     *             if the text is not a number
+     */
+    public static double parseDouble( CharSequence text ) {
+        return parseDouble( text, 0, text.length() );
+    }
+
+    /**
+     * Parses the characters from start (inclusive) to end (exclusive) the same way as {@link Double#parseDouble(String)}.
+     *
+     * @throws NumberFormatException
+     *             if the characters are not a number
+     */
+    public static double parseDouble( CharSequence text, int start, int end ) {
+        int i = start;
+        boolean negative = false;
+        if ( i < end && (text.charAt( i ) == '-' || text.charAt( i ) == '+') ) {
+            negative = text.charAt( i ) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean hasDigits = false;
+        boolean fraction = false;
+        for ( ; i < end; i++ ) {
+            char c = text.charAt( i );
+            if ( c >= '0' && c <= '9' ) {
+                hasDigits = true;
+                if ( mantissa != 0 || c != '0' ) {
+                    significantDigits++;
+                }
+                if ( significantDigits <= MAX_EXACT_DIGITS ) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if ( fraction ) {
+                        exponent--;
+                    }
+                }
+            } else if ( c == '.' && !fraction ) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if ( i < end && hasDigits && (text.charAt( i ) == 'e' || text.charAt( i ) == 'E') ) {
+            i++;
+            boolean negativeExponent = false;
+            if ( i < end && (text.charAt( i ) == '-' || text.charAt( i ) == '+') ) {
+                negativeExponent = text.charAt( i ) == '-';
+                i++;
+            }
+            int explicitExponent = 0;
+            int exponentStart = i;
+            for ( ; i < end && text.charAt( i ) >= '0' && text.charAt( i ) <= '9' && explicitExponent < POWERS_OF_TEN.length * 2; i++ ) {
+                explicitExponent = explicitExponent * 10 + (text.charAt( i ) - '0');
+            }
+            if ( i == exponentStart ) {
+                return parseDoubleFallback( text, start, end );
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+        if ( i != end || !hasDigits || significantDigits > MAX_EXACT_DIGITS || exponent <= -POWERS_OF_TEN.length || exponent >= POWERS_OF_TEN.length ) {
+            return parseDoubleFallback( text, start, end );
+        }
+        double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses whitespace or comma separated numbers, such as GeoRSS and GML coordinate lists, into an array.
+     *
+     * @throws NumberFormatException
+     *             if one of the values is not a number
+     */
+    public static double[] parseDoubles( CharSequence text ) {
+        double[] values = new double[INITIAL_COORDINATES];
+        int count = 0;
+        int length = text.length();
+        int i = 0;
+        while ( i < length ) {
+            while ( i < length && isSeparator( text.charAt( i ) ) ) {
+                i++;
+            }
+            int start = i;
+            while ( i < length && !isSeparator( text.charAt( i ) ) ) {
+                i++;
+            }
+            if ( i > start ) {
+                if ( count == values.length ) {
+                    values = Arrays.copyOf( values, count * 2 );
+                }
+                values[count++] = parseDouble( text, start, i );
+            }
+        }
+        return count == values.length ? values : Arrays.copyOf( values, count );
+    }
+
+    /**
+     * Parses an ISO 8601 date into epoch milliseconds, giving the same result as Joda's
+     * {@link ISODateTimeFormat#dateTimeParser()}.
+     *
+     * @throws IllegalArgumentException
+     *             if the text is not an ISO 8601 date
+     */
+    public static long parseIsoDate( String text ) {
+        long millis = decodeDateTime( text );
+        return millis != NOT_DECODED ? millis : DATE_FORMATTER.parseMillis( text );
+    }
+
+    /**
+     * Parses an Atom (RFC 3339) date, using {@link AtomDate#parse(String)} for any form that is not decoded directly.
+     *
+     * @throws IllegalArgumentException
+     *             if the text is not an Atom date
+     */
+    public static Date parseAtomDate( String text ) {
+        long millis = decodeDateTime( text );
+        return millis != NOT_DECODED ? new Date( millis ) : AtomDate.parse( text );
+    }
+
+    /**
+     * Decodes the common yyyy-MM-ddTHH:mm:ss[.fraction](Z|+hh:mm|-hh:mm) form of a date, which has an explicit offset so
+     * the result does not depend on the default time zone. Returns NOT_DECODED for any other form.
+     */
+    private static long decodeDateTime( CharSequence text ) {
+        int length = text.length();
+        int start = 0;
+        while ( start < length && Character.isWhitespace( text.charAt( start ) ) ) {
+            start++;
+        }
+        while ( length > start && Character.isWhitespace( text.charAt( length - 1 ) ) ) {
+            length--;
+        }
+        if ( length - start < 20 || text.charAt( start + 4 ) != '-' || text.charAt( start + 7 ) != '-' || (text.charAt( start + 10 ) != 'T' && text.charAt( start + 10 ) != 't')
+                || text.charAt( start + 13 ) != ':' || text.charAt( start + 16 ) != ':' ) {
+            return NOT_DECODED;
+        }
+        int year = digits( text, start, 4 );
+        int month = digits( text, start + 5, 2 );
+        int day = digits( text, start + 8, 2 );
+        int hour = digits( text, start + 11, 2 );
+        int minute = digits( text, start + 14, 2 );
+        int second = digits( text, start + 17, 2 );
+        if ( year < 1 || month < 1 || month > 12 || day < 1 || day > daysInMonth( year, month ) || hour > 23 || minute > 59 || second > 59 ) {
+            return NOT_DECODED;
+        }
+        int i = start + 19;
+        int millis = 0;
+        if ( text.charAt( i ) == '.' ) {
+            i++;
+            int fractionStart = i;
+            int scale = 100;
+            for ( ; i < length && text.charAt( i ) >= '0' && text.charAt( i ) <= '9'; i++ ) {
+                // digits beyond milliseconds are truncated
+                millis += (text.charAt( i ) - '0') * scale;
+                scale /= 10;
+            }
+            if ( i == fractionStart || i - fractionStart > 9 ) {
+                return NOT_DECODED;
+            }
+        }
+        long offset;
+        if ( i == length - 1 && (text.charAt( i ) == 'Z' || text.charAt( i ) == 'z') ) {
+            offset = 0;
+        } else if ( i == length - 6 && (text.charAt( i ) == '+' || text.charAt( i ) == '-') && text.charAt( i + 3 ) == ':' ) {
+            int offsetHours = digits( text, i + 1, 2 );
+            int offsetMinutes = digits( text, i + 4, 2 );
+            if ( offsetHours > 23 || offsetMinutes > 59 ) {
+                return NOT_DECODED;
+            }
+            offset = offsetHours * MILLIS_PER_HOUR + offsetMinutes * MILLIS_PER_MINUTE;
+            if ( text.charAt( i ) == '-' ) {
+                offset = -offset;
+            }
+        } else {
+            return NOT_DECODED;
+        }
+        return daysFromEpoch( year, month, day ) * MILLIS_PER_DAY + hour * MILLIS_PER_HOUR + minute * MILLIS_PER_MINUTE + second * MILLIS_PER_SECOND + millis - offset;
+    }
+
+    /**
+     * Returns the value of count decimal digits starting at start, or a value larger than any valid field if one of them
+     * is not a digit.
+     */
+    private static int digits( CharSequence text, int start, int count ) {
+        int value = 0;
+        for ( int i = start; i < start + count; i++ ) {
+            char c = text.charAt( i );
+            if ( c < '0' || c > '9' ) {
+                return Integer.MAX_VALUE;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int daysInMonth( int year, int month ) {
+        switch ( month ) {
+        case 2:
+            return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29 : 28;
+        case 4:
+        case 6:
+        case 9:
+        case 11:
+            return 30;
+        default:
+            return 31;
+        }
+    }
+
+    /**
+     * Days between 1970-01-01 and the given date of the proleptic Gregorian calendar.
+     */
+    private static long daysFromEpoch( int year, int month, int day ) {
+        // count years from March so that the leap day is the last day of the year
+        int marchYear = month <= 2 ? year - 1 : year;
+        int era = marchYear / 400;
+        int yearOfEra = marchYear - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static boolean isSeparator( char c ) {
+        return c == ',' || Character.isWhitespace( c );
+    }
+
+    private static double parseDoubleFallback( CharSequence text, int start, int end ) {
+        return Double.parseDouble( text.subSequence( start, end ).toString() );
+    }
+
+}
@@ -0,0 +1,240 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.search.transform.atom.response;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.di2e.ecdr.search.transform.atom.geo.AbderaConverter;
+import net.di2e.ecdr.search.transform.atom.response.security.SecurityMarkingParser;
+
+import org.apache.abdera.ext.geo.Position;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.data.Attribute;
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.impl.AttributeImpl;
+
+/**
+ * An attribute of a metacard parsed from an Atom response whose value is kept the way it was captured from the entry
+ * and only decoded the first time it is read. Results that are filtered out, dropped by paging or passed straight
+ * through without the attribute being looked at never pay for decoding it.
+ */
+public abstract class LazyAttribute implements Attribute {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( LazyAttribute.class );
+
+    private final String name;
+    private transient volatile Serializable value;
+    private transient volatile boolean decoded = false;
+
+    protected LazyAttribute( String name ) {
+        this.name = name;
+    }
+
+    /**
+     * Decodes the captured value, called the first time the value is read. May return null if the captured value could
+     * not be decoded, so values that can be invalid are best validated when the attribute is created.
+     */
+    protected abstract Serializable decode();
+
+    /**
+     * Creates an attribute for an Atom (RFC 3339) date such as atom:updated. An invalid date is read as the current
+     * time.
+     */
+    public static LazyAttribute atomDate( String name, String text ) {
+        return new AtomDateAttribute( name, text );
+    }
+
+    /**
+     * Creates an attribute for an ISO 8601 date such as the metacard created and expiration date extensions. The date is
+     * validated here and only turned into a Date when it is read.
+     *
+     * @return the attribute, or null if the text is not a valid date, in which case the attribute should not be set
+     */
+    public static LazyAttribute isoDate( String name, String text ) {
+        try {
+            return new IsoDateAttribute( name, text, AtomValueDecoder.parseIsoDate( text ) );
+        } catch ( IllegalArgumentException e ) {
+            LOGGER.warn( "InvalidDate [{}] found in atom reponse, not setting the Metacard {} time", text, name );
+            return null;
+        }
+    }
+
+    /**
+     * Creates the {@link Metacard#GEOGRAPHY} attribute from the GeoRSS positions of an entry, which are converted to WKT
+     * when the location is read.
+     */
+    public static LocationAttribute location( Position[] positions ) {
+        return new LocationAttribute( positions );
+    }
+
+    /**
+     * Creates the {@link Metacard#SECURITY} attribute from the raw security marking attribute values of an entry, keyed
+     * by the attribute local name. The space separated values are split when the security is read.
+     */
+    public static LazyAttribute security( Map<String, String> markings ) {
+        return new SecurityAttribute( markings );
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Serializable getValue() {
+        if ( !decoded ) {
+            // decoding twice on a race is harmless, both threads get an equal value
+            value = decode();
+            decoded = true;
+        }
+        return value;
+    }
+
+    @Override
+    public List<Serializable> getValues() {
+        Serializable attributeValue = getValue();
+        return attributeValue == null ? Collections.<Serializable> emptyList() : Collections.singletonList( attributeValue );
+    }
+
+    /**
+     * Serialized as a plain attribute so that readers of the metacard do not need this class.
+     */
+    protected Object writeReplace() throws ObjectStreamException {
+        return new AttributeImpl( name, getValue() );
+    }
+
+    private static final class AtomDateAttribute extends LazyAttribute {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String text;
+
+        private AtomDateAttribute( String name, String text ) {
+            super( name );
+            this.text = text;
+        }
+
+        @Override
+        protected Serializable decode() {
+            try {
+                return AtomValueDecoder.parseAtomDate( text );
+            } catch ( IllegalArgumentException e ) {
+                LOGGER.warn( "InvalidDate [{}] found in atom reponse, setting Metacard {} time to now", text, getName() );
+                return new Date();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getName() + ": " + text;
+        }
+    }
+
+    private static final class IsoDateAttribute extends LazyAttribute {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String text;
+        private final long millis;
+
+        private IsoDateAttribute( String name, String text, long millis ) {
+            super( name );
+            this.text = text;
+            this.millis = millis;
+        }
+
+        @Override
+        protected Serializable decode() {
+            return new Date( millis );
+        }
+
+        @Override
+        public String toString() {
+            return getName() + ": " + text;
+        }
+    }
+
+    /**
+     * The location of an entry, which also keeps the GeoRSS positions it was parsed from so that rendering the metacard
+     * as Atom again does not have to parse its WKT.
+     */
+    public static final class LocationAttribute extends LazyAttribute {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Position[] positions;
+
+        private LocationAttribute( Position[] positions ) {
+            super( Metacard.GEOGRAPHY );
+            this.positions = positions;
+        }
+
+        @Override
+        protected Serializable decode() {
+            LOGGER.debug( "Converting the {} geometries of the Atom entry to WKT for inclusion in metacard", positions.length );
+            return AbderaConverter.convertToWKT( positions );
+        }
+
+        /**
+         * Returns the GeoRSS positions the location was parsed from, which must not be modified.
+         */
+        public Position[] getPositions() {
+            return positions;
+        }
+
+        @Override
+        public String toString() {
+            return Metacard.GEOGRAPHY + ": " + positions.length + " GeoRSS positions";
+        }
+    }
+
+    private static final class SecurityAttribute extends LazyAttribute {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Map<String, String> markings;
+
+        private SecurityAttribute( Map<String, String> markings ) {
+            super( Metacard.SECURITY );
+            this.markings = markings;
+        }
+
+        @Override
+        protected Serializable decode() {
+            HashMap<String, List<String>> securityProps = new HashMap<String, List<String>>();
+            for ( Map.Entry<String, String> marking : markings.entrySet() ) {
+                securityProps.put( marking.getKey(), SecurityMarkingParser.getValues( marking.getValue() ) );
+            }
+            return securityProps;
+        }
+
+        @Override
+        public String toString() {
+            return Metacard.SECURITY + ": " + markings;
+        }
+    }
+
+}
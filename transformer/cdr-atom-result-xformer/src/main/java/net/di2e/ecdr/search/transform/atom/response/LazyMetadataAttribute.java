@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.search.transform.atom.response;
+
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import ddf.catalog.data.Metacard;
+
+/**
+ * The {@link Metacard#METADATA} attribute of a metacard parsed from an Atom response. The metadata is kept the way it
+ * was captured during parsing (the UTF-8 bytes the metadata element was written into, or the entry content that still
+ * needs to be wrapped) and is only turned into a String the first time it is read, so metadata that is never read is
+ * never decoded. Once decoded only the String is kept.
+ */
+public final class LazyMetadataAttribute extends LazyAttribute {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String XML_FRAGMENT_START = "<xml-fragment>";
+    private static final String XML_FRAGMENT_END = "</xml-fragment>";
+
+    private final boolean wrapped;
+    private final int length;
+    // the captured metadata, dropped once it has been decoded
+    private byte[] utf8;
+    private String content;
+    private String metadata;
+
+    private LazyMetadataAttribute( byte[] utf8, String content ) {
+        super( Metacard.METADATA );
+        this.utf8 = utf8;
+        this.content = content;
+        this.wrapped = utf8 == null;
+        this.length = wrapped ? content.length() : utf8.length;
+    }
+
+    /**
+     * Creates the attribute from the UTF-8 encoded metadata held in the buffer. The buffer's array is used as is when it
+     * is full, otherwise the metadata is copied into an array of its exact size.
+     */
+    public static LazyMetadataAttribute fromUtf8( Utf8Buffer buffer ) {
+        buffer.close();
+        byte[] bytes = buffer.getBuffer();
+        if ( bytes.length != buffer.size() ) {
+            bytes = Arrays.copyOf( bytes, buffer.size() );
+        }
+        return new LazyMetadataAttribute( bytes, null );
+    }
+
+    /**
+     * Creates the attribute from entry content that has to be wrapped in an xml-fragment element to have a single root.
+     */
+    public static LazyMetadataAttribute wrapped( String content ) {
+        return new LazyMetadataAttribute( null, content );
+    }
+
+    @Override
+    protected synchronized Serializable decode() {
+        if ( metadata == null ) {
+            metadata = wrapped ? XML_FRAGMENT_START + content + XML_FRAGMENT_END : new String( utf8, StandardCharsets.UTF_8 );
+            utf8 = null;
+            content = null;
+        }
+        return metadata;
+    }
+
+    @Override
+    public String toString() {
+        return Metacard.METADATA + ": " + (wrapped ? length + " characters of wrapped content" : length + " UTF-8 bytes");
+    }
+
+    /**
+     * Writer that encodes what is written to it as UTF-8 into a growing byte array, which the attribute then trims to
+     * size. Unlike an OutputStreamWriter it has no intermediate char or byte buffers.
+     */
+    public static final class Utf8Buffer extends Writer {
+
+        private byte[] buf;
+        private int count = 0;
+        // high surrogate of a pair that was split across two writes
+        private char pendingHighSurrogate = 0;
+
+        public Utf8Buffer( int size ) {
+            buf = new byte[size];
+        }
+
+        @Override
+        public void write( int c ) {
+            write( (char) c );
+        }
+
+        @Override
+        public void write( char[] chars, int offset, int len ) {
+            for ( int i = offset; i < offset + len; i++ ) {
+                write( chars[i] );
+            }
+        }
+
+        @Override
+        public void write( String str, int offset, int len ) {
+            for ( int i = offset; i < offset + len; i++ ) {
+                write( str.charAt( i ) );
+            }
+        }
+
+        private void write( char c ) {
+            if ( pendingHighSurrogate != 0 ) {
+                char high = pendingHighSurrogate;
+                pendingHighSurrogate = 0;
+                if ( Character.isLowSurrogate( c ) ) {
+                    int codePoint = Character.toCodePoint( high, c );
+                    ensureCapacity( 4 );
+                    buf[count++] = (byte) (0xF0 | (codePoint >> 18));
+                    buf[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buf[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buf[count++] = (byte) (0x80 | (codePoint & 0x3F));
+                    return;
+                }
+                writeReplacement();
+            }
+            if ( c < 0x80 ) {
+                ensureCapacity( 1 );
+                buf[count++] = (byte) c;
+            } else if ( c < 0x800 ) {
+                ensureCapacity( 2 );
+                buf[count++] = (byte) (0xC0 | (c >> 6));
+                buf[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if ( Character.isHighSurrogate( c ) ) {
+                pendingHighSurrogate = c;
+            } else if ( Character.isLowSurrogate( c ) ) {
+                writeReplacement();
+            } else {
+                ensureCapacity( 3 );
+                buf[count++] = (byte) (0xE0 | (c >> 12));
+                buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        // unpaired surrogates are written as '?', the same as the JDK encoder does
+        private void writeReplacement() {
+            ensureCapacity( 1 );
+            buf[count++] = '?';
+        }
+
+        private void ensureCapacity( int extra ) {
+            if ( count + extra > buf.length ) {
+                buf = Arrays.copyOf( buf, Math.max( buf.length * 2, count + extra ) );
+            }
+        }
+
+        @Override
+        public void flush() {
+            // nothing is buffered
+        }
+
+        @Override
+        public void close() {
+            if ( pendingHighSurrogate != 0 ) {
+                pendingHighSurrogate = 0;
+                writeReplacement();
+            }
+        }
+
+        public int size() {
+            return count;
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+
+}
@@ -19,11 +19,13 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.xml.namespace.QName;
 
 import net.di2e.ecdr.commons.constants.SecurityConstants;
+import net.di2e.ecdr.search.transform.atom.response.LazyAttribute;
 import net.di2e.ecdr.search.transform.atom.security.SecurityData;
 
 import org.apache.abdera.model.Entry;
@@ -46,29 +48,38 @@ public final class SecurityMarkingParser {
     }
 
     public static Metacard addSecurityToMetacard( Metacard metacard, Entry entry ) {
-        HashMap<String, List<String>> securityProps = new HashMap<String, List<String>>();
         MetacardImpl metacardImpl = new MetacardImpl( metacard );
+        addSecurity( metacardImpl, entry );
+        return metacardImpl;
+    }
+
+    /**
+     * Sets the security markings of the entry on the metacard itself instead of on a copy. Only the raw attribute
+     * values are captured, they are split into the security map the first time the security is read.
+     */
+    public static void addSecurity( MetacardImpl metacard, Entry entry ) {
         List<QName> attributes = entry.getAttributes();
         if ( attributes != null ) {
+            Map<String, String> markings = null;
             String metacardSecurityNamespace = null;
             for ( QName qName : attributes ) {
                 String namespace = qName.getNamespaceURI();
                 if ( NAMESPACES.contains( namespace ) ) {
                     String value = entry.getAttributeValue( qName );
                     if ( StringUtils.isNotBlank( value ) ) {
-                        securityProps.put( qName.getLocalPart(), getValues( value ) );
-                        if ( metacardSecurityNamespace == null ) {
+                        if ( markings == null ) {
+                            markings = new HashMap<String, String>();
                             metacardSecurityNamespace = namespace;
                         }
+                        markings.put( qName.getLocalPart(), value );
                     }
                 }
             }
-            if ( !securityProps.isEmpty() ) {
-                metacardImpl.setSecurity( securityProps );
-                metacardImpl.setAttribute( SecurityConstants.SECURITY_NAMESPACE, metacardSecurityNamespace );
+            if ( markings != null ) {
+                metacard.setAttribute( LazyAttribute.security( markings ) );
+                metacard.setAttribute( SecurityConstants.SECURITY_NAMESPACE, metacardSecurityNamespace );
             }
         }
-        return metacardImpl;
     }
 
     public static SecurityData getFeedSecurityMarkings( Feed feed ) {
@@ -0,0 +1,453 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.search.transform.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+import net.di2e.ecdr.search.transform.atom.response.AtomValueDecoder;
+
+/**
+ * Reads a JSON document one token at a time, without building a tree of the document. Values are read into a single
+ * reused buffer, so names and values that are skipped or appended with {@link #appendValue(StringBuilder)} are never
+ * turned into Strings. The reader is not thread safe.
+ */
+public final class JsonReader implements Closeable {
+
+    /**
+     * The kinds of tokens in a JSON document.
+     */
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int INITIAL_DEPTH = 32;
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    // what the reader is in the middle of, kept on a stack
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int DANGLING_NAME = 3;
+    private static final int NONEMPTY_OBJECT = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int pos = 0;
+    private int limit = 0;
+    // characters read before the current buffer, for error messages
+    private long offset = 0;
+
+    private int[] stack = new int[INITIAL_DEPTH];
+    private int stackSize = 0;
+
+    private Token peeked = null;
+    // the text of the current name, string, number or boolean token
+    private final StringBuilder value = new StringBuilder();
+
+    public JsonReader( Reader in ) {
+        this.in = in;
+        push( EMPTY_DOCUMENT );
+    }
+
+    /**
+     * Returns the type of the next token without consuming it.
+     */
+    public Token peek() throws IOException {
+        if ( peeked == null ) {
+            peeked = readToken();
+        }
+        return peeked;
+    }
+
+    /**
+     * Returns true if the current object or array has another element.
+     */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws IOException {
+        expect( Token.BEGIN_OBJECT );
+    }
+
+    public void endObject() throws IOException {
+        expect( Token.END_OBJECT );
+    }
+
+    public void beginArray() throws IOException {
+        expect( Token.BEGIN_ARRAY );
+    }
+
+    public void endArray() throws IOException {
+        expect( Token.END_ARRAY );
+    }
+
+    public String nextName() throws IOException {
+        expect( Token.NAME );
+        return value.toString();
+    }
+
+    /**
+     * Returns the next string value, or the text of the next number or boolean value.
+     */
+    public String nextString() throws IOException {
+        expectValue();
+        return value.toString();
+    }
+
+    /**
+     * Appends the next string value, or the text of the next number or boolean value, to the target.
+     */
+    public void appendValue( StringBuilder target ) throws IOException {
+        expectValue();
+        target.append( value );
+    }
+
+    /**
+     * Returns the next number value, which may also be a string holding a number.
+     *
+     * @throws NumberFormatException
+     *             if the value is not a number
+     */
+    public double nextDouble() throws IOException {
+        expectValue();
+        return AtomValueDecoder.parseDouble( value );
+    }
+
+    public boolean nextBoolean() throws IOException {
+        expect( Token.BOOLEAN );
+        return value.charAt( 0 ) == 't';
+    }
+
+    public void nextNull() throws IOException {
+        expect( Token.NULL );
+    }
+
+    /**
+     * Skips the next value, including all of the values nested in it if it is an object or array.
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            Token token = peek();
+            peeked = null;
+            if ( token == Token.BEGIN_OBJECT || token == Token.BEGIN_ARRAY ) {
+                depth++;
+            } else if ( token == Token.END_OBJECT || token == Token.END_ARRAY ) {
+                depth--;
+            } else if ( token == Token.END_DOCUMENT ) {
+                throw syntaxError( "Unexpected end of document" );
+            }
+        } while ( depth > 0 );
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void expect( Token expected ) throws IOException {
+        Token token = peek();
+        if ( token != expected ) {
+            throw syntaxError( "Expected " + expected + " but was " + token );
+        }
+        peeked = null;
+    }
+
+    private void expectValue() throws IOException {
+        Token token = peek();
+        if ( token != Token.STRING && token != Token.NUMBER && token != Token.BOOLEAN ) {
+            throw syntaxError( "Expected a value but was " + token );
+        }
+        peeked = null;
+    }
+
+    private Token readToken() throws IOException {
+        int context = stack[stackSize - 1];
+        int c;
+        switch ( context ) {
+        case EMPTY_DOCUMENT:
+            stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+            c = nextNonWhitespace();
+            // a byte order mark is only allowed as the very first character
+            if ( c == BYTE_ORDER_MARK && offset + pos == 1 ) {
+                c = nextNonWhitespace();
+            }
+            return readValue( c );
+        case NONEMPTY_DOCUMENT:
+            c = nextNonWhitespace();
+            if ( c == -1 ) {
+                return Token.END_DOCUMENT;
+            }
+            throw syntaxError( "Unexpected content after the end of the document" );
+        case EMPTY_ARRAY:
+        case NONEMPTY_ARRAY:
+            stack[stackSize - 1] = NONEMPTY_ARRAY;
+            c = nextNonWhitespace();
+            if ( c == ']' ) {
+                stackSize--;
+                return Token.END_ARRAY;
+            }
+            if ( context == NONEMPTY_ARRAY ) {
+                if ( c != ',' ) {
+                    throw syntaxError( "Expected , or ] in an array" );
+                }
+                c = nextNonWhitespace();
+            }
+            return readValue( c );
+        case EMPTY_OBJECT:
+        case NONEMPTY_OBJECT:
+            c = nextNonWhitespace();
+            if ( c == '}' ) {
+                stackSize--;
+                return Token.END_OBJECT;
+            }
+            if ( context == NONEMPTY_OBJECT ) {
+                if ( c != ',' ) {
+                    throw syntaxError( "Expected , or } in an object" );
+                }
+                c = nextNonWhitespace();
+            }
+            if ( c != '"' ) {
+                throw syntaxError( "Expected a name in an object" );
+            }
+            readString();
+            stack[stackSize - 1] = DANGLING_NAME;
+            return Token.NAME;
+        case DANGLING_NAME:
+            if ( nextNonWhitespace() != ':' ) {
+                throw syntaxError( "Expected : after a name" );
+            }
+            stack[stackSize - 1] = NONEMPTY_OBJECT;
+            return readValue( nextNonWhitespace() );
+        default:
+            throw new IllegalStateException( "Unknown reader state " + context );
+        }
+    }
+
+    private Token readValue( int c ) throws IOException {
+        switch ( c ) {
+        case '{':
+            push( EMPTY_OBJECT );
+            return Token.BEGIN_OBJECT;
+        case '[':
+            push( EMPTY_ARRAY );
+            return Token.BEGIN_ARRAY;
+        case '"':
+            readString();
+            return Token.STRING;
+        case 't':
+        case 'f':
+        case 'n':
+            readLiteral( (char) c );
+            if ( "null".contentEquals( value ) ) {
+                return Token.NULL;
+            } else if ( "true".contentEquals( value ) || "false".contentEquals( value ) ) {
+                return Token.BOOLEAN;
+            }
+            throw syntaxError( "Unexpected value " + value );
+        case -1:
+            throw syntaxError( "Unexpected end of document" );
+        default:
+            if ( c == '-' || (c >= '0' && c <= '9') ) {
+                readNumber( (char) c );
+                return Token.NUMBER;
+            }
+            throw syntaxError( "Unexpected character " + (char) c );
+        }
+    }
+
+    private void readString() throws IOException {
+        value.setLength( 0 );
+        while ( true ) {
+            int start = pos;
+            while ( pos < limit ) {
+                char c = buffer[pos++];
+                if ( c == '"' ) {
+                    value.append( buffer, start, pos - start - 1 );
+                    return;
+                } else if ( c == '\\' ) {
+                    value.append( buffer, start, pos - start - 1 );
+                    value.append( readEscape() );
+                    start = pos;
+                }
+            }
+            value.append( buffer, start, pos - start );
+            if ( !fill() ) {
+                throw syntaxError( "Unterminated string" );
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        switch ( c ) {
+        case 'u':
+            int codeUnit = 0;
+            for ( int i = 0; i < 4; i++ ) {
+                int digit = Character.digit( read(), 16 );
+                if ( digit < 0 ) {
+                    throw syntaxError( "Invalid unicode escape" );
+                }
+                codeUnit = (codeUnit << 4) | digit;
+            }
+            return (char) codeUnit;
+        case 'b':
+            return '\b';
+        case 'f':
+            return '\f';
+        case 'n':
+            return '\n';
+        case 'r':
+            return '\r';
+        case 't':
+            return '\t';
+        case '"':
+        case '\\':
+        case '/':
+            return (char) c;
+        default:
+            throw syntaxError( "Invalid escape sequence" );
+        }
+    }
+
+    /**
+     * Reads a number following the JSON grammar: -?(0|[1-9][0-9]*)(.[0-9]+)?([eE][+-]?[0-9]+)?
+     */
+    private void readNumber( char first ) throws IOException {
+        value.setLength( 0 );
+        value.append( first );
+        int c = first;
+        if ( c == '-' ) {
+            c = peekChar();
+            if ( !isDigit( c ) ) {
+                throw syntaxError( "Expected a digit after - in a number" );
+            }
+            appendChar();
+        }
+        // a leading zero can not be followed by other digits
+        if ( c != '0' ) {
+            appendDigits();
+        }
+        c = peekChar();
+        if ( c == '.' ) {
+            appendChar();
+            if ( appendDigits() == 0 ) {
+                throw syntaxError( "Expected a digit after the decimal point of number " + value );
+            }
+            c = peekChar();
+        }
+        if ( c == 'e' || c == 'E' ) {
+            appendChar();
+            c = peekChar();
+            if ( c == '+' || c == '-' ) {
+                appendChar();
+            }
+            if ( appendDigits() == 0 ) {
+                throw syntaxError( "Expected a digit in the exponent of number " + value );
+            }
+            c = peekChar();
+        }
+        if ( isDigit( c ) || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-' ) {
+            throw syntaxError( "Malformed number " + value + (char) c );
+        }
+    }
+
+    private int appendDigits() throws IOException {
+        int count = 0;
+        while ( isDigit( peekChar() ) ) {
+            appendChar();
+            count++;
+        }
+        return count;
+    }
+
+    private static boolean isDigit( int c ) {
+        return c >= '0' && c <= '9';
+    }
+
+    private int peekChar() throws IOException {
+        return pos < limit || fill() ? buffer[pos] : -1;
+    }
+
+    // appends the character returned by the last peekChar() to the value
+    private void appendChar() {
+        value.append( buffer[pos++] );
+    }
+
+    private void readLiteral( char first ) throws IOException {
+        value.setLength( 0 );
+        value.append( first );
+        while ( pos < limit || fill() ) {
+            char c = buffer[pos];
+            if ( c >= 'a' && c <= 'z' ) {
+                value.append( c );
+                pos++;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while ( pos < limit || fill() ) {
+            char c = buffer[pos++];
+            if ( c != ' ' && c != '\n' && c != '\r' && c != '\t' ) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    private int read() throws IOException {
+        if ( pos < limit || fill() ) {
+            return buffer[pos++];
+        }
+        throw syntaxError( "Unexpected end of document" );
+    }
+
+    private boolean fill() throws IOException {
+        offset += limit;
+        pos = 0;
+        limit = 0;
+        int count = in.read( buffer, 0, buffer.length );
+        if ( count > 0 ) {
+            limit = count;
+            return true;
+        }
+        return false;
+    }
+
+    private void push( int context ) {
+        if ( stackSize == stack.length ) {
+            int[] newStack = new int[stackSize * 2];
+            System.arraycopy( stack, 0, newStack, 0, stackSize );
+            stack = newStack;
+        }
+        stack[stackSize++] = context;
+    }
+
+    private IOException syntaxError( String message ) {
+        return new IOException( message + " at character " + (offset + pos) );
+    }
+
+}
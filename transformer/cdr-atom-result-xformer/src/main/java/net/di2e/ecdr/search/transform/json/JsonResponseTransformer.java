@@ -0,0 +1,509 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.search.transform.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.activation.MimeType;
+import javax.activation.MimeTypeParseException;
+
+import net.di2e.ecdr.commons.CDRMetacard;
+import net.di2e.ecdr.commons.response.SearchResponseTransformer;
+import net.di2e.ecdr.search.transform.atom.response.AtomValueDecoder;
+import net.di2e.ecdr.search.transform.atom.response.LazyAttribute;
+import net.di2e.ecdr.search.transform.json.JsonReader.Token;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.data.impl.ResultImpl;
+import ddf.catalog.operation.QueryRequest;
+import ddf.catalog.operation.SourceResponse;
+import ddf.catalog.operation.impl.SourceResponseImpl;
+import ddf.catalog.transform.CatalogTransformerException;
+
+/**
+ * Converts GeoJSON search responses into a SourceResponse. Two layouts are read:
+ * <ul>
+ * <li>OpenSearch-JSON, a GeoJSON FeatureCollection with <code>totalResults</code> and a <code>features</code> array
+ * whose properties hold <code>identifier</code>, <code>title</code>, <code>updated</code> and <code>links</code></li>
+ * <li>the DDF GeoJSON query response, with <code>hits</code> and a <code>results</code> array of
+ * <code>metacard</code> features along with their <code>relevance</code> and <code>distance</code></li>
+ * </ul>
+ * The response is read one token at a time with {@link JsonReader}, no tree of the response is built, and each feature
+ * is converted to a metacard as soon as it has been read.
+ */
+public class JsonResponseTransformer implements SearchResponseTransformer {
+
+    private static final transient Logger LOGGER = LoggerFactory.getLogger( JsonResponseTransformer.class );
+
+    private static final Map<String, String> WKT_TYPES = new HashMap<String, String>();
+
+    static {
+        WKT_TYPES.put( "Point", "POINT" );
+        WKT_TYPES.put( "MultiPoint", "MULTIPOINT" );
+        WKT_TYPES.put( "LineString", "LINESTRING" );
+        WKT_TYPES.put( "MultiLineString", "MULTILINESTRING" );
+        WKT_TYPES.put( "Polygon", "POLYGON" );
+        WKT_TYPES.put( "MultiPolygon", "MULTIPOLYGON" );
+        WKT_TYPES.put( "GeometryCollection", "GEOMETRYCOLLECTION" );
+    }
+
+    @Override
+    public SourceResponse processSearchResponse( InputStream inputStream, QueryRequest request, String siteName ) throws CatalogTransformerException {
+        return processSearchResponse( inputStream, request, siteName, 0 );
+    }
+
+    /**
+     * Converts the JSON response into a SourceResponse. Once maxResults features have been converted the rest of the
+     * response is not read and the stream is closed.
+     *
+     * @param maxResults
+     *            the maximum number of results to read from the response, 0 or less means read all of them
+     * @throws CatalogTransformerException
+     *             if the response could not be read or is not valid JSON
+     */
+    public SourceResponse processSearchResponse( InputStream inputStream, QueryRequest request, String siteName, int maxResults ) throws CatalogTransformerException {
+        List<Result> resultList = new ArrayList<Result>();
+        Long totalResults = null;
+
+        JsonReader reader = new JsonReader( new InputStreamReader( inputStream, StandardCharsets.UTF_8 ) );
+        try {
+            reader.beginObject();
+            boolean done = false;
+            while ( !done && reader.hasNext() ) {
+                String name = reader.nextName();
+                if ( "totalResults".equals( name ) || "hits".equals( name ) ) {
+                    String total = readString( reader );
+                    try {
+                        totalResults = total == null ? null : Long.valueOf( total );
+                    } catch ( NumberFormatException e ) {
+                        LOGGER.warn( "Received invalid number of results from JSON response [" + total + "]", e );
+                    }
+                } else if ( ("features".equals( name ) || "results".equals( name )) && reader.peek() == Token.BEGIN_ARRAY ) {
+                    boolean isWrapped = "results".equals( name );
+                    reader.beginArray();
+                    while ( reader.hasNext() ) {
+                        if ( maxResults > 0 && resultList.size() >= maxResults ) {
+                            LOGGER.debug( "Read the maximum number of results [{}] from site [{}], not reading the rest of the response", maxResults, siteName );
+                            done = true;
+                            break;
+                        }
+                        Result result = isWrapped ? readResult( reader, siteName ) : readFeatureResult( reader, siteName );
+                        if ( result != null ) {
+                            resultList.add( result );
+                        }
+                    }
+                    if ( !done ) {
+                        reader.endArray();
+                    }
+                } else {
+                    reader.skipValue();
+                }
+            }
+        } catch ( IOException e ) {
+            throw new CatalogTransformerException( "Could not read the JSON response from site [" + siteName + "]: " + e.getMessage(), e );
+        } finally {
+            IOUtils.closeQuietly( reader );
+        }
+
+        return new SourceResponseImpl( request, null, resultList, totalResults == null ? resultList.size() : totalResults );
+    }
+
+    /**
+     * Reads a DDF result, a metacard feature along with its relevance and distance.
+     */
+    protected Result readResult( JsonReader reader, String siteName ) throws IOException {
+        Metacard metacard = null;
+        String relevance = null;
+        String distance = null;
+        reader.beginObject();
+        while ( reader.hasNext() ) {
+            String name = reader.nextName();
+            if ( "metacard".equals( name ) ) {
+                metacard = readFeature( reader, siteName );
+            } else if ( "relevance".equals( name ) ) {
+                relevance = readString( reader );
+            } else if ( "distance".equals( name ) ) {
+                distance = readString( reader );
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return metacardToResult( metacard, relevance, distance );
+    }
+
+    /**
+     * Reads an OpenSearch-JSON feature.
+     */
+    protected Result readFeatureResult( JsonReader reader, String siteName ) throws IOException {
+        return metacardToResult( readFeature( reader, siteName ), null, null );
+    }
+
+    protected Metacard readFeature( JsonReader reader, String siteName ) throws IOException {
+        if ( reader.peek() == Token.NULL ) {
+            reader.nextNull();
+            return null;
+        }
+        MetacardImpl metacard = new MetacardImpl();
+        String featureId = null;
+        String geometry = null;
+        reader.beginObject();
+        while ( reader.hasNext() ) {
+            String name = reader.nextName();
+            if ( "id".equals( name ) ) {
+                featureId = readString( reader );
+            } else if ( "geometry".equals( name ) ) {
+                geometry = readGeometry( reader );
+            } else if ( "properties".equals( name ) && reader.peek() == Token.BEGIN_OBJECT ) {
+                readProperties( reader, metacard );
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if ( metacard.getId() == null ) {
+            metacard.setId( featureId );
+        }
+        if ( StringUtils.isBlank( metacard.getId() ) ) {
+            LOGGER.debug( "Skipping feature without an id from site [{}]", siteName );
+            return null;
+        }
+        if ( geometry != null ) {
+            metacard.setLocation( geometry );
+        }
+        metacard.setSourceId( siteName );
+        return new CDRMetacard( metacard );
+    }
+
+    protected void readProperties( JsonReader reader, MetacardImpl metacard ) throws IOException {
+        reader.beginObject();
+        while ( reader.hasNext() ) {
+            String name = reader.nextName();
+            switch ( name ) {
+            case Metacard.ID:
+            case "identifier":
+                metacard.setId( readString( reader ) );
+                break;
+            case Metacard.TITLE:
+                metacard.setTitle( readString( reader ) );
+                break;
+            case Metacard.METADATA:
+                metacard.setMetadata( readString( reader ) );
+                break;
+            case Metacard.MODIFIED:
+            case "updated":
+                setDate( metacard, Metacard.MODIFIED, readString( reader ) );
+                break;
+            case Metacard.EFFECTIVE:
+            case "published":
+                setDate( metacard, Metacard.EFFECTIVE, readString( reader ) );
+                break;
+            case Metacard.CREATED:
+                setDate( metacard, Metacard.CREATED, readString( reader ) );
+                break;
+            case Metacard.EXPIRATION:
+                setDate( metacard, Metacard.EXPIRATION, readString( reader ) );
+                break;
+            case Metacard.GEOGRAPHY:
+                // a WKT location, the feature geometry takes precedence when there is one
+                metacard.setLocation( readString( reader ) );
+                break;
+            case Metacard.RESOURCE_URI:
+                setResourceURI( metacard, readString( reader ) );
+                break;
+            case Metacard.RESOURCE_SIZE:
+                metacard.setResourceSize( readString( reader ) );
+                break;
+            case Metacard.CONTENT_TYPE:
+                metacard.setContentTypeName( readString( reader ) );
+                break;
+            case Metacard.CONTENT_TYPE_VERSION:
+                metacard.setContentTypeVersion( readString( reader ) );
+                break;
+            case "links":
+                if ( reader.peek() == Token.BEGIN_OBJECT ) {
+                    readLinks( reader, metacard );
+                } else {
+                    reader.skipValue();
+                }
+                break;
+            default:
+                reader.skipValue();
+                break;
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads the OpenSearch-JSON links of a feature, the first <code>data</code> link is the product, the first image
+     * <code>previews</code> link is the thumbnail and the first XML <code>alternates</code> link is the metadata.
+     */
+    protected void readLinks( JsonReader reader, MetacardImpl metacard ) throws IOException {
+        reader.beginObject();
+        while ( reader.hasNext() ) {
+            String name = reader.nextName();
+            List<JsonLink> links = reader.peek() == Token.BEGIN_ARRAY ? readLinkArray( reader ) : null;
+            if ( links == null ) {
+                reader.skipValue();
+            } else if ( "data".equals( name ) && !links.isEmpty() && metacard.getResourceURI() == null ) {
+                JsonLink link = links.get( 0 );
+                setResourceURI( metacard, link.href );
+                if ( link.length != null ) {
+                    metacard.setResourceSize( link.length );
+                }
+                if ( link.title != null ) {
+                    metacard.setAttribute( CDRMetacard.RESOURCE_TITLE, link.title );
+                }
+                if ( link.type != null ) {
+                    metacard.setAttribute( CDRMetacard.RESOURCE_MIME_TYPE, link.type );
+                }
+            } else if ( "previews".equals( name ) ) {
+                for ( JsonLink link : links ) {
+                    MimeType mimeType = toMimeType( link.type );
+                    if ( link.href != null && (mimeType == null || "image".equals( mimeType.getPrimaryType() )) ) {
+                        metacard.setAttribute( CDRMetacard.THUMBNAIL_LINK, URI.create( link.href ) );
+                        if ( link.length != null ) {
+                            try {
+                                metacard.setAttribute( CDRMetacard.THUMBNAIL_LENGTH, Long.valueOf( link.length ) );
+                            } catch ( NumberFormatException e ) {
+                                LOGGER.debug( "Received invalid thumbnail length from JSON response [{}]", link.length );
+                            }
+                        }
+                        metacard.setAttribute( CDRMetacard.THUMBNAIL_MIMETYPE, mimeType );
+                        metacard.setAttribute( CDRMetacard.THUMBNAIL_LINK_TITLE, link.title );
+                        break;
+                    }
+                }
+            } else if ( "alternates".equals( name ) && metacard.getMetadata() == null ) {
+                for ( JsonLink link : links ) {
+                    MimeType mimeType = toMimeType( link.type );
+                    if ( link.href != null && mimeType != null && mimeType.getSubType().contains( "xml" ) ) {
+                        metacard.setAttribute( CDRMetacard.METADATA_LINK, URI.create( link.href ) );
+                        break;
+                    }
+                }
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads a GeoJSON geometry as WKT. The GeoJSON coordinate arrays are written straight into the WKT text as they are
+     * read, numbers are copied as they appear in the response and are never parsed.
+     *
+     * @return the WKT, or null if the geometry is null, empty or of an unknown type
+     */
+    protected String readGeometry( JsonReader reader ) throws IOException {
+        if ( reader.peek() != Token.BEGIN_OBJECT ) {
+            reader.skipValue();
+            return null;
+        }
+        String type = null;
+        StringBuilder coordinates = null;
+        List<String> geometries = null;
+        reader.beginObject();
+        while ( reader.hasNext() ) {
+            String name = reader.nextName();
+            if ( "type".equals( name ) ) {
+                type = readString( reader );
+            } else if ( "coordinates".equals( name ) && reader.peek() == Token.BEGIN_ARRAY ) {
+                coordinates = new StringBuilder();
+                appendCoordinates( reader, coordinates );
+            } else if ( "geometries".equals( name ) && reader.peek() == Token.BEGIN_ARRAY ) {
+                geometries = new ArrayList<String>();
+                reader.beginArray();
+                while ( reader.hasNext() ) {
+                    String geometry = readGeometry( reader );
+                    if ( geometry != null ) {
+                        geometries.add( geometry );
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        String wktType = type == null ? null : WKT_TYPES.get( type );
+        if ( wktType == null ) {
+            LOGGER.debug( "Ignoring GeoJSON geometry of unsupported type [{}]", type );
+            return null;
+        }
+        if ( geometries != null ) {
+            return geometries.isEmpty() ? null : wktType + " (" + StringUtils.join( geometries, ", " ) + ")";
+        }
+        if ( coordinates == null || coordinates.length() <= 2 ) {
+            return null;
+        }
+        // a single position is written without its parentheses, the same as the positions of a LineString
+        return "POINT".equals( wktType ) ? wktType + " (" + coordinates + ")" : wktType + " " + coordinates;
+    }
+
+    /**
+     * Appends a GeoJSON coordinates array as WKT, a position [x, y] is written as "x y" and an array of positions or
+     * of other arrays is written as its elements separated by commas within parentheses.
+     */
+    private static void appendCoordinates( JsonReader reader, StringBuilder wkt ) throws IOException {
+        reader.beginArray();
+        if ( reader.peek() == Token.NUMBER ) {
+            boolean first = true;
+            while ( reader.hasNext() ) {
+                if ( !first ) {
+                    wkt.append( ' ' );
+                }
+                reader.appendValue( wkt );
+                first = false;
+            }
+        } else {
+            wkt.append( '(' );
+            boolean first = true;
+            while ( reader.hasNext() ) {
+                if ( !first ) {
+                    wkt.append( ", " );
+                }
+                appendCoordinates( reader, wkt );
+                first = false;
+            }
+            wkt.append( ')' );
+        }
+        reader.endArray();
+    }
+
+    protected Result metacardToResult( Metacard metacard, String relevance, String distance ) {
+        if ( metacard == null ) {
+            return null;
+        }
+        ResultImpl result = new ResultImpl( metacard );
+        if ( relevance != null ) {
+            try {
+                result.setRelevanceScore( AtomValueDecoder.parseDouble( relevance ) );
+            } catch ( NumberFormatException e ) {
+                LOGGER.warn( "Received invalid number for relevance from JSON response [" + relevance + "]", e );
+            }
+        }
+        if ( distance != null ) {
+            try {
+                result.setDistanceInMeters( AtomValueDecoder.parseDouble( distance ) );
+            } catch ( NumberFormatException e ) {
+                LOGGER.warn( "Received invalid number for distance from JSON response [" + distance + "]", e );
+            }
+        }
+        return result;
+    }
+
+    private static List<JsonLink> readLinkArray( JsonReader reader ) throws IOException {
+        List<JsonLink> links = new ArrayList<JsonLink>();
+        reader.beginArray();
+        while ( reader.hasNext() ) {
+            if ( reader.peek() != Token.BEGIN_OBJECT ) {
+                reader.skipValue();
+                continue;
+            }
+            JsonLink link = new JsonLink();
+            reader.beginObject();
+            while ( reader.hasNext() ) {
+                String name = reader.nextName();
+                if ( "href".equals( name ) ) {
+                    link.href = readString( reader );
+                } else if ( "type".equals( name ) ) {
+                    link.type = readString( reader );
+                } else if ( "title".equals( name ) ) {
+                    link.title = readString( reader );
+                } else if ( "length".equals( name ) ) {
+                    link.length = readString( reader );
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            links.add( link );
+        }
+        reader.endArray();
+        return links;
+    }
+
+    /**
+     * Returns the next string, number or boolean value as a String, or null if the value is null, an object or an
+     * array.
+     */
+    private static String readString( JsonReader reader ) throws IOException {
+        switch ( reader.peek() ) {
+        case STRING:
+        case NUMBER:
+        case BOOLEAN:
+            return reader.nextString();
+        default:
+            reader.skipValue();
+            return null;
+        }
+    }
+
+    private static void setDate( MetacardImpl metacard, String name, String text ) {
+        if ( StringUtils.isNotBlank( text ) ) {
+            LazyAttribute date = LazyAttribute.isoDate( name, text );
+            if ( date != null ) {
+                metacard.setAttribute( date );
+            }
+        }
+    }
+
+    private static void setResourceURI( MetacardImpl metacard, String uri ) {
+        if ( StringUtils.isNotBlank( uri ) ) {
+            try {
+                metacard.setResourceURI( URI.create( uri ) );
+            } catch ( IllegalArgumentException e ) {
+                LOGGER.warn( "Received invalid resource URI from JSON response [" + uri + "]", e );
+            }
+        }
+    }
+
+    private static MimeType toMimeType( String type ) {
+        if ( type != null ) {
+            try {
+                return new MimeType( type );
+            } catch ( MimeTypeParseException e ) {
+                LOGGER.debug( "Received invalid link type from JSON response [{}]", type );
+            }
+        }
+        return null;
+    }
+
+    private static final class JsonLink {
+        private String href;
+        private String type;
+        private String title;
+        private String length;
+    }
+
+}
@@ -16,16 +16,25 @@
 package net.di2e.ecdr.search.transform.atom.response;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import net.di2e.ecdr.commons.filter.config.FilterConfig;
+import net.di2e.ecdr.commons.filter.config.FilterConfig.AtomContentXmlWrapOption;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
+import org.joda.time.DateTime;
 import org.junit.Test;
 
+import ddf.catalog.data.Metacard;
 import ddf.catalog.data.Result;
 import ddf.catalog.operation.QueryRequest;
 import ddf.catalog.operation.SourceResponse;
@@ -124,8 +133,93 @@ public class AtomResponseTransformerTest extends net.di2e.ecdr.search.transform.
         assertEquals( 0, response.getResults().size() );
     }
 
-    private SourceResponse getTransformResponse( final String LOCATION_XML ) throws Exception {
+    @Test
+    public void testMaxResults() throws Exception {
+        FilterConfig config = mock( FilterConfig.class );
+        QueryRequest request = mock( QueryRequest.class );
+        AtomResponseTransformer transformer = new AtomResponseTransformer( config );
+        SourceResponse response = transformer.processSearchResponse( getClass().getResourceAsStream( "/exampleResponse.xml" ), request, SITE_NAME, 5 );
+        // hits comes from the feed's totalResults, even though reading stopped after 5 entries
+        assertEquals( 19, response.getHits() );
+        assertEquals( 5, response.getResults().size() );
+    }
+
+    @Test
+    public void testParallelConversion() throws Exception {
+        FilterConfig config = mock( FilterConfig.class );
+        QueryRequest request = mock( QueryRequest.class );
+        AtomResponseTransformer transformer = new AtomResponseTransformer( config );
+        List<Result> sequential = transformer.processSearchResponse( getClass().getResourceAsStream( "/exampleResponse.xml" ), request, SITE_NAME ).getResults();
+
+        ForkJoinPool pool = new ForkJoinPool( 2 );
+        try {
+            transformer.setParallelConversionThreshold( 2 );
+            transformer.setConversionPool( pool );
+            SourceResponse response = transformer.processSearchResponse( getClass().getResourceAsStream( "/exampleResponse.xml" ), request, SITE_NAME );
+            List<Result> parallel = response.getResults();
+            assertEquals( 19, response.getHits() );
+            assertEquals( sequential.size(), parallel.size() );
+            for ( int i = 0; i < sequential.size(); i++ ) {
+                assertEquals( sequential.get( i ).getMetacard().getId(), parallel.get( i ).getMetacard().getId() );
+                assertEquals( sequential.get( i ).getMetacard().getLocation(), parallel.get( i ).getMetacard().getLocation() );
+            }
+
+            // maxResults still stops reading the feed
+            response = transformer.processSearchResponse( getClass().getResourceAsStream( "/exampleResponse.xml" ), request, SITE_NAME, 5 );
+            assertEquals( 5, response.getResults().size() );
+
+            // a pool that has been shut down falls back to converting sequentially
+            pool.shutdown();
+            response = transformer.processSearchResponse( getClass().getResourceAsStream( "/exampleResponse.xml" ), request, SITE_NAME );
+            assertEquals( sequential.size(), response.getResults().size() );
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testResourceMetadata() throws Exception {
+        SourceResponse response = getTransformResponse( "<ddms:Resource xmlns:ddms=\"http://metadata.dod.mil/mdr/ns/DDMS/2.0/\"><ddms:title>Sample &#233;</ddms:title></ddms:Resource>" );
+        String metadata = response.getResults().get( 0 ).getMetacard().getMetadata();
+        assertTrue( metadata.startsWith( "<ddms:Resource" ) );
+        assertTrue( metadata.contains( "<ddms:title>Sample \u00e9</ddms:title>" ) );
+    }
+
+    @Test
+    public void testWrappedContentMetadata() throws Exception {
         FilterConfig config = mock( FilterConfig.class );
+        when( config.getAtomContentXmlWrapOption() ).thenReturn( AtomContentXmlWrapOption.ALWAYS_WRAP );
+        SourceResponse response = getTransformResponse( config, "" );
+        String metadata = response.getResults().get( 0 ).getMetacard().getMetadata();
+        assertTrue( metadata.startsWith( "<xml-fragment>" ) );
+        assertTrue( metadata.contains( "Sample Resource" ) );
+        assertTrue( metadata.endsWith( "</xml-fragment>" ) );
+    }
+
+    @Test
+    public void testLazyAttributes() throws Exception {
+        SourceResponse response = getTransformResponse( SIMPLE_POINT );
+        Metacard metacard = response.getResults().get( 0 ).getMetacard();
+        // dates, location and security are captured from the entry and decoded when they are read
+        assertTrue( metacard.getAttribute( Metacard.MODIFIED ) instanceof LazyAttribute );
+        assertTrue( metacard.getAttribute( Metacard.CREATED ) instanceof LazyAttribute );
+        assertTrue( metacard.getAttribute( Metacard.GEOGRAPHY ) instanceof LazyAttribute );
+        assertTrue( metacard.getAttribute( Metacard.SECURITY ) instanceof LazyAttribute );
+
+        assertEquals( new DateTime( "2014-10-15T16:20:39.436Z" ).toDate(), metacard.getModifiedDate() );
+        assertEquals( new DateTime( "2014-10-15T09:20:39.436-07:00" ).toDate(), metacard.getCreatedDate() );
+        assertNull( metacard.getAttribute( Metacard.EFFECTIVE ) );
+        assertEquals( POINT_WKT, metacard.getLocation() );
+        Map<?, ?> security = (Map<?, ?>) metacard.getAttribute( Metacard.SECURITY ).getValue();
+        assertEquals( Arrays.asList( "U" ), security.get( "classification" ) );
+        assertEquals( Arrays.asList( "USA" ), security.get( "ownerProducer" ) );
+    }
+
+    private SourceResponse getTransformResponse( final String LOCATION_XML ) throws Exception {
+        return getTransformResponse( mock( FilterConfig.class ), LOCATION_XML );
+    }
+
+    private SourceResponse getTransformResponse( FilterConfig config, final String LOCATION_XML ) throws Exception {
         QueryRequest request = mock( QueryRequest.class );
         AtomResponseTransformer transformer = new AtomResponseTransformer( config );
         String atomXML = IOUtils.toString( getClass().getResourceAsStream( ATOM_TEMPLATE_FILE ) );
@@ -15,6 +15,7 @@
  */
 package net.di2e.ecdr.search.transform.atom.response;
 
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
@@ -35,9 +36,12 @@ import net.di2e.ecdr.commons.constants.SearchConstants;
 import net.di2e.ecdr.commons.filter.config.FilterConfig;
 import net.di2e.ecdr.search.transform.atom.AtomTransformer;
 import net.di2e.ecdr.search.transform.atom.geo.GeoHelper;
+import net.di2e.ecdr.search.transform.atom.geo.GeoRssPositionCache;
 import net.di2e.ecdr.search.transform.atom.security.SecurityConfiguration;
 
 import org.apache.abdera.Abdera;
+import org.apache.abdera.ext.geo.Line;
+import org.apache.abdera.ext.geo.Position;
 import org.apache.abdera.model.Document;
 import org.apache.abdera.model.Element;
 import org.apache.abdera.model.Entry;
@@ -50,6 +54,7 @@ import org.junit.Test;
 
 import ddf.action.ActionProvider;
 import ddf.catalog.data.BinaryContent;
+import ddf.catalog.data.Metacard;
 import ddf.catalog.data.impl.MetacardImpl;
 import ddf.catalog.operation.ProcessingDetails;
 import ddf.catalog.operation.QueryRequest;
@@ -121,6 +126,24 @@ public class AtomTransformerTest extends net.di2e.ecdr.search.transform.atom.res
         compareXML(SIMPLE_POLYGON, entry.getExtension(GeoHelper.QNAME_SIMPLE_POLYGON));
     }
 
+    @Test
+    public void testParsedLocationTransform() throws Exception {
+        // a location parsed from GeoRSS is written from its positions
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setAttribute(LazyAttribute.location(new Position[] { new Line("45.256 -110.45 46.46 -109.48 43.84 -109.86") }));
+        Entry entry = performTransform(metacard, true);
+        compareXML(GML_LINE, entry.getExtension(GeoHelper.QNAME_WHERE));
+
+        entry = performTransform(metacard, false);
+        compareXML(SIMPLE_LINE, entry.getExtension(GeoHelper.QNAME_SIMPLE_LINE));
+    }
+
+    @Test
+    public void testCachedPositions() throws Exception {
+        List<Position> positions = GeoRssPositionCache.getPositions(POLYGON_WKT);
+        assertSame(positions, GeoRssPositionCache.getPositions(POLYGON_WKT));
+    }
+
     @Test
     public void testResponseTransform() throws Exception {
         String sourceName = "Example";
@@ -190,6 +213,10 @@ public class AtomTransformerTest extends net.di2e.ecdr.search.transform.atom.res
 
         MetacardImpl metacard = new MetacardImpl();
         metacard.setLocation(locationWKT);
+        return performTransform(metacard, useGMLEncoding);
+    }
+
+    private Entry performTransform(Metacard metacard, boolean useGMLEncoding) throws Exception {
         AtomTransformer transformer = createTransformer();
         transformer.setUseGMLEncoding(useGMLEncoding);
         BinaryContent content = transformer.transform(metacard, new HashMap<String, Serializable>());
@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.search.transform.atom.response;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.apache.abdera.model.AtomDate;
+import org.joda.time.format.ISODateTimeFormat;
+import org.junit.Test;
+
+public class AtomValueDecoderTest {
+
+    @Test
+    public void testParseDouble() {
+        String[] values = { "0", "-0", "1.0", "45.256", "-110.45", ".5", "5.", "0.000123", "1e10", "1.5E-7", "+3.25", "123456789012345678",
+            "0.1234567890123456789", "1e300", "NaN", "-Infinity" };
+        for ( String value : values ) {
+            assertEquals( value, Double.doubleToLongBits( Double.parseDouble( value ) ), Double.doubleToLongBits( AtomValueDecoder.parseDouble( value ) ) );
+        }
+        Random random = new Random( 1 );
+        for ( int i = 0; i < 10000; i++ ) {
+            String value = Double.toString( random.nextDouble() * 360 - 180 );
+            assertEquals( value, Double.parseDouble( value ), AtomValueDecoder.parseDouble( value ), 0 );
+        }
+    }
+
+    @Test( expected = NumberFormatException.class )
+    public void testParseInvalidDouble() {
+        AtomValueDecoder.parseDouble( "1.2.3" );
+    }
+
+    @Test
+    public void testParseDoubles() {
+        assertArrayEquals( new double[] { 45.256, -110.45, 46.46, -109.48 }, AtomValueDecoder.parseDoubles( " 45.256 -110.45,46.46\n\t-109.48 " ), 0 );
+        assertArrayEquals( new double[0], AtomValueDecoder.parseDoubles( "  " ), 0 );
+    }
+
+    @Test
+    public void testParseIsoDate() {
+        String[] dates = { "2014-10-15T09:20:39.436-07:00", "2014-10-15T16:20:39.436Z", "2014-10-15T16:20:39Z", "2000-02-29T23:59:59.999+05:30",
+            "1969-12-31T23:59:59.5Z", "2014-10-15T09:20:39.436123-07:00", "2014-10-15", "2014-10-15T16:20:39+0000" };
+        for ( String date : dates ) {
+            assertEquals( date, ISODateTimeFormat.dateTimeParser().parseMillis( date ), AtomValueDecoder.parseIsoDate( date ) );
+        }
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testParseInvalidIsoDate() {
+        AtomValueDecoder.parseIsoDate( "2014-02-30T16:20:39Z" );
+    }
+
+    @Test
+    public void testParseAtomDate() {
+        String[] dates = { "2014-10-15T16:20:39.436Z", "2014-10-15T09:20:39-07:00", "2014-10-15T16:20:39.5Z" };
+        for ( String date : dates ) {
+            assertEquals( date, AtomDate.parse( date ), AtomValueDecoder.parseAtomDate( date ) );
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2014 Cohesive Integrations, LLC (info@cohesiveintegrations.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.di2e.ecdr.search.transform.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+
+import net.di2e.ecdr.commons.CDRMetacard;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.Result;
+import ddf.catalog.operation.QueryRequest;
+import ddf.catalog.operation.SourceResponse;
+import ddf.catalog.transform.CatalogTransformerException;
+
+/**
+ * Tests that the JSON search response transformer reads OpenSearch-JSON and DDF GeoJSON responses.
+ */
+public class JsonResponseTransformerTest {
+
+    private static final String SITE_NAME = "jsonSite";
+
+    @Test
+    public void testOpenSearchJsonTransform() throws Exception {
+        SourceResponse response = getTransformResponse( "/opensearch-json-response.json", 0 );
+        assertEquals( 25, response.getHits() );
+        List<Result> results = response.getResults();
+        // the feature without an id is skipped
+        assertEquals( 2, results.size() );
+
+        Metacard metacard = results.get( 0 ).getMetacard();
+        assertEquals( "a1b2c3", metacard.getId() );
+        assertEquals( SITE_NAME, metacard.getSourceId() );
+        assertEquals( "First \"quoted\" record é", metacard.getTitle() );
+        assertEquals( new DateTime( "2014-05-06T07:08:09.123Z" ).toDate(), metacard.getModifiedDate() );
+        assertEquals( "POLYGON ((10.0 20.0, 30.0 20.0, 30.0 40.0, 10.0 40.0, 10.0 20.0))", metacard.getLocation() );
+        assertEquals( URI.create( "http://example.com/product/1" ), metacard.getResourceURI() );
+        assertEquals( "1024", metacard.getResourceSize() );
+        assertEquals( "Product", metacard.getAttribute( CDRMetacard.RESOURCE_TITLE ).getValue() );
+        assertEquals( "image/tiff", metacard.getAttribute( CDRMetacard.RESOURCE_MIME_TYPE ).getValue() );
+        assertEquals( URI.create( "http://example.com/thumbnail/1" ), metacard.getAttribute( CDRMetacard.THUMBNAIL_LINK ).getValue() );
+        assertEquals( Long.valueOf( 64 ), metacard.getAttribute( CDRMetacard.THUMBNAIL_LENGTH ).getValue() );
+        assertEquals( URI.create( "http://example.com/metadata/1" ), metacard.getAttribute( CDRMetacard.METADATA_LINK ).getValue() );
+
+        metacard = results.get( 1 ).getMetacard();
+        assertEquals( "second", metacard.getId() );
+        assertEquals( new DateTime( "2014-05-06T07:08:09-04:00" ).toDate(), metacard.getModifiedDate() );
+        assertNull( metacard.getLocation() );
+        assertNull( metacard.getResourceURI() );
+    }
+
+    @Test
+    public void testGeoJsonTransform() throws Exception {
+        SourceResponse response = getTransformResponse( "/geojson-response.json", 0 );
+        assertEquals( 2, response.getHits() );
+        List<Result> results = response.getResults();
+        assertEquals( 2, results.size() );
+
+        Result result = results.get( 0 );
+        assertEquals( 0.75, result.getRelevanceScore(), 0 );
+        assertEquals( 1500.5, result.getDistanceInMeters(), 0 );
+        Metacard metacard = result.getMetacard();
+        assertEquals( "ddf1", metacard.getId() );
+        assertEquals( "DDF record", metacard.getTitle() );
+        assertTrue( metacard.getMetadata().startsWith( "<Resource xmlns=\"urn:test\">" ) );
+        assertEquals( new DateTime( "2014-05-01T00:00:00.000Z" ).toDate(), metacard.getCreatedDate() );
+        assertEquals( URI.create( "http://example.com/product/ddf1" ), metacard.getResourceURI() );
+        assertEquals( "2048", metacard.getResourceSize() );
+        assertEquals( "Resource", metacard.getContentTypeName() );
+        assertEquals( "1.0", metacard.getContentTypeVersion() );
+        assertEquals( "POINT (-77.0366 38.8977)", metacard.getLocation() );
+
+        result = results.get( 1 );
+        assertEquals( 0.5, result.getRelevanceScore(), 0 );
+        assertNull( result.getDistanceInMeters() );
+        assertEquals( "GEOMETRYCOLLECTION (POINT (1 2), MULTILINESTRING ((1 2, 3 4), (5 6, 7 8)))", result.getMetacard().getLocation() );
+    }
+
+    @Test
+    public void testMaxResults() throws Exception {
+        SourceResponse response = getTransformResponse( "/opensearch-json-response.json", 1 );
+        assertEquals( 25, response.getHits() );
+        assertEquals( 1, response.getResults().size() );
+        assertEquals( "a1b2c3", response.getResults().get( 0 ).getMetacard().getId() );
+    }
+
+    @Test( expected = CatalogTransformerException.class )
+    public void testInvalidJson() throws Exception {
+        InputStream inputStream = new ByteArrayInputStream( "{\"features\": [ {\"id\": \"1\" ".getBytes( StandardCharsets.UTF_8 ) );
+        new JsonResponseTransformer().processSearchResponse( inputStream, mock( QueryRequest.class ), SITE_NAME );
+    }
+
+    @Test
+    public void testMalformedNumbers() throws Exception {
+        for ( String number : new String[] { "01", "1.", ".5", "-", "1e", "1e+", "1.2.3", "1e5e5", "--1", "1-2", "+1" } ) {
+            InputStream inputStream = new ByteArrayInputStream( ("{\"totalResults\": " + number + "}").getBytes( StandardCharsets.UTF_8 ) );
+            try {
+                new JsonResponseTransformer().processSearchResponse( inputStream, mock( QueryRequest.class ), SITE_NAME );
+                fail( "Malformed number " + number + " was accepted" );
+            } catch ( CatalogTransformerException e ) {
+                // expected
+            }
+        }
+        for ( String number : new String[] { "0", "-0", "12", "-1.5", "1e3", "2.5E-2", "0.0e+1" } ) {
+            InputStream inputStream = new ByteArrayInputStream( ("{\"hits\": " + number + "}").getBytes( StandardCharsets.UTF_8 ) );
+            new JsonResponseTransformer().processSearchResponse( inputStream, mock( QueryRequest.class ), SITE_NAME );
+        }
+    }
+
+    @Test
+    public void testByteOrderMark() throws Exception {
+        InputStream inputStream = new ByteArrayInputStream( "\uFEFF{\"totalResults\": 3, \"features\": []}".getBytes( StandardCharsets.UTF_8 ) );
+        assertEquals( 3, new JsonResponseTransformer().processSearchResponse( inputStream, mock( QueryRequest.class ), SITE_NAME ).getHits() );
+    }
+
+    @Test
+    public void testLazyDates() throws Exception {
+        String json = "{\"features\": [ {\"id\": \"1\", \"properties\": {\"updated\": \"not a date\", \"published\": \"2014-05-06T07:08:09Z\"}} ]}";
+        InputStream inputStream = new ByteArrayInputStream( json.getBytes( StandardCharsets.UTF_8 ) );
+        SourceResponse response = new JsonResponseTransformer().processSearchResponse( inputStream, mock( QueryRequest.class ), SITE_NAME );
+        Metacard metacard = response.getResults().get( 0 ).getMetacard();
+        // an invalid date leaves the attribute unset
+        assertNull( metacard.getAttribute( Metacard.MODIFIED ) );
+        assertNull( metacard.getModifiedDate() );
+        assertEquals( new Date( new DateTime( "2014-05-06T07:08:09Z" ).getMillis() ), metacard.getEffectiveDate() );
+    }
+
+    private SourceResponse getTransformResponse( String resource, int maxResults ) throws Exception {
+        InputStream inputStream = getClass().getResourceAsStream( resource );
+        return new JsonResponseTransformer().processSearchResponse( inputStream, mock( QueryRequest.class ), SITE_NAME, maxResults );
+    }
+
+}